@@ -5,18 +5,25 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.*;
 import javafx.scene.text.Text;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.scene.text.Font;
 import java.util.Optional;
 import java.io.File;
+import java.io.IOException;
 import java.io.FileWriter;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Main UI controller.
@@ -26,11 +33,20 @@ public class App extends Application {
     /** fridge data model */
     private Fridge fridge;
 
+    /** background task layer for fridge work */
+    private FridgeTasks tasks;
+    /** keeps recipes in step with a chosen folder, or null */
+    private RecipeWatcher recipeWatcher;
+
     /** selected food item */
-    private FoodItem selectedFoodItem;
+    private ItemRow selectedItem;
 
     /** selected recipe */
     private Recipe selectedRecipe;
+    /** recipes the fridge covers, as of the last load */
+    private Set<Recipe> cookableNow = new HashSet<>();
+    /** recipes short of one ingredient, as of the last load */
+    private Set<Recipe> oneAway = new HashSet<>();
 
     // Navigation buttons
     /** inventory tab */
@@ -39,6 +55,10 @@ public class App extends Application {
     private Button tabShopping;
     /** recipes tab */
     private Button tabRecipes;
+    /** undoes the last inventory change */
+    private Button undoButton;
+    /** redoes the last undone change */
+    private Button redoButton;
 
     // Page containers
     /** main page host */
@@ -59,6 +79,8 @@ public class App extends Application {
     private VBox infoBox;
     /** inventory sort dropdown */
     private ComboBox<String> inventorySortBox;
+    /** inventory search field */
+    private TextField inventorySearchField;
 
     // Recipe UI components
     /** recipe grid */
@@ -67,10 +89,22 @@ public class App extends Application {
     private VBox recipeBookBox;
     /** recipe sort mode */
     private ComboBox<String> recipeSortBox;
+    /** recipe search field */
+    private TextField recipeSearchField;
+    /** household diet the recipes must suit */
+    private ComboBox<String> recipeDietBox;
 
     // Shopping UI components
     /** shopping list box */
     private VBox shoppingListBox;
+    /** days ahead the exported shopping list covers */
+    private static final int SHOPPING_LEAD_DAYS = 7;
+    /** recipes listed under "similar" and "same leftovers" */
+    private static final int RELATED_RECIPES = 5;
+    /** images found where asked */
+    private static final Metrics.Counter IMAGE_HITS = Metrics.counter("app.image.hit");
+    /** images that fell back to the placeholder */
+    private static final Metrics.Counter IMAGE_MISSES = Metrics.counter("app.image.miss");
 
     // UI style constants
     /** background color */
@@ -87,6 +121,10 @@ public class App extends Application {
     private static final String TAB_SELECTED = "#3f3f3f";
     /** alert color */
     private static final String RED = "#d95b57";
+    /** border of recipes that can be cooked now */
+    private static final String GREEN = "#4c9a4c";
+    /** border of recipes one ingredient away */
+    private static final String AMBER = "#d99a3a";
 
     public static void main(String[] args) {
         launch(args);
@@ -103,6 +141,7 @@ public class App extends Application {
         
         // Builds fridge data
         fridge = buildFridge();
+        tasks = new FridgeTasks();
         
         // Main layout
         BorderPane root = new BorderPane();
@@ -130,6 +169,8 @@ public class App extends Application {
 
         // Creates and displays scene
         Scene scene = new Scene(root, 1100, 650);
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN), () -> undoOrRedo(true));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN), () -> undoOrRedo(false));
         stage.setTitle("MealCraft");
         stage.setScene(scene);
         stage.show();
@@ -138,6 +179,18 @@ public class App extends Application {
         refreshAll();
     }
 
+    /**
+     * Stops background work when the window closes.
+     */
+    public void stop() {
+        if (recipeWatcher != null) {
+            recipeWatcher.stop();
+        }
+        if (tasks != null) {
+            tasks.shutdown();
+        }
+    }
+
     // Top bar and tab handling
     /**
      * Builds the top navigation bar containing the title and tab buttons.
@@ -158,6 +211,16 @@ public class App extends Application {
         tabShopping = makeTabButton("Shopping List");
         tabRecipes = makeTabButton("Recipes");
 
+        // Undo and redo, enabled when there is something to undo or redo
+        undoButton = new Button("Undo");
+        undoButton.setDisable(true);
+        undoButton.setOnAction(e -> undoOrRedo(true));
+        redoButton = new Button("Redo");
+        redoButton.setDisable(true);
+        redoButton.setOnAction(e -> undoOrRedo(false));
+        HBox history = new HBox(6, undoButton, redoButton);
+        history.setAlignment(Pos.CENTER);
+
         // Pushes tabs to the right
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -166,10 +229,32 @@ public class App extends Application {
         HBox tabs = new HBox(10, tabInventory, tabShopping, tabRecipes);
         tabs.setAlignment(Pos.CENTER);
 
-        bar.getChildren().addAll(title, spacer, tabs);
+        bar.getChildren().addAll(title, history, spacer, tabs);
         return bar;
     }
 
+    /**
+     * Undoes or redoes the last inventory change, keeping the selected item
+     * selected if it is still there.
+     * 
+     * @param undo true to undo, false to redo
+     */
+    private void undoOrRedo(boolean undo) {
+        String selected = selectedItem == null ? null : selectedItem.getName();
+        tasks.submit(() -> {
+            if (undo) {
+                fridge.undo();
+            }
+            else {
+                fridge.redo();
+            }
+            return ItemRow.of(selected == null ? null : fridge.getFoodItem(selected));
+        }, item -> {
+            selectedItem = item;
+            refreshAll();
+        }, ex -> alert(undo ? "Failed to undo." : "Failed to redo."));
+    }
+
     /** 
      * Creates a styled tab button with click behavior.
      * 
@@ -242,8 +327,16 @@ public class App extends Application {
         inventorySortBox.setPrefWidth(160);
         
         // Refreshes grid when sort option changes
-        inventorySortBox.setOnAction(e -> refreshInventoryGrid());
-        topLine.getChildren().add(inventorySortBox);
+        inventorySortBox.setOnAction(e -> reloadInventoryGrid());
+
+        // Filters the grid as the user types
+        inventorySearchField = new TextField();
+        inventorySearchField.setPromptText("Search...");
+        inventorySearchField.setPrefWidth(150);
+        inventorySearchField.textProperty().addListener((obs, oldText, newText) -> reloadInventoryGrid());
+
+        topLine.setSpacing(8);
+        topLine.getChildren().addAll(inventorySearchField, inventorySortBox);
 
         // Grid that holds food item tiles
         inventoryGrid = new GridPane();
@@ -282,16 +375,29 @@ public class App extends Application {
     }
 
     /**
-     * Rebuilds the inventory grid UI based on the current sort option.
+     * Reloads the inventory grid in the background using the current sort option and search text.
+     * A newer reload cancels one still in progress.
+     */
+    private void reloadInventoryGrid() {
+        String sort = inventorySortBox.getValue();
+        String query = inventorySearchField.getText();
+        tasks.submitLatest("inventory-sort", () -> loadInventoryItems(sort, query), this::refreshInventoryGrid,
+            ex -> alert("Failed to load the inventory."));
+    }
+
+    /**
+     * Returns the inventory sorted by the given sort option.
+     * Runs on the background thread.
+     * 
+     * @param sort inventory sort option
+     * @param query search text, or blank for every item
+     * @return rows of the sorted food items
      * 
      * Contributed by: Annika Hambali
      */
-    private void refreshInventoryGrid() {
-        inventoryGrid.getChildren().clear();
-
-        String sort = inventorySortBox.getValue();
+    private List<ItemRow> loadInventoryItems(String sort, String query) {
         List<FoodItem> items;
-
+        
         // If sorting by expiration
         if (sort != null && sort.equals("Expiration Date")) {
             items = fridge.getAllFoodItemsSortedExpiration();
@@ -301,6 +407,24 @@ public class App extends Application {
             items = fridge.getAllFoodItemsSortedAZ();
         }
         
+        // If searching, keeps only the matches
+        if (query != null && !query.isBlank()) {
+            Set<FoodItem> hits = new HashSet<>(fridge.searchFood(query, null, items.size()));
+            items.removeIf(it -> !hits.contains(it));
+        }
+        return ItemRow.of(items);
+    }
+
+    /**
+     * Rebuilds the inventory grid UI from an already sorted item list.
+     * 
+     * @param items rows of the sorted food items
+     * 
+     * Contributed by: Annika Hambali
+     */
+    private void refreshInventoryGrid(List<ItemRow> items) {
+        inventoryGrid.getChildren().clear();
+
         // Fixed grid layout
         int cols = 5;
         int maxTiles = 25; // adjust to match your layout
@@ -311,7 +435,7 @@ public class App extends Application {
 
             // If there is an item for this slot
             if (i < items.size()) {
-                FoodItem it = items.get(i);
+                ItemRow it = items.get(i);
 
                 // Item image
                 ImageView iv = new ImageView(loadImageSafe(it.getImgFilePath()));
@@ -332,7 +456,7 @@ public class App extends Application {
 
                 // Selects the item and refreshes the details
                 tile.setOnMouseClicked(e -> {
-                    selectedFoodItem = it;
+                    selectedItem = it;
                     refreshItemDetails();
                 });
             } 
@@ -356,31 +480,31 @@ public class App extends Application {
         itemDetailsBox.getChildren().clear();
 
         // If nothing is selected
-        if (selectedFoodItem == null) {
+        if (selectedItem == null) {
             Label msg = new Label("(Click an item to see details)");
             itemDetailsBox.getChildren().add(msg);
             return;
         }
 
         // Large preview image
-        ImageView big = new ImageView(loadImageSafe(selectedFoodItem.getImgFilePath()));
+        ImageView big = new ImageView(loadImageSafe(selectedItem.getImgFilePath()));
         big.setFitWidth(90);
         big.setFitHeight(90);
         big.setPreserveRatio(true);
 
-        Label name = new Label(selectedFoodItem.getName());
+        Label name = new Label(selectedItem.getName());
         name.setStyle("-fx-font-size: 22px; -fx-font-weight: bold;");
 
         // Displays item metadata
-        Label cat = new Label("CATEGORY: " + selectedFoodItem.getCategory());
-        Label qty = new Label("QUANTITY: " + formatQty(selectedFoodItem.getQuantity()));
-        Label exp = new Label("EXPIRES: " + selectedFoodItem.getExpirationDate());
+        Label cat = new Label("CATEGORY: " + selectedItem.getCategory());
+        Label qty = new Label("QUANTITY: " + formatQty(selectedItem.getQuantity()));
+        Label exp = new Label("EXPIRES: " + selectedItem.getExpirationDate());
 
         Button edit = new Button("edit item");
         styleButton(edit);
         
         // Opens edit dialog for selected item
-        edit.setOnAction(e -> editItemDialog((Stage) edit.getScene().getWindow(), selectedFoodItem));
+        edit.setOnAction(e -> editItemDialog((Stage) edit.getScene().getWindow(), selectedItem));
 
         itemDetailsBox.getChildren().addAll(big, name, cat, qty, exp, edit);
     }
@@ -388,9 +512,12 @@ public class App extends Application {
     /**
      * Refreshes the info panel.
      * 
+     * @param soon items expiring soon
+     * @param lowStock low stock items
+     * 
      * Contributed by: Annika Hambali
      */
-    private void refreshInfoPanel() {
+    private void refreshInfoPanel(List<ItemRow> soon, List<ItemRow> lowStock) {
         // Clears previous info entries
         infoBox.getChildren().clear();
 
@@ -399,15 +526,14 @@ public class App extends Application {
         useSoon.setStyle("-fx-text-fill: " + RED + "; -fx-font-size: 16px; -fx-font-weight: bold;");
         VBox useSoonList = new VBox(4);
 
-        List<FoodItem> soon = fridge.getItemsExpiringWithin(3);
-        
+
         // If no items expiring soon
         if (soon.isEmpty()) {
             useSoonList.getChildren().add(new Label("• (none)"));
         } 
         else {
             // Lists each item and days remaining
-            for (FoodItem f : soon) {
+            for (ItemRow f : soon) {
                 long days = f.daysUntilExpiration(LocalDate.now());
                 useSoonList.getChildren().add(new Label("• " + f.getName().toUpperCase() + " (expires " + days + " day)"));
             }
@@ -418,14 +544,13 @@ public class App extends Application {
         low.setStyle("-fx-text-fill: " + RED + "; -fx-font-size: 16px; -fx-font-weight: bold;");
         VBox lowList = new VBox(4);
 
-        List<FoodItem> lowStock = fridge.getLowStockItems();
         // If no items are low stock
         if (lowStock.isEmpty()) {
             lowList.getChildren().add(new Label("• (none)"));
         } 
         else {
             // Lists each low stock item and quantity
-            for (FoodItem f : lowStock) {
+            for (ItemRow f : lowStock) {
                 lowList.getChildren().add(new Label("• " + f.getName().toUpperCase() + " (x" + formatQty(f.getQuantity()) + ")"));
             }
         }
@@ -454,11 +579,28 @@ public class App extends Application {
 
         //recipe sort dropdown menu
         recipeSortBox = new ComboBox<>();
-        recipeSortBox.getItems().addAll("A-Z","Ingredient availability","Uses expiring ingredients");
+        recipeSortBox.getItems().addAll("A-Z","Ingredient availability","Uses expiring ingredients","Most servings");
         recipeSortBox.setValue("A-Z");
         recipeSortBox.setPrefWidth(220);
-        recipeSortBox.setOnAction(e -> refreshRecipeGrid());
-        topLine.getChildren().add(recipeSortBox);
+        recipeSortBox.setOnAction(e -> reloadRecipeGrid());
+
+        //recipe search bar (searches names, ingredients and steps)
+        recipeSearchField = new TextField();
+        recipeSearchField.setPromptText("Search...");
+        recipeSearchField.setPrefWidth(120);
+        recipeSearchField.textProperty().addListener((obs, oldText, newText) -> reloadRecipeGrid());
+
+        topLine.setSpacing(8);
+        topLine.getChildren().addAll(recipeSearchField, recipeSortBox);
+
+        //diet filter dropdown menu
+        recipeDietBox = new ComboBox<>();
+        recipeDietBox.getItems().addAll("Any diet", "Vegetarian", "Vegan", "Pescatarian", "Gluten free", "Nut free", "Dairy free");
+        recipeDietBox.setValue("Any diet");
+        recipeDietBox.setPrefWidth(220);
+        recipeDietBox.setOnAction(e -> reloadRecipeGrid());
+        HBox dietLine = new HBox(recipeDietBox);
+        dietLine.setAlignment(Pos.CENTER_RIGHT);
         recipeGrid = new GridPane();
         recipeGrid.setHgap(8);
         recipeGrid.setVgap(8);
@@ -468,7 +610,13 @@ public class App extends Application {
         Button addRecipe = new Button("add recipe");
         styleButton(addRecipe);
         addRecipe.setOnAction(e -> addRecipeDialog());
-        leftPanel.getChildren().addAll(topLine, recipeGrid, alignBottom(addRecipe));
+        //watch folder button
+        Button watchFolder = new Button("watch folder");
+        styleButton(watchFolder);
+        watchFolder.setOnAction(e -> watchFolderDialog());
+        HBox recipeButtons = new HBox(8, watchFolder, addRecipe);
+        recipeButtons.setAlignment(Pos.BOTTOM_RIGHT);
+        leftPanel.getChildren().addAll(topLine, dietLine, recipeGrid, recipeButtons);
         leftPanel.setPrefWidth(350);
 
         //recipe description gui
@@ -489,25 +637,83 @@ public class App extends Application {
     }
 
     /**
-     * Rebuilds the grid of recipes whenever the sort mode changes, a recipe is added, or inventory updates
+     * Reloads the recipe grid in the background using the current sort mode and search text.
+     * A newer sort choice cancels the one still being computed.
+     */
+    private void reloadRecipeGrid() {
+        String sort = recipeSortBox.getValue();
+        String query = recipeSearchField.getText();
+        long avoided = dietMask(recipeDietBox.getValue());
+        tasks.submitLatest("recipe-sort", () -> {
+            ViewState state = new ViewState();
+            state.recipes = loadSortedRecipes(sort, query, avoided);
+            state.cookable = new HashSet<>(fridge.getCookableNow());
+            state.oneAway = new HashSet<>(fridge.getOneIngredientAway());
+            return state;
+        }, state -> {
+            cookableNow = state.cookable;
+            oneAway = state.oneAway;
+            refreshRecipeGrid(state.recipes);
+        }, ex -> alert("Failed to load the recipes."));
+    }
+
+    /**
+     * Returns the DietTags a diet menu choice avoids.
+     * 
+     * @param diet menu choice, e.g. "Nut free"
+     * @return DietTag mask
+     */
+    private static long dietMask(String diet) {
+        if (diet == null || diet.equals("Any diet")) {
+            return DietTag.NONE;
+        }
+        return DietTag.parse(diet);
+    }
+
+    /**
+     * Returns the recipes sorted by the given sort mode. Runs on the background thread.
+     * 
+     * @param sort recipe sort mode
+     * @param query search text, or blank for every recipe
+     * @param avoided DietTags the recipes must not have
+     * @return sorted recipes
      * 
      * Contributed by: Jessie Luo
      */
-     private void refreshRecipeGrid() {
-        recipeGrid.getChildren().clear();
-        List<Recipe> recipes = new ArrayList<>(fridge.getRecipes());
+    private List<Recipe> loadSortedRecipes(String sort, String query, long avoided) {
+        List<Recipe> recipes = avoided == DietTag.NONE ? new ArrayList<>(fridge.getRecipes()) : fridge.getRecipesFor(avoided);
+        
+        // If searching, only sorts the matches
+        if (query != null && !query.isBlank()) {
+            Set<Recipe> hits = new HashSet<>(fridge.searchRecipes(query, recipes.size()));
+            recipes.removeIf(r -> !hits.contains(r));
+        }
         
         //checks if sort mode changes
-        String sort = recipeSortBox.getValue();
         if (sort == null || sort.equals("A-Z")) {
-            sortRecipesAZ(recipes);
+            RecipeSorts.sortAZ(recipes);
         }
         else if (sort.equals("Ingredient availability")) {
-            sortByIngredientAvailability(recipes);
+            RecipeSorts.sortByIngredientAvailability(recipes, fridge);
         }
         else if (sort.equals("Uses expiring ingredients")) {
-            sortByExpiringIngredients(recipes);
+            RecipeSorts.sortByExpiringIngredients(recipes, fridge);
+        }
+        else if (sort.equals("Most servings")) {
+            RecipeSorts.sortByServings(recipes, fridge);
         }
+        return recipes;
+    }
+
+    /**
+     * Rebuilds the grid of recipes whenever the sort mode changes, a recipe is added, or inventory updates
+     * 
+     * @param recipes already sorted recipes
+     * 
+     * Contributed by: Jessie Luo
+     */
+     private void refreshRecipeGrid(List<Recipe> recipes) {
+        recipeGrid.getChildren().clear();
 
         int cols = 5;
         int maxTiles = 20;
@@ -523,9 +729,18 @@ public class App extends Application {
                 iv.setFitHeight(46);
                 iv.setPreserveRatio(true);
                 tile.getChildren().add(iv);
+                //outlines recipes that can be cooked now, or nearly
+                if (cookableNow.contains(r)) {
+                    tile.setStyle(tile.getStyle() + "-fx-border-color: " + GREEN + ";");
+                    Tooltip.install(tile, new Tooltip(r.getName() + " (can cook now)"));
+                }
+                else if (oneAway.contains(r)) {
+                    tile.setStyle(tile.getStyle() + "-fx-border-color: " + AMBER + ";");
+                    Tooltip.install(tile, new Tooltip(r.getName() + " (one ingredient away)"));
+                }
                 tile.setOnMouseClicked(e -> {
                     selectedRecipe = r;
-                    refreshRecipeBook();
+                    loadRecipeBook();
                 });
             } else {
                 tile.setStyle(tile.getStyle() + "-fx-background-color: #bcbcbc;");
@@ -534,12 +749,63 @@ public class App extends Application {
         }
     }
     
+    /**
+     * Returns the names of the recipe's ingredients that are missing or short in the fridge.
+     * Runs on the background thread.
+     * 
+     * @param recipe recipe to check
+     * @return normalized names of short ingredients
+     */
+    private Set<String> loadShortIngredients(Recipe recipe) {
+        Set<String> shortNames = new HashSet<>();
+        if (recipe == null) {
+            return shortNames;
+        }
+        for (IngredientLine ing : recipe.getIngredients()) {
+            //get the ingredient from the fridge
+            //check if the ingredient is missing or not enough for the recipe, substitutes included
+            if (fridge.getEffectiveQuantity(ing.getNormalizedName()) < ing.getScaledAmount()) {
+                shortNames.add(ing.getNormalizedName());
+            }
+        }
+        return shortNames;
+    }
+
+    /**
+     * Checks a recipe against the fridge and finds related recipes.
+     * Runs on the background thread.
+     * 
+     * @param recipe recipe to check
+     * @return what the recipe page shows besides the recipe itself
+     */
+    private RecipeBookState loadRecipeBookState(Recipe recipe) {
+        RecipeBookState book = new RecipeBookState();
+        book.shortIngredients = loadShortIngredients(recipe);
+        // A header-only recipe reads its steps from disk, which the FX thread must not do
+        book.steps = recipe == null ? new ArrayList<>() : recipe.getSteps();
+        book.similar = recipe == null ? new ArrayList<>() : fridge.getSimilarRecipes(recipe, RELATED_RECIPES);
+        book.sameLeftovers = recipe == null ? new ArrayList<>() : fridge.getRecipesUsingSameLeftovers(recipe, RELATED_RECIPES);
+        return book;
+    }
+
+    /**
+     * Checks the selected recipe against the fridge in the background, then shows it.
+     */
+    private void loadRecipeBook() {
+        Recipe recipe = selectedRecipe;
+        tasks.submitLatest("recipe-book", () -> loadRecipeBookState(recipe), this::refreshRecipeBook,
+            ex -> alert("Failed to load the recipe."));
+    }
+
     /**
      * Uploading the recipe description based on what recipe the user clicks on & the inventory after cooking
      * 
+     * @param book short ingredients and related recipes of the selected recipe
+     * 
      * Contributed by: Jessie Luo
      */
-    private void refreshRecipeBook() {
+    private void refreshRecipeBook(RecipeBookState book) {
+        Set<String> shortNames = book.shortIngredients;
         recipeBookBox.getChildren().clear();
         if (selectedRecipe == null) {
             recipeBookBox.getChildren().add(new Label("(Click a recipe to view it)"));
@@ -560,17 +826,12 @@ public class App extends Application {
         ingBox.getChildren().add(ingTitle);
 
         for (IngredientLine ing : selectedRecipe.getIngredients()) {
-            //get the ingredient from the fridge
-            FoodItem have = fridge.getFoodItem(ing.getNormalizedName());
             Label line = new Label(
                 "• " + ing.getNormalizedName().toUpperCase() +
                 " (" + formatQty(ing.getAmount()) + " " + ing.getUnit() + ")"
             );
-            //check if the ingredient is missing or not enough for the recipe
-            if (have == null) {
-                //makes the name red if there's not enough for the recipe
-                line.setStyle("-fx-text-fill: " + RED + "; -fx-font-weight: bold;");
-            } else if (have.getQuantity() < ing.getAmount()) {
+            //makes the name red if there's not enough for the recipe
+            if (shortNames.contains(ing.getNormalizedName())) {
                 line.setStyle("-fx-text-fill: " + RED + "; -fx-font-weight: bold;");
             }
             ingBox.getChildren().add(line);
@@ -583,7 +844,7 @@ public class App extends Application {
         stepBox.getChildren().add(stepTitle);
 
         int idx = 1;
-        for (String s : selectedRecipe.getSteps()) {
+        for (String s : book.steps) {
             Label stepLabel = new Label(idx + ". " + s);
             stepLabel.setWrapText(true);
             stepLabel.setMaxWidth(330);   
@@ -605,100 +866,70 @@ public class App extends Application {
                 "-fx-padding: 8 14 8 14;"
         );
 
+        Recipe recipe = selectedRecipe;
         addToList.setOnAction(e -> {
-            addMissingIngredientsToShoppingList(selectedRecipe);
-            showPage("shopping list");
-            refreshShoppingList();
+            tasks.submit(() -> {
+                addMissingIngredientsToShoppingList(recipe);
+                return null;
+            }, done -> showPage("shopping list"), ex -> alert("Failed to update shopping list."));
         });
 
+        //how many servings to cook
+        Spinner<Integer> servings = new Spinner<>(1, 99, 1);
+        servings.setPrefWidth(70);
+
         cook.setOnAction(e -> {
-            boolean ok = selectedRecipe.cook(fridge);
-            if (!ok) {
-                alert("Not enough ingredients to cook this recipe.");
-            } else {
-                refreshAll();
-                alert("Cooked! Inventory updated.");
-            }
+            int n = servings.getValue();
+            tasks.submit(() -> recipe.cook(fridge, n), ok -> {
+                if (!ok) {
+                    alert(n == 1 ? "Not enough ingredients to cook this recipe."
+                        : "Not enough ingredients to cook " + n + " servings of this recipe.");
+                } else {
+                    refreshAll();
+                    alert("Cooked! Inventory updated.");
+                }
+            }, ex -> alert("Failed to cook recipe."));
         });
         
-        actions.getChildren().addAll(addToList, cook);
+        actions.getChildren().addAll(addToList, servings, cook);
 
         //making a minecraft book-like layout
         HBox topRow = new HBox(20);
         VBox left = new VBox(10, title, img, ingBox, actions);
-        VBox right = new VBox(10, stepBox);
+        VBox right = new VBox(10, stepBox,
+            relatedRecipes("Similar recipes:", book.similar),
+            relatedRecipes("Uses the same leftovers:", book.sameLeftovers));
         left.setPrefWidth(320);
         topRow.getChildren().addAll(left, right);
         recipeBookBox.getChildren().add(topRow);
     }
     
     /**
-     * Sorts a list of recipes based on alphabetical order
-     * 
-     * @param recipes is the list of recipes 
+     * Lists related recipes as links that open them.
      * 
-     * Contributed by: Jessie Luo
+     * @param heading title of the list
+     * @param related recipes to list
+     * @return the list, with "(none)" if it is empty
      */
-    private void sortRecipesAZ(List<Recipe> recipes) {
-        for (int i = 0; i < recipes.size(); i++) {
-            for (int j = i + 1; j < recipes.size(); j++) {
-                String name1 = recipes.get(i).getName();
-                String name2 = recipes.get(j).getName();
-                if (name1.compareToIgnoreCase(name2) > 0) {
-                    Recipe temp = recipes.get(i);
-                    recipes.set(i, recipes.get(j));
-                    recipes.set(j, temp);
-                }
-            }
+    private VBox relatedRecipes(String heading, List<Recipe> related) {
+        VBox box = new VBox(2);
+        Label title = new Label(heading);
+        title.setStyle("-fx-font-size: 14px; -fx-font-weight: bold;");
+        box.getChildren().add(title);
+        if (related.isEmpty()) {
+            box.getChildren().add(new Label("(none)"));
         }
-    }
-    
-    /**
-     * Sorts a list of recipes based on ingredient availabilty 
-     * (moves recipes with less missing ingredients to the front)
-     * 
-     * @param recipes is the list of recipes 
-     * 
-     * Contributed by: Jessie Luo
-     */
-    private void sortByIngredientAvailability(List<Recipe> recipes) {
-        for (int i = 0; i < recipes.size(); i++) {
-            for (int j = i + 1; j < recipes.size(); j++) {
-                double missing1 = recipes.get(i).getMissingIngredients(fridge);
-                double missing2 = recipes.get(j).getMissingIngredients(fridge);
-                if (missing1 > missing2) {
-                    Recipe temp = recipes.get(i);
-                    recipes.set(i, recipes.get(j));
-                    recipes.set(j, temp);
-                }
-            }
+        for (Recipe r : related) {
+            Hyperlink link = new Hyperlink(r.getName());
+            link.setOnAction(e -> {
+                selectedRecipe = r;
+                loadRecipeBook();
+            });
+            box.getChildren().add(link);
         }
+        return box;
     }
-    
-    /**
-     * Sorts a list of recipes based on expirationdate 
-     * (moves recipes with ingredients that are expiring the soonest to the front)
-     * 
-     * @param recipes is the list of recipes 
-     * 
-     * Contributed by: Jessie Luo
-     */
-    private void sortByExpiringIngredients(List<Recipe> recipes) {
-        for (int i = 0; i < recipes.size(); i++) {
-            for (int j = i + 1; j < recipes.size(); j++) {
-
-                long days1 = recipes.get(i).getEarliestExpirationDays(fridge);
-                long days2 = recipes.get(j).getEarliestExpirationDays(fridge);
 
-                if (days1 > days2) {
-                    Recipe temp = recipes.get(i);
-                    recipes.set(i, recipes.get(j));
-                    recipes.set(j, temp);
-                }
-            }
-        }
-    }
-    
     /**
      * Adds the missing ingredients in a recipe to the shopping list
      * 
@@ -712,11 +943,8 @@ public class App extends Application {
         }
         
         for (IngredientLine ing : recipe.getIngredients()) {
-            FoodItem have = fridge.getFoodItem(ing.getNormalizedName());
-            double haveAmount = 0;
-            if (have != null) {
-                haveAmount = have.getQuantity();
-            }
+            // Substitutes in stock cover part of the need
+            double haveAmount = Quantity.toDouble(fridge.getEffectiveQuantity(ing.getNormalizedName()));
             double needAmount = ing.getAmount();
             if (haveAmount < needAmount) {
                 double missing = needAmount - haveAmount;
@@ -751,12 +979,48 @@ public class App extends Application {
             return;
         }
 
+        // Parses the file in the background
+        tasks.submit(() -> {
+            Recipe recipe = Recipe.fromTxtFile(result.get(),file,"fooditem-images/default_recipe.png", fridge);
+            Recipe same = fridge.findDuplicate(recipe);
+            // If the book already has this recipe, maybe under another name
+            if (same == null) {
+                fridge.addRecipe(recipe);
+            }
+            return same;
+        }, same -> {
+            if (same != null) {
+                alert("This recipe is already in the book as \"" + same.getName() + "\".");
+            }
+            refreshAll();
+        }, ex -> alert("Failed to load recipe file.\n" + ex.getMessage()));
+    }
+
+    /**
+     * Prompts for a folder of recipe text files and keeps the recipes in step
+     * with it: files added, changed or deleted there are added, replaced or
+     * removed here. Replaces any folder watched before.
+     */
+    private void watchFolderDialog() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Choose Recipe Folder");
+        File dir = chooser.showDialog(null);
+        if (dir == null) {
+            return;
+        }
+        if (recipeWatcher != null) {
+            recipeWatcher.stop();
+        }
+        // Changes run on the background thread like any other fridge work, then the UI refreshes
+        recipeWatcher = new RecipeWatcher(fridge, dir.toPath(), work -> tasks.submit(() -> {
+            work.run();
+            return null;
+        }, done -> refreshAll(), ex -> alert("Failed to reload recipes.\n" + ex.getMessage())));
         try {
-            Recipe recipe = Recipe.fromTxtFile(result.get(),file,"fooditem-images/default_recipe.png");
-            fridge.addRecipe(recipe);
-            refreshRecipeGrid();
-        } catch (Exception ex) {
-            alert("Failed to load recipe file.\n" + ex.getMessage());
+            recipeWatcher.start();
+        } catch (IOException ex) {
+            recipeWatcher = null;
+            alert("Cannot watch " + dir + ".\n" + ex.getMessage());
         }
     }
 
@@ -800,11 +1064,24 @@ public class App extends Application {
         return row;
     }
 
-    private void refreshShoppingList() {
-        shoppingListBox.getChildren().clear();
-        
+    /**
+     * Returns the shopping list sorted by name. Runs on the background thread.
+     * 
+     * @return sorted shopping list lines
+     */
+    private List<IngredientLine> loadShoppingList() {
         List<IngredientLine> lines = new ArrayList<>(fridge.getShoppingListItems());
         lines.sort(Comparator.comparing(IngredientLine::getNormalizedName));
+        return lines;
+    }
+
+    /**
+     * Rebuilds the shopping list UI.
+     * 
+     * @param lines sorted shopping list lines
+     */
+    private void refreshShoppingList(List<IngredientLine> lines) {
+        shoppingListBox.getChildren().clear();
 
         if (lines.isEmpty()) {
             shoppingListBox.getChildren().add(new Label("• (none)"));
@@ -830,8 +1107,10 @@ public class App extends Application {
             
             // remove 1 unit each click (you can change to line.getAmount() to remove all)
             x.setOnAction(e -> {
-                fridge.removeShoppingListItem(line.getNormalizedName(), 1);
-                refreshShoppingList();
+                tasks.submit(() -> {
+                    fridge.removeShoppingListItem(line.getNormalizedName(), 1);
+                    return loadShoppingList();
+                }, this::refreshShoppingList, ex -> alert("Failed to update shopping list."));
             });
 
             Region spacer = new Region();
@@ -940,11 +1219,17 @@ public class App extends Application {
                         cat = Category.OTHER;
                     }
     
-                    // Adds item to fridge
-                    fridge.addFood(new FoodItem(name, qty, unit, cat, exp, img));
-    
-                    // Updates UI
-                    refreshAll();
+                    // Adds item to fridge, then updates UI
+                    FoodItem food = new FoodItem(name, qty, unit, cat, exp, img);
+                    tasks.submit(() -> {
+                        fridge.beginEdit("Add " + food.getName());
+                        try {
+                            fridge.addFood(food);
+                        } finally {
+                            fridge.endEdit();
+                        }
+                        return food;
+                    }, added -> refreshAll(), ex -> alert("Failed to add item."));
     
                 } catch (Exception ex) {
                     alert("Invalid input. Check quantity and fields.");
@@ -958,9 +1243,9 @@ public class App extends Application {
      * If the quantity is set to 0, the item is removed from the fridge.
      * 
      * @param stage the parent window used for the file chooser
-     * @param item the FoodItem to edit
+     * @param item the item to edit, as last shown
      */
-    private void editItemDialog(Stage stage, FoodItem item) {
+    private void editItemDialog(Stage stage, ItemRow item) {
         if (item == null) {
             alert("No item selected.");
         } 
@@ -1032,31 +1317,33 @@ public class App extends Application {
                         LocalDate newExp = expPicker.getValue();
                         String newImg = imgField.getText().trim();
     
-                        // If quantityis zero
+                        // If the item is about to be removed
                         if (newQty == 0) {
-                            // Removes item from fridge
-                            fridge.removeFood(item.getName(), item.getQuantity());
                             // Prevents dangling UI reference
-                            selectedFoodItem = null;
-                        }
-                        else {
-                            // Updates quantity directly
-                            item.setQuantity(newQty);
-                        }
-    
-                        // Applies category and expiration updates
-                        if (newCat != null) {
-                            item.setCategory(newCat);
-                        }
-                        if (newExp != null) {
-                            item.setExpirationDate(newExp);
+                            selectedItem = null;
                         }
     
-                        // Rebuilds expiration index
-                        fridge.rebuildExpirationIndex();
-                        
-                        // Refreshes UI
-                        refreshAll();
+                        tasks.submit(() -> {
+                            // The whole edit is undone as one step
+                            fridge.beginEdit((newQty == 0 ? "Delete " : "Edit ") + item.getName());
+                            try {
+                                // A quantity of zero removes the item; either way this corrects
+                                // the count, so it does not count as consumption
+                                fridge.setQuantity(item.getName(), newQty);
+            
+                                // All updates go through the fridge so its indexes
+                                // and version stay in sync
+                                if (newCat != null) {
+                                    fridge.setCategory(item.getName(), newCat);
+                                }
+                                if (newExp != null) {
+                                    fridge.setExpirationDate(item.getName(), newExp);
+                                }
+                            } finally {
+                                fridge.endEdit();
+                            }
+                            return item;
+                        }, edited -> refreshAll(), ex -> alert("Failed to update item."));
                     } 
                     catch (Exception ex) {
                         alert("Invalid input. Quantity must be a number.");
@@ -1077,8 +1364,10 @@ public class App extends Application {
         d.setHeaderText("Enter item name to add:");
         d.setContentText("Name:");
         d.showAndWait().ifPresent(name -> {
-            fridge.addShoppingListItem(name, 1, "");
-            refreshShoppingList();
+            tasks.submit(() -> {
+                fridge.addShoppingListItem(name, 1, "");
+                return loadShoppingList();
+            }, this::refreshShoppingList, ex -> alert("Failed to update shopping list."));
         });
     }
 
@@ -1090,35 +1379,38 @@ public class App extends Application {
     private void exportShoppingList(Stage stage) {
         if (stage != null) {
     
-            try {
-                // Make sure shopping list is up to date
-                fridge.createShoppingList();
-    
-                FileChooser chooser = new FileChooser();
-                chooser.setTitle("Save Shopping List");
-                chooser.getExtensionFilters()
-                        .add(new FileChooser.ExtensionFilter("Text Files", "*.txt"));
-                chooser.setInitialFileName("shopping-list.txt");
-    
-                File file = chooser.showSaveDialog(stage);
-    
-                if (file != null) {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Save Shopping List");
+            chooser.getExtensionFilters()
+                    .add(new FileChooser.ExtensionFilter("Text Files", "*.txt"));
+            chooser.setInitialFileName("shopping-list.txt");
+
+            // The dialog has to stay on the FX thread
+            File file = chooser.showSaveDialog(stage);
+
+            // Builds and writes the list in the background
+            tasks.submit(() -> {
+                // Make sure shopping list is up to date, including what should run out before the next shop
+                fridge.createShoppingList(SHOPPING_LEAD_DAYS);
     
-                    FileWriter fw = new FileWriter(file);
+                if (file == null) {
+                    return false;
+                }
     
+                try (FileWriter fw = new FileWriter(file)) {
                     for (IngredientLine line : fridge.getShoppingListItems()) {
                         fw.write(line.getNormalizedName() + " (x" +
                                  line.getAmount() + " " +
                                  line.getUnit() + ")\n");
                     }
-    
-                    fw.close();
+                }
+                return true;
+            }, exported -> {
+                refreshAll();
+                if (exported) {
                     alert("Exported!");
                 }
-    
-            } catch (Exception e) {
-                alert("Export failed: " + e.getMessage());
-            }
+            }, e -> alert("Export failed: " + e.getMessage()));
         }
     }
 
@@ -1176,14 +1468,218 @@ public class App extends Application {
 
     /**
      * Refreshes all UI sections to match the current application state.
+     * The fridge is read in the background; rapid calls are merged into one refresh.
      */
     private void refreshAll() {
-        refreshInventoryGrid();
+        String inventorySort = inventorySortBox.getValue();
+        String inventoryQuery = inventorySearchField.getText();
+        String recipeSort = recipeSortBox.getValue();
+        String recipeQuery = recipeSearchField.getText();
+        long recipeDiet = dietMask(recipeDietBox.getValue());
+        Recipe recipe = selectedRecipe;
+        String itemName = selectedItem == null ? null : selectedItem.getName();
+
+        tasks.coalesce("refresh", () -> {
+            KitchenEvents.UiRefresh event = new KitchenEvents.UiRefresh();
+            event.begin();
+            ViewState state = new ViewState();
+            state.items = loadInventoryItems(inventorySort, inventoryQuery);
+            state.soon = ItemRow.of(fridge.getItemsExpiringWithin(3));
+            state.lowStock = ItemRow.of(fridge.getLowStockItems());
+            state.itemName = itemName;
+            state.item = ItemRow.of(itemName == null ? null : fridge.getFoodItem(itemName));
+            state.recipes = loadSortedRecipes(recipeSort, recipeQuery, recipeDiet);
+            state.cookable = new HashSet<>(fridge.getCookableNow());
+            state.oneAway = new HashSet<>(fridge.getOneIngredientAway());
+            state.recipe = recipe;
+            state.book = loadRecipeBookState(recipe);
+            state.shoppingList = loadShoppingList();
+            state.undoLabel = fridge.getUndoHistory().getUndoLabel();
+            state.redoLabel = fridge.getUndoHistory().getRedoLabel();
+            
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = "load";
+                event.itemCount = fridge.getItemCount();
+                event.recipeCount = fridge.getRecipeCount();
+                event.commit();
+            }
+            return state;
+        }, this::showViewState, ex -> alert("Failed to refresh."));
+    }
+
+    /**
+     * Rebuilds every UI section from a background snapshot.
+     * 
+     * @param state snapshot of the fridge
+     */
+    private void showViewState(ViewState state) {
+        KitchenEvents.UiRefresh event = new KitchenEvents.UiRefresh();
+        event.begin();
+        refreshInventoryGrid(state.items);
+        // If the same item is still selected, shows it as it is now
+        if (selectedItem != null && selectedItem.getName().equals(state.itemName)) {
+            selectedItem = state.item;
+        }
         refreshItemDetails();
-        refreshInfoPanel();
-        refreshRecipeGrid();
-        refreshRecipeBook();
-        refreshShoppingList();
+        refreshInfoPanel(state.soon, state.lowStock);
+        cookableNow = state.cookable;
+        oneAway = state.oneAway;
+        refreshRecipeGrid(state.recipes);
+        // If the selection changed while loading, checks the new recipe instead
+        if (state.recipe == selectedRecipe) {
+            refreshRecipeBook(state.book);
+        }
+        else {
+            loadRecipeBook();
+        }
+        refreshShoppingList(state.shoppingList);
+        refreshUndoButtons(state.undoLabel, state.redoLabel);
+        
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "render";
+            event.itemCount = state.items.size();
+            event.recipeCount = state.recipes.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Enables the undo and redo buttons and says what they would do.
+     * 
+     * @param undoLabel what undo would reverse, or null
+     * @param redoLabel what redo would repeat, or null
+     */
+    private void refreshUndoButtons(String undoLabel, String redoLabel) {
+        undoButton.setDisable(undoLabel == null);
+        undoButton.setTooltip(undoLabel == null ? null : new Tooltip("Undo " + undoLabel));
+        redoButton.setDisable(redoLabel == null);
+        redoButton.setTooltip(redoLabel == null ? null : new Tooltip("Redo " + redoLabel));
+    }
+
+    /**
+     * Snapshot of everything the UI shows, computed off the FX thread.
+     */
+    private static class ViewState {
+        /** sorted inventory */
+        List<ItemRow> items;
+        /** items expiring soon */
+        List<ItemRow> soon;
+        /** low stock items */
+        List<ItemRow> lowStock;
+        /** name of the item selected when the snapshot was taken, or null */
+        String itemName;
+        /** that item now, or null if it is gone */
+        ItemRow item;
+        /** sorted recipes */
+        List<Recipe> recipes;
+        /** recipes that can be cooked now */
+        Set<Recipe> cookable;
+        /** recipes short of one ingredient */
+        Set<Recipe> oneAway;
+        /** recipe the snapshot was taken for */
+        Recipe recipe;
+        /** short ingredients and related recipes of that recipe */
+        RecipeBookState book;
+        /** sorted shopping list */
+        List<IngredientLine> shoppingList;
+        /** what undo would reverse, or null */
+        String undoLabel;
+        /** what redo would repeat, or null */
+        String redoLabel;
+    }
+
+    /**
+     * What the UI shows of a food item, copied off the FX thread. The fridge
+     * keeps changing its items on the worker thread, so the FX thread only
+     * ever sees these copies.
+     */
+    private static final class ItemRow {
+        /** display name */
+        private final String name;
+        /** quantity in thousandths */
+        private final long quantity;
+        /** unit */
+        private final String unit;
+        /** category */
+        private final Category category;
+        /** expiration date */
+        private final LocalDate expirationDate;
+        /** image path */
+        private final String imgFilePath;
+
+        private ItemRow(FoodItem item) {
+            name = item.getName();
+            quantity = item.getScaledQuantity();
+            unit = item.getUnit();
+            category = item.getCategory();
+            expirationDate = item.getExpirationDate();
+            imgFilePath = item.getImgFilePath();
+        }
+
+        /** @return a row for an item, or null for null */
+        static ItemRow of(FoodItem item) {
+            return item == null ? null : new ItemRow(item);
+        }
+
+        /** @return rows for items, in the same order */
+        static List<ItemRow> of(List<FoodItem> items) {
+            List<ItemRow> rows = new ArrayList<>(items.size());
+            for (FoodItem item : items) {
+                rows.add(new ItemRow(item));
+            }
+            return rows;
+        }
+
+        /** @return name */
+        String getName() {
+            return name;
+        }
+
+        /** @return quantity */
+        double getQuantity() {
+            return Quantity.toDouble(quantity);
+        }
+
+        /** @return unit */
+        String getUnit() {
+            return unit;
+        }
+
+        /** @return category */
+        Category getCategory() {
+            return category;
+        }
+
+        /** @return expiration date */
+        LocalDate getExpirationDate() {
+            return expirationDate;
+        }
+
+        /** @return image path */
+        String getImgFilePath() {
+            return imgFilePath;
+        }
+
+        /** @return days from today until expiration, negative once expired */
+        long daysUntilExpiration(LocalDate today) {
+            return java.time.temporal.ChronoUnit.DAYS.between(today, expirationDate);
+        }
+    }
+
+    /**
+     * What the recipe page shows about the selected recipe, computed off the FX thread.
+     */
+    private static class RecipeBookState {
+        /** ingredients that are missing or short */
+        Set<String> shortIngredients;
+        /** the recipe's steps */
+        List<String> steps;
+        /** recipes with similar ingredients */
+        List<Recipe> similar;
+        /** recipes that would use up the same ingredients in stock */
+        List<Recipe> sameLeftovers;
     }
 
     /**
@@ -1216,6 +1712,40 @@ public class App extends Application {
      * Falls back to a placeholder if nothing can be loaded.
      */
     private Image loadImageSafe(String pathOrUrl) {
+        KitchenEvents.ImageLoad event = new KitchenEvents.ImageLoad();
+        event.begin();
+        Image img = findImage(pathOrUrl);
+        boolean found = img != null;
+        
+        if (found) {
+            IMAGE_HITS.inc();
+        }
+        else {
+            // 5) Final fallback placeholder
+            IMAGE_MISSES.inc();
+            img = tryResourceThenDisk("placeholder.png", "placeholder.png");
+            if (img == null) {
+                img = new Image("data:,", true);
+            }
+        }
+        
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = pathOrUrl;
+            event.found = found;
+            event.itemCount = fridge.getItemCount();
+            event.recipeCount = fridge.getRecipeCount();
+            event.commit();
+        }
+        return img;
+    }
+    
+    /**
+     * Looks for an image in the places loadImageSafe tries before the placeholder.
+     * 
+     * @return the image, or null if it was not found
+     */
+    private Image findImage(String pathOrUrl) {
         // Direct URL or file URI
         if (pathOrUrl != null && !pathOrUrl.isBlank()) {
             try {
@@ -1250,19 +1780,9 @@ public class App extends Application {
         if (pathOrUrl != null && !pathOrUrl.isBlank()) {
             String normalized = pathOrUrl.toLowerCase().replaceAll("[^a-z0-9]+", "");
         
-            Image byName = tryResourceThenDisk("/fooditem-images/" + normalized + ".png", "fooditem-images/" + normalized + ".png");
-            if (byName != null) {
-                return byName;
-            }
-        }
-    
-        // 5) Final fallback placeholder
-        Image placeholder = tryResourceThenDisk("placeholder.png", "placeholder.png");
-        if (placeholder != null) {
-            return placeholder;
+            return tryResourceThenDisk("/fooditem-images/" + normalized + ".png", "fooditem-images/" + normalized + ".png");
         }
-    
-        return new Image("data:,", true);
+        return null;
     }
     
     /**
@@ -1332,6 +1852,10 @@ public class App extends Application {
         f.addFood(new FoodItem("chicken", 1, "x", Category.PROTEINS, LocalDate.now().plusDays(3), "fooditem-images/chicken.png"));
         f.addFood(new FoodItem("tomato", 2, "x", Category.FRUITS_VEGETABLES, LocalDate.now().plusDays(8), "fooditem-images/tomato.png"));
 
+        // Common substitutes
+        f.addSubstitution("butter", "margarine", 1);
+        f.addSubstitution("milk", "oat milk", 1);
+
         // Recipe ingredients
         List<IngredientLine> ing = new ArrayList<>();
         ing.add(new IngredientLine("potato", 2, "x"));
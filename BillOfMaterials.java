@@ -0,0 +1,189 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Works out the raw ingredients a production order needs, breaking lines that
+ * use sub-recipes (see IngredientLine.ofRecipe) down into what those are made of.
+ *
+ * Each recipe is broken down once per BillOfMaterials and the result kept,
+ * so a stock used by many dishes is only worked out once. Recipes never change
+ * their ingredients, which keeps the kept results valid. A recipe that ends up
+ * needing itself is reported instead of followed. Large orders are broken down
+ * level by level in parallel: a recipe only needs the levels below it, which
+ * are finished first.
+ *
+ * Amounts are in thousandths (see Quantity). Safe to use from several threads.
+ */
+public class BillOfMaterials {
+    /** distinct recipes to break down before it is worth going parallel */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /** raw ingredients for one batch of each recipe broken down so far */
+    private final Map<Recipe, Map<String, Long>> perBatch = new ConcurrentHashMap<>();
+    /** unit of the first raw line seen for each ingredient */
+    private final Map<String, String> units = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the raw ingredients for some batches of one recipe.
+     *
+     * @param recipe recipe to make
+     * @param batches number of batches
+     * @return amounts in thousandths by ingredient name, in name order
+     * @throws IllegalArgumentException if the recipe needs itself
+     */
+    public Map<String, Long> explode(Recipe recipe, int batches) {
+        return explode(Collections.singletonMap(recipe, batches));
+    }
+
+    /**
+     * Returns the raw ingredients for a production order.
+     *
+     * @param order batches to make of each recipe
+     * @return amounts in thousandths by ingredient name, in name order
+     * @throws IllegalArgumentException if a recipe needs itself
+     */
+    public Map<String, Long> explode(Map<Recipe, Integer> order) {
+        List<List<Recipe>> levels = levels(order.keySet());
+        int pending = 0;
+        for (List<Recipe> level : levels) {
+            pending += level.size();
+        }
+        boolean parallel = pending >= PARALLEL_THRESHOLD;
+        for (List<Recipe> level : levels) {
+            (parallel ? level.parallelStream() : level.stream())
+                .forEach(r -> perBatch.putIfAbsent(r, breakDown(r)));
+        }
+
+        Map<String, Long> total = (parallel ? order.entrySet().parallelStream() : order.entrySet().stream())
+            .flatMap(o -> perBatch.get(o.getKey()).entrySet().stream()
+                .map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), Math.multiplyExact(e.getValue(), (long) o.getValue()))))
+            .collect(Collectors.groupingByConcurrent(Map.Entry::getKey, Collectors.summingLong(Map.Entry::getValue)));
+        return new TreeMap<>(total);
+    }
+
+    /**
+     * Returns how much of each ingredient the fridge is short of for a set of
+     * needs, counting substitutes.
+     *
+     * @param need amounts in thousandths by ingredient name, e.g. from explode()
+     * @param fridge fridge to check; must be called on its owner thread
+     * @return missing amounts in thousandths, only for ingredients that are short
+     */
+    public static Map<String, Long> shortfall(Map<String, Long> need, Fridge fridge) {
+        Map<String, Long> missing = new TreeMap<>();
+        for (Map.Entry<String, Long> e : need.entrySet()) {
+            long have = fridge.getEffectiveQuantity(e.getKey());
+            if (have < e.getValue()) {
+                missing.put(e.getKey(), e.getValue() - have);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the unit an ingredient's lines use.
+     *
+     * @param name normalized ingredient name, e.g. a key of explode()
+     * @return unit of the first line seen for it, or null if none was broken down
+     */
+    public String getUnit(String name) {
+        return units.get(name);
+    }
+
+    /** @return number of recipes broken down and kept so far */
+    int size() {
+        return perBatch.size();
+    }
+
+    /**
+     * Breaks one batch of a recipe down, using the kept results for its sub-recipes.
+     */
+    private Map<String, Long> breakDown(Recipe recipe) {
+        Map<String, Long> raw = new HashMap<>();
+        for (IngredientLine line : recipe.getIngredients()) {
+            Recipe sub = line.getSubRecipe();
+            if (sub == null) {
+                raw.merge(line.getNormalizedName(), line.getScaledAmount(), Long::sum);
+                if (line.getUnit() != null) {
+                    units.putIfAbsent(line.getNormalizedName(), line.getUnit());
+                }
+                continue;
+            }
+            for (Map.Entry<String, Long> e : perBatch.get(sub).entrySet()) {
+                raw.merge(e.getKey(), scale(e.getValue(), line.getScaledAmount()), Long::sum);
+            }
+        }
+        return raw;
+    }
+
+    /**
+     * Multiplies an amount by a number of batches, both in thousandths,
+     * rounding up so a requirement is never understated.
+     */
+    private static long scale(long amount, long batches) {
+        return Math.addExact(Math.multiplyExact(amount, batches), Quantity.SCALE - 1) / Quantity.SCALE;
+    }
+
+    /**
+     * Groups the recipes that still need breaking down by height: level 0 uses
+     * no unfinished sub-recipes, level n only sub-recipes below n.
+     */
+    private List<List<Recipe>> levels(Collection<Recipe> roots) {
+        Map<Recipe, Integer> height = new IdentityHashMap<>();
+        Set<Recipe> onPath = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Recipe> path = new ArrayDeque<>();
+        for (Recipe r : roots) {
+            height(r, height, onPath, path);
+        }
+        List<List<Recipe>> levels = new ArrayList<>();
+        for (Map.Entry<Recipe, Integer> e : height.entrySet()) {
+            if (e.getValue() < 0) {
+                continue;
+            }
+            while (levels.size() <= e.getValue()) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(e.getValue()).add(e.getKey());
+        }
+        return levels;
+    }
+
+    /**
+     * Returns a recipe's height, or -1 if it is already broken down.
+     *
+     * @throws IllegalArgumentException if the recipe is on the path that led to it
+     */
+    private int height(Recipe recipe, Map<Recipe, Integer> height, Set<Recipe> onPath, Deque<Recipe> path) {
+        Integer known = height.get(recipe);
+        if (known != null) {
+            return known;
+        }
+        if (perBatch.containsKey(recipe)) {
+            height.put(recipe, -1);
+            return -1;
+        }
+        path.addLast(recipe);
+        if (!onPath.add(recipe)) {
+            StringBuilder cycle = new StringBuilder();
+            boolean inCycle = false;
+            for (Recipe r : path) {
+                inCycle |= r == recipe;
+                if (inCycle) {
+                    cycle.append(cycle.length() == 0 ? "" : " -> ").append(r.getName());
+                }
+            }
+            throw new IllegalArgumentException("Recipe cycle: " + cycle);
+        }
+        int h = 0;
+        for (IngredientLine line : recipe.getIngredients()) {
+            if (line.getSubRecipe() != null) {
+                h = Math.max(h, height(line.getSubRecipe(), height, onPath, path) + 1);
+            }
+        }
+        onPath.remove(recipe);
+        path.removeLast();
+        height.put(recipe, h);
+        return h;
+    }
+}
@@ -0,0 +1,326 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Append-only record of what was used up or thrown away, and when.
+ * An event recorded by mistake is taken back with retract, which adds an
+ * event with the negative amount rather than changing the old one.
+ *
+ * Raw events are kept in fixed-size column segments (one array per field),
+ * so years of history stay small. Each event also updates daily, weekly and
+ * monthly totals per ingredient and per category, so usage and waste
+ * questions are answered from those totals without reading the events.
+ */
+public class ConsumptionHistory {
+    /** events per segment */
+    private static final int SEGMENT_SIZE = 4096;
+
+    /** what happened to the food */
+    public enum Kind { CONSUMED, WASTED }
+
+    /** length of the periods totals are kept for */
+    public enum Granularity {
+        DAY, WEEK, MONTH;
+
+        /** @return the first day of the period that contains the date */
+        public LocalDate startOf(LocalDate date) {
+            switch (this) {
+                case WEEK: return date.minusDays(date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+                case MONTH: return date.withDayOfMonth(1);
+                default: return date;
+            }
+        }
+    }
+
+    /** raw event segments, oldest first */
+    private List<Segment> segments;
+    /** ingredient names by id */
+    private List<String> names;
+    /** ingredient ids by normalized name */
+    private HashMap<String, Integer> idsByName;
+    /** totals per ingredient id, by granularity and period start (epoch day) */
+    private List<EnumMap<Granularity, TreeMap<Integer, long[]>>> ingredientTotals;
+    /** totals per category, by granularity and period start (epoch day) */
+    private EnumMap<Category, EnumMap<Granularity, TreeMap<Integer, long[]>>> categoryTotals;
+    /** number of events recorded */
+    private int size;
+
+    /**
+     * Creates an empty history.
+     */
+    public ConsumptionHistory() {
+        segments = new ArrayList<>();
+        names = new ArrayList<>();
+        idsByName = new HashMap<>();
+        ingredientTotals = new ArrayList<>();
+        categoryTotals = new EnumMap<>(Category.class);
+        for (Category c : Category.values()) {
+            categoryTotals.put(c, newTotals());
+        }
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param name ingredient name
+     * @param category ingredient category, or null for OTHER
+     * @param kind whether it was consumed or wasted
+     * @param amount amount in thousandths (see Quantity)
+     * @param day day it happened
+     */
+    public void record(String name, Category category, Kind kind, long amount, LocalDate day) {
+        // If there is nothing to record
+        if (amount <= 0) {
+            return;
+        }
+        append(name, category, kind, amount, day);
+    }
+
+    /**
+     * Takes back an event recorded by mistake, such as a removal that was
+     * undone. The totals go down by the amount.
+     *
+     * @param name ingredient name
+     * @param category category the event was recorded under, or null for OTHER
+     * @param kind whether it was recorded as consumed or wasted
+     * @param amount amount to take back in thousandths
+     * @param day day the event was recorded for
+     */
+    public void retract(String name, Category category, Kind kind, long amount, LocalDate day) {
+        if (amount <= 0) {
+            return;
+        }
+        append(name, category, kind, -amount, day);
+    }
+
+    /**
+     * Adds an event and its amount to the totals.
+     */
+    private void append(String name, Category category, Kind kind, long amount, LocalDate day) {
+        if (category == null) {
+            category = Category.OTHER;
+        }
+
+        int id = idOf(name.toLowerCase().trim());
+        int epochDay = (int) day.toEpochDay();
+        Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || tail.size == SEGMENT_SIZE) {
+            tail = new Segment();
+            segments.add(tail);
+        }
+        tail.append(epochDay, id, category, kind, amount);
+        size++;
+
+        for (Granularity g : Granularity.values()) {
+            int period = (int) g.startOf(day).toEpochDay();
+            addTo(ingredientTotals.get(id).get(g), period, kind, amount);
+            addTo(categoryTotals.get(category).get(g), period, kind, amount);
+        }
+    }
+
+    /**
+     * Returns totals for an ingredient in each period overlapping the date range.
+     * Periods with no events are left out.
+     *
+     * @param name ingredient name
+     * @param granularity period length
+     * @param from first day (inclusive)
+     * @param to last day (inclusive)
+     * @return totals, oldest period first
+     */
+    public List<Bucket> getTotals(String name, Granularity granularity, LocalDate from, LocalDate to) {
+        Integer id = idsByName.get(name.toLowerCase().trim());
+        if (id == null) {
+            return new ArrayList<>();
+        }
+        return buckets(ingredientTotals.get(id).get(granularity), granularity, from, to);
+    }
+
+    /**
+     * Returns totals for a category in each period overlapping the date range.
+     * Periods with no events are left out.
+     *
+     * @param category category
+     * @param granularity period length
+     * @param from first day (inclusive)
+     * @param to last day (inclusive)
+     * @return totals, oldest period first
+     */
+    public List<Bucket> getTotals(Category category, Granularity granularity, LocalDate from, LocalDate to) {
+        return buckets(categoryTotals.get(category).get(granularity), granularity, from, to);
+    }
+
+    /**
+     * Visits the raw events in a date range, in the order they were recorded.
+     * Segments entirely outside the range are skipped.
+     *
+     * @param from first day (inclusive)
+     * @param to last day (inclusive)
+     * @param visitor called for each event
+     */
+    public void forEachEvent(LocalDate from, LocalDate to, EventVisitor visitor) {
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        Category[] cats = Category.values();
+        Kind[] kinds = Kind.values();
+        for (Segment s : segments) {
+            // If no event in the segment can be in range
+            if (s.maxDay < lo || s.minDay > hi) {
+                continue;
+            }
+            for (int i = 0; i < s.size; i++) {
+                if (s.day[i] >= lo && s.day[i] <= hi) {
+                    visitor.visit(LocalDate.ofEpochDay(s.day[i]), names.get(s.ingredient[i]),
+                        cats[s.category[i]], kinds[s.kind[i]], s.amount[i]);
+                }
+            }
+        }
+    }
+
+    /** @return number of events recorded */
+    public int size() {
+        return size;
+    }
+
+    /** @return names of every ingredient with history */
+    public List<String> getIngredientNames() {
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Looks up or assigns the id for a normalized name.
+     */
+    private int idOf(String key) {
+        Integer id = idsByName.get(key);
+        if (id == null) {
+            id = names.size();
+            names.add(key);
+            idsByName.put(key, id);
+            ingredientTotals.add(newTotals());
+        }
+        return id;
+    }
+
+    /** @return empty totals for every granularity */
+    private static EnumMap<Granularity, TreeMap<Integer, long[]>> newTotals() {
+        EnumMap<Granularity, TreeMap<Integer, long[]>> totals = new EnumMap<>(Granularity.class);
+        for (Granularity g : Granularity.values()) {
+            totals.put(g, new TreeMap<>());
+        }
+        return totals;
+    }
+
+    /**
+     * Adds an amount to one period's total.
+     */
+    private static void addTo(TreeMap<Integer, long[]> totals, int period, Kind kind, long amount) {
+        totals.computeIfAbsent(period, p -> new long[Kind.values().length])[kind.ordinal()] += amount;
+    }
+
+    /** @return the periods of a totals map that overlap the range */
+    private static List<Bucket> buckets(TreeMap<Integer, long[]> totals, Granularity g, LocalDate from, LocalDate to) {
+        List<Bucket> list = new ArrayList<>();
+        // If the range is empty
+        if (to.isBefore(from)) {
+            return list;
+        }
+        int lo = (int) g.startOf(from).toEpochDay();
+        int hi = (int) to.toEpochDay();
+        for (Map.Entry<Integer, long[]> e : totals.subMap(lo, true, hi, true).entrySet()) {
+            long[] t = e.getValue();
+            list.add(new Bucket(LocalDate.ofEpochDay(e.getKey()), t[Kind.CONSUMED.ordinal()], t[Kind.WASTED.ordinal()]));
+        }
+        return list;
+    }
+
+    /**
+     * Receives raw events from forEachEvent.
+     */
+    public interface EventVisitor {
+        /**
+         * @param day day of the event
+         * @param name normalized ingredient name
+         * @param category category at the time
+         * @param kind consumed or wasted
+         * @param amount amount in thousandths; negative for a retraction
+         */
+        void visit(LocalDate day, String name, Category category, Kind kind, long amount);
+    }
+
+    /**
+     * Consumed and wasted totals for one period.
+     */
+    public static class Bucket {
+        /** first day of the period */
+        private final LocalDate start;
+        /** consumed, in thousandths */
+        private final long consumed;
+        /** wasted, in thousandths */
+        private final long wasted;
+
+        Bucket(LocalDate start, long consumed, long wasted) {
+            this.start = start;
+            this.consumed = consumed;
+            this.wasted = wasted;
+        }
+
+        /** @return first day of the period */
+        public LocalDate getStart() {
+            return start;
+        }
+
+        /** @return amount consumed */
+        public double getConsumed() {
+            return Quantity.toDouble(consumed);
+        }
+
+        /** @return amount wasted */
+        public double getWasted() {
+            return Quantity.toDouble(wasted);
+        }
+
+        /** @return amount consumed in thousandths */
+        public long getScaledConsumed() {
+            return consumed;
+        }
+
+        /** @return amount wasted in thousandths */
+        public long getScaledWasted() {
+            return wasted;
+        }
+    }
+
+    /**
+     * A block of events stored one array per field.
+     */
+    private static class Segment {
+        /** epoch day of each event */
+        final int[] day = new int[SEGMENT_SIZE];
+        /** ingredient id of each event */
+        final int[] ingredient = new int[SEGMENT_SIZE];
+        /** category ordinal of each event */
+        final byte[] category = new byte[SEGMENT_SIZE];
+        /** kind ordinal of each event */
+        final byte[] kind = new byte[SEGMENT_SIZE];
+        /** amount of each event in thousandths */
+        final long[] amount = new long[SEGMENT_SIZE];
+        /** earliest day in the segment */
+        int minDay = Integer.MAX_VALUE;
+        /** latest day in the segment */
+        int maxDay = Integer.MIN_VALUE;
+        /** events used */
+        int size;
+
+        void append(int d, int id, Category c, Kind k, long amt) {
+            day[size] = d;
+            ingredient[size] = id;
+            category[size] = (byte) c.ordinal();
+            kind[size] = (byte) k.ordinal();
+            amount[size] = amt;
+            minDay = Math.min(minDay, d);
+            maxDay = Math.max(maxDay, d);
+            size++;
+        }
+    }
+}
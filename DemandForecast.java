@@ -0,0 +1,172 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Estimates how fast each ingredient is used, from consumption as it happens.
+ *
+ * Each ingredient keeps an exponentially smoothed daily usage. A day's total
+ * is folded in once the day is over, and days with no use pull the rate down,
+ * so every new event costs a few arithmetic steps and nothing is refitted.
+ */
+public class DemandForecast {
+    /** weight of the newest day in the smoothed rate */
+    private static final double ALPHA = 0.3;
+
+    /** usage model per normalized ingredient name */
+    private HashMap<String, Model> models;
+
+    /**
+     * Creates a forecast with no history.
+     */
+    public DemandForecast() {
+        models = new HashMap<>();
+    }
+
+    /**
+     * Adds a consumption event.
+     *
+     * @param name ingredient name
+     * @param unit unit of the amount
+     * @param amount amount used, in thousandths (see Quantity)
+     * @param day day it was used
+     */
+    public void observe(String name, String unit, long amount, LocalDate day) {
+        // If there is nothing to add
+        if (amount <= 0) {
+            return;
+        }
+        Model m = models.computeIfAbsent(name.toLowerCase().trim(), k -> new Model());
+        m.unit = unit;
+        m.add(day.toEpochDay(), amount);
+    }
+
+    /**
+     * Takes back a consumption event, such as a removal that was undone.
+     * The smoothed rate is a weighted sum of each day's use, so a day already
+     * folded in loses exactly its share.
+     *
+     * @param name ingredient name
+     * @param amount amount to take back, in thousandths
+     * @param day day the event was observed for
+     */
+    public void retract(String name, long amount, LocalDate day) {
+        Model m = models.get(name.toLowerCase().trim());
+        if (m != null && amount > 0) {
+            m.retract(day.toEpochDay(), amount);
+        }
+    }
+
+    /**
+     * Returns the smoothed daily usage, counting only days before today.
+     * On the first day an ingredient is seen, that day's use so far is the estimate.
+     *
+     * @param name ingredient name
+     * @param today current day
+     * @return usage per day in thousandths, 0 if never used
+     */
+    public double getDailyRate(String name, LocalDate today) {
+        Model m = models.get(name.toLowerCase().trim());
+        return m == null ? 0 : m.rateAsOf(today.toEpochDay());
+    }
+
+    /**
+     * Returns the expected use over the coming days.
+     *
+     * @param name ingredient name
+     * @param today current day
+     * @param days number of days ahead
+     * @return expected use in thousandths
+     */
+    public long getProjectedUse(String name, LocalDate today, int days) {
+        return (long) Math.ceil(getDailyRate(name, today) * Math.max(0, days));
+    }
+
+    /**
+     * Returns the day the stock is expected to run out.
+     *
+     * @param name ingredient name
+     * @param stock amount on hand in thousandths
+     * @param today current day
+     * @return the day stock runs out, or null if it is not being used
+     */
+    public LocalDate getDepletionDate(String name, long stock, LocalDate today) {
+        double rate = getDailyRate(name, today);
+        if (rate <= 0) {
+            return null;
+        }
+        return today.plusDays((long) Math.floor(stock / rate));
+    }
+
+    /** @return the last unit seen for an ingredient, or null */
+    public String getUnit(String name) {
+        Model m = models.get(name.toLowerCase().trim());
+        return m == null ? null : m.unit;
+    }
+
+    /** @return names of every ingredient with a usage model */
+    public Set<String> getIngredientNames() {
+        return Collections.unmodifiableSet(models.keySet());
+    }
+
+    /**
+     * Smoothed usage for one ingredient.
+     */
+    private static class Model {
+        /** smoothed use per day, through the day before lastDay */
+        double rate;
+        /** whether rate has at least one finished day in it */
+        boolean started;
+        /** epoch day of the first event */
+        long firstDay = Long.MIN_VALUE;
+        /** epoch day of the latest event */
+        long lastDay = Long.MIN_VALUE;
+        /** use so far on lastDay */
+        long pending;
+        /** unit of the latest event */
+        String unit;
+
+        /**
+         * Adds use on a day. Events for days already folded in are added to the current day.
+         */
+        void add(long day, long amount) {
+            if (lastDay != Long.MIN_VALUE && day > lastDay) {
+                rate = rateAsOf(day);
+                started = true;
+                pending = 0;
+            }
+            if (day > lastDay) {
+                lastDay = day;
+            }
+            if (firstDay == Long.MIN_VALUE) {
+                firstDay = day;
+            }
+            pending += amount;
+        }
+
+        /**
+         * Takes use on a day back out. The latest day is still open; an earlier
+         * one was folded in with weight ALPHA (1 for the first day), shrinking
+         * by 1 - ALPHA for each day after it.
+         */
+        void retract(long day, long amount) {
+            if (day >= lastDay || !started) {
+                pending = Math.max(0, pending - amount);
+                return;
+            }
+            long folded = Math.max(day, firstDay);
+            double weight = (folded == firstDay ? 1 : ALPHA) * Math.pow(1 - ALPHA, lastDay - 1 - folded);
+            rate = Math.max(0, rate - weight * amount);
+        }
+
+        /** @return the rate with every day before the given day folded in */
+        double rateAsOf(long day) {
+            // If the latest day is not over yet
+            if (day <= lastDay) {
+                return started ? rate : pending;
+            }
+            // Folds in the latest day, then one zero for each idle day after it
+            double r = started ? ALPHA * pending + (1 - ALPHA) * rate : pending;
+            return r * Math.pow(1 - ALPHA, day - lastDay - 1);
+        }
+    }
+}
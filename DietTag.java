@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Things an ingredient may contain that some households avoid.
+ *
+ * An ingredient's tags, and a recipe's (all its ingredients' tags together),
+ * are kept as a bit mask with one bit per tag. A household's restrictions are
+ * a mask of the tags it avoids, so checking a recipe is one AND. A name with
+ * a word none of the lists know gets the UNKNOWN bit instead of a guess, and
+ * any restriction leaves it out until the household sets its tags.
+ */
+public enum DietTag {
+    MEAT("beef", "pork", "bacon", "ham", "sausage", "chicken", "turkey", "lamb", "steak", "mince", "prosciutto", "salami", "pepperoni", "duck",
+         "gelatin", "gelatine", "lard", "suet", "chorizo", "veal", "venison"),
+    FISH("fish", "salmon", "tuna", "cod", "anchovy", "sardine", "trout", "mackerel", "haddock", "worcestershire", "worcestershire sauce", "caesar dressing", "fish sauce"),
+    SHELLFISH("shrimp", "prawn", "crab", "lobster", "mussel", "clam", "oyster", "scallop", "squid", "octopus", "oyster sauce"),
+    DAIRY("milk", "cheese", "butter", "cream", "yogurt", "yoghurt", "parmesan", "mozzarella", "cheddar", "ghee", "buttermilk", "whey",
+          "custard", "feta", "ricotta", "pesto", "caesar dressing"),
+    EGG("egg", "mayonnaise", "mayo", "aioli", "meringue", "custard", "caesar dressing"),
+    GLUTEN("flour", "bread", "pasta", "noodle", "wheat", "barley", "rye", "couscous", "spaghetti", "tortilla", "bun", "bagel", "croissant", "pizza", "muffin", "breadcrumb", "cracker",
+           "semolina", "bulgur", "seitan", "oat", "oat milk", "soy sauce"),
+    NUT("almond", "walnut", "cashew", "pecan", "hazelnut", "pistachio", "macadamia", "nut", "pesto",
+        "almond milk", "almond butter", "cashew milk", "cashew butter"),
+    PEANUT("peanut", "peanut butter"),
+    SOY("soy", "tofu", "tempeh", "edamame", "miso", "tamari", "soy milk", "soy sauce"),
+    SESAME("sesame", "tahini"),
+    ALCOHOL("wine", "beer", "rum", "vodka", "whiskey", "brandy", "sake", "mirin");
+
+    /** no restrictions */
+    public static final long NONE = 0;
+    /** what a vegetarian household avoids */
+    public static final long VEGETARIAN = mask(MEAT, FISH, SHELLFISH);
+    /** what a vegan household avoids */
+    public static final long VEGAN = VEGETARIAN | mask(DAIRY, EGG);
+    /** what a pescatarian household avoids */
+    public static final long PESCATARIAN = mask(MEAT);
+    /** set when a name has a word no tag knows, so it may contain anything */
+    public static final long UNKNOWN = 1L << 63;
+
+    /**
+     * Words and phrases known to have none of the tags. Plant milks and
+     * butters are here so "butter" in "cocoa butter" is not DAIRY.
+     */
+    private static final String[] PLAIN = {
+        "water", "salt", "pepper", "sugar", "oil", "olive", "vinegar", "honey", "maple", "syrup", "vanilla", "yeast",
+        "baking", "soda", "powder", "cornstarch", "rice", "stock", "broth", "vegetable", "herb", "spice",
+        "onion", "garlic", "shallot", "scallion", "leek", "tomato", "potato", "carrot", "celery", "capsicum", "chili", "chilli",
+        "jalapeno", "lemon", "lime", "orange", "apple", "pear", "banana", "strawberry", "blueberry", "raspberry", "grape",
+        "raisin", "avocado", "spinach", "lettuce", "kale", "cabbage", "broccoli", "cauliflower", "cucumber", "zucchini",
+        "courgette", "eggplant", "aubergine", "mushroom", "corn", "pea", "bean", "lentil", "chickpea", "pumpkin", "squash",
+        "beet", "radish", "ginger", "coconut", "basil", "thyme", "rosemary", "oregano", "parsley", "cilantro", "coriander",
+        "mint", "dill", "sage", "bay", "cumin", "paprika", "turmeric", "cinnamon", "nutmeg", "clove", "cardamom",
+        "fresh", "dried", "dry", "chopped", "diced", "sliced", "minced", "grated", "ground", "whole", "large", "small",
+        "medium", "red", "green", "yellow", "white", "black", "brown", "sweet", "hot", "smoked", "frozen", "canned", "raw",
+        "cooked", "boneless", "skinless", "extra", "virgin", "baby", "organic", "of", "and", "or", "leaf", "leaves",
+        "juice", "zest", "extract", "stick", "pine",
+        "coconut milk", "coconut cream", "rice milk", "cocoa butter", "apple butter", "cream of tartar"
+    };
+
+    /** tags of each known word and phrase; a fixed table, so lookups never add to it */
+    private static final Map<String, Long> KNOWN = new HashMap<>();
+    /** most words in a known phrase */
+    private static int longestPhrase = 1;
+
+    static {
+        for (String w : PLAIN) {
+            know(w, NONE);
+        }
+        for (DietTag t : values()) {
+            for (String w : t.words) {
+                know(w, t.bit());
+            }
+        }
+    }
+
+    /** words in an ingredient name that suggest this tag */
+    private final String[] words;
+
+    DietTag(String... words) {
+        this.words = words;
+    }
+
+    /** Adds a word or phrase to KNOWN, with the tags it has in every list. */
+    private static void know(String phrase, long tags) {
+        KNOWN.merge(phrase, tags, (a, b) -> a | b);
+        longestPhrase = Math.max(longestPhrase, phrase.split(" ").length);
+    }
+
+    /** @return this tag's bit */
+    public long bit() {
+        return 1L << ordinal();
+    }
+
+    /**
+     * Combines tags into a mask.
+     *
+     * @param tags tags to include
+     * @return mask with their bits set
+     */
+    public static long mask(DietTag... tags) {
+        long m = 0;
+        for (DietTag t : tags) {
+            m |= t.bit();
+        }
+        return m;
+    }
+
+    /**
+     * Lists the tags in a mask.
+     *
+     * @param mask tag bits
+     * @return the tags, in declaration order
+     */
+    public static Set<DietTag> of(long mask) {
+        Set<DietTag> tags = EnumSet.noneOf(DietTag.class);
+        for (DietTag t : values()) {
+            if ((mask & t.bit()) != 0) {
+                tags.add(t);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Writes a mask as a comma-separated list of tag names, the form parse() reads.
+     *
+     * @param mask tag bits
+     * @return names such as "DAIRY,EGG", or "" for none
+     */
+    public static String format(long mask) {
+        StringBuilder sb = new StringBuilder();
+        for (DietTag t : of(mask)) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(t.name());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a comma-separated list of tags or diet names, such as
+     * "vegetarian,nut-free". Diet names stand for the tags that diet avoids.
+     *
+     * @param text tags and diet names, any case
+     * @return mask of all of them
+     * @throws IllegalArgumentException if a word is neither
+     */
+    public static long parse(String text) {
+        long m = 0;
+        for (String word : text.split(",")) {
+            word = word.trim().toUpperCase().replace(' ', '_').replace('-', '_');
+            if (word.isEmpty() || word.equals("NONE")) {
+                continue;
+            }
+            // "nut-free" avoids NUT
+            if (word.endsWith("_FREE")) {
+                word = word.substring(0, word.length() - 5);
+            }
+            switch (word) {
+                case "VEGETARIAN": m |= VEGETARIAN; break;
+                case "VEGAN": m |= VEGAN; break;
+                case "PESCATARIAN": m |= PESCATARIAN; break;
+                default: m |= valueOf(word).bit();
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Guesses an ingredient's tags from the words in its name, so "Smoked bacon"
+     * is MEAT and "eggs" is EGG but "eggplant" is nothing. Known phrases win
+     * over their words, so "peanut butter" is PEANUT and not DAIRY. A name with
+     * a word no list knows also gets UNKNOWN. Households can correct the guess
+     * with Fridge.setIngredientTags.
+     *
+     * @param name normalized ingredient name
+     * @return tag mask
+     */
+    public static long defaultTags(String name) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= name.length(); i++) {
+            char c = i < name.length() ? name.charAt(i) : ' ';
+            boolean letter = c >= 'a' && c <= 'z';
+            if (letter && start < 0) {
+                start = i;
+            }
+            else if (!letter && start >= 0) {
+                words.add(name.substring(start, i));
+                start = -1;
+            }
+        }
+        long m = 0;
+        int i = 0;
+        while (i < words.size()) {
+            // Longest known phrase starting here
+            int n = Math.min(longestPhrase, words.size() - i);
+            Long tags = lookup(String.join(" ", words.subList(i, i + n)));
+            while (tags == null && n > 1) {
+                n--;
+                tags = lookup(String.join(" ", words.subList(i, i + n)));
+            }
+            m |= tags != null ? tags : UNKNOWN;
+            i += n;
+        }
+        return m;
+    }
+
+    /** @return tags of a word or phrase, or of its singular form, or null if unknown */
+    private static Long lookup(String phrase) {
+        Long tags = KNOWN.get(phrase);
+        // Plural forms count too: "anchovies", "tomatoes", "eggs"
+        if (tags == null && phrase.endsWith("ies")) {
+            tags = KNOWN.get(phrase.substring(0, phrase.length() - 3) + "y");
+        }
+        if (tags == null && phrase.endsWith("es")) {
+            tags = KNOWN.get(phrase.substring(0, phrase.length() - 2));
+        }
+        if (tags == null && phrase.endsWith("s")) {
+            tags = KNOWN.get(phrase.substring(0, phrase.length() - 1));
+        }
+        return tags;
+    }
+}
@@ -3,14 +3,16 @@ import java.time.temporal.ChronoUnit;
 
 /**
  * Represents a food item stored in the fridge.
+ * Once an item is in a Fridge, change it only through the Fridge's update
+ * methods so its indexes and the fridge's version stay current.
  */
 public class FoodItem {
     /** display name */
     private String name;
     /** normalized name used as key */
     private String normalizedName;
-    /** quantity of the item */
-    private double quantity;
+    /** quantity of the item, in thousandths (see Quantity) */
+    private long quantity;
     /** unit label */
     private String unit;
     /** category */
@@ -26,7 +28,7 @@ public class FoodItem {
     public FoodItem(String name, double quantity, String unit,Category category, LocalDate expirationDate, String imgFilePath) {
         this.name = name.trim();
         this.normalizedName = name.toLowerCase().trim();
-        this.quantity = quantity;
+        this.quantity = Quantity.fromDouble(quantity);
         this.unit = unit;
         this.category = category;
         this.expirationDate = expirationDate;
@@ -45,6 +47,11 @@ public class FoodItem {
     
     /** @return quantity */
     public double getQuantity() {
+        return Quantity.toDouble(quantity);
+    }
+    
+    /** @return quantity in thousandths */
+    public long getScaledQuantity() {
         return quantity;
     }
     
@@ -76,7 +83,16 @@ public class FoodItem {
      * 
      * Contributed by: Annika Hambali
      */
-    public void addQuantity(double amt) {
+    void addQuantity(double amt) {
+        addScaledQuantity(Quantity.fromDouble(amt));
+    }
+    
+    /**
+     * Adds to the current quantity, given in thousandths.
+     * 
+     * @param amt amount to add in thousandths
+     */
+    void addScaledQuantity(long amt) {
         // Only allows positive values
         if (amt > 0) {
             // Applies increase
@@ -93,7 +109,17 @@ public class FoodItem {
      * 
      * Contributed by: Annika Hambali
      */
-    public boolean subtractQuantity(double amt) {
+    boolean subtractQuantity(double amt) {
+        return subtractScaledQuantity(Quantity.fromDouble(amt));
+    }
+    
+    /**
+     * Subtracts from the current quantity, given in thousandths.
+     * 
+     * @param amt amount to subtract in thousandths
+     * @return true if subtraction was successful, false otherwise
+     */
+    boolean subtractScaledQuantity(long amt) {
         // Blocks negative values or amounts greater than available
         if (amt <= 0 || amt > quantity) {
             return false;
@@ -112,18 +138,18 @@ public class FoodItem {
      * 
      * Contributed by: Annika Hambali
      */
-    public void setQuantity(double amt) {
+    void setQuantity(double amt) {
         if (amt >= 0) {
             // Computes change amount
-            double diff = amt - quantity;
+            long diff = Quantity.fromDouble(amt) - quantity;
             
             if (diff > 0) {
                 // Applies increase
-                addQuantity(diff);
+                addScaledQuantity(diff);
             }
             else if (diff < 0) {
                 // Applies decrease
-                subtractQuantity(-diff);
+                subtractScaledQuantity(-diff);
             }
         }
     }
@@ -147,7 +173,7 @@ public class FoodItem {
      * 
      * Contributed by: Angela Zhong
      */
-    public void setExpirationDate(LocalDate date) {
+    void setExpirationDate(LocalDate date) {
         if (date != null) {
             expirationDate = date;
         }
@@ -160,7 +186,7 @@ public class FoodItem {
      * 
      * Contributed by: Angela Zhong
      */
-    public void setCategory(Category newCategory) {
+    void setCategory(Category newCategory) {
         if (newCategory != null) {
             category = newCategory;
         }
@@ -168,6 +194,6 @@ public class FoodItem {
     
     /** @return readable string */
     public String toString() {
-        return name + " (" + quantity + " " + unit + ")";
+        return name + " (" + getQuantity() + " " + unit + ")";
     }
 }
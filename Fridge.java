@@ -6,25 +6,122 @@ import java.util.*;
  * Stores food inventory and recipes.
  */
 public class Fridge {
-    /** low stock threshold */
-    private static final double LOW_STOCK_THRESHOLD = 2;
+    /** low stock threshold, in thousandths (see Quantity) */
+    private static final long LOW_STOCK_THRESHOLD = 2 * Quantity.SCALE;
+    /** timers for the main operations (see Metrics) */
+    private static final Metrics.Timer ADD_FOOD_TIMER = Metrics.timer("fridge.addFood");
+    private static final Metrics.Timer REMOVE_FOOD_TIMER = Metrics.timer("fridge.removeFood");
+    private static final Metrics.Timer EXPIRING_TIMER = Metrics.timer("fridge.expiringWithin");
+    private static final Metrics.Timer LOW_STOCK_TIMER = Metrics.timer("fridge.lowStock");
+    private static final Metrics.Timer SIMILAR_TIMER = Metrics.timer("fridge.similar");
+    private static final Metrics.Timer QUERY_TIMER = Metrics.timer("fridge.query");
     /** food inventory */
     private HashMap<String, FoodItem> inventoryByName;
-    /** expiration index */
-    private TreeMap<LocalDate, List<FoodItem>> expirationIndex;
-    /** recipes */
+    /** items per category, sorted by name */
+    private EnumMap<Category, TreeMap<String, FoodItem>> categoryByName;
+    /** items per category, grouped by expiration date */
+    private EnumMap<Category, TreeMap<LocalDate, List<FoodItem>>> categoryByExpiration;
+    /** recipes, in the order they were added; null for a removed one until packed */
     private List<Recipe> recipes;
+    /** positions in recipes, by recipe */
+    private IdentityHashMap<Recipe, Integer> recipeRows;
+    /** null entries in recipes */
+    private int removedRecipes;
+    /** number of items, for readers on other threads */
+    private volatile int itemCount;
+    /** number of recipes, for readers on other threads */
+    private volatile int recipeCount;
+    /** recipes by content hash, to find duplicates */
+    private HashMap<Long, List<Recipe>> recipesByContent;
     /** shopping list */
     private HashMap<String, IngredientLine> shoppingList;
+    /** search index over item names */
+    private SearchIndex itemIndex;
+    /** search index over recipe names, ingredients and steps */
+    private SearchIndex recipeIndex;
+    /** ingredient bitsets for finding cookable recipes */
+    private RecipeFeasibility feasibility;
+    /** recipes by ingredient overlap */
+    private RecipeSimilarity similarity;
+    /** DietTag masks set for ingredients, overriding DietTag.defaultTags */
+    private HashMap<String, Long> ingredientTags;
+    /** ingredients that can stand in for others */
+    private Substitutions substitutions;
+    /** inventory version, bumped on every change to an item */
+    private long version;
+    /** what was used up or thrown away, and when */
+    private ConsumptionHistory history;
+    /** usage rates learned from consumption */
+    private DemandForecast forecast;
+    /** recipes planned for upcoming days */
+    private TreeMap<LocalDate, List<Recipe>> plannedMeals;
+    /** number of plans for each planned recipe */
+    private IdentityHashMap<Recipe, Integer> timesPlanned;
+    /** inventory changes that can be undone and redone */
+    private UndoHistory undoHistory;
+    /** true while an undo or redo is being applied, so it is not recorded again */
+    private boolean undoing;
+    /** receives a FridgeLog record for every change, or null */
+    private java.util.function.Consumer<String> changeLog;
     
     /** 
      * Creates an empty fridge.
      */
     public Fridge(){
+        reset();
+    }
+    
+    /**
+     * Empties the fridge: inventory, recipes, shopping list, plans and history.
+     * The version keeps counting up so views built before stay invalid.
+     */
+    void reset() {
         inventoryByName = new HashMap<>();
-        expirationIndex = new TreeMap<>();
+        categoryByName = new EnumMap<>(Category.class);
+        categoryByExpiration = new EnumMap<>(Category.class);
+        for (Category c : Category.values()) {
+            categoryByName.put(c, new TreeMap<>());
+            categoryByExpiration.put(c, new TreeMap<>());
+        }
         recipes = new ArrayList<>();
+        recipeRows = new IdentityHashMap<>();
+        removedRecipes = 0;
+        itemCount = 0;
+        recipeCount = 0;
+        recipesByContent = new HashMap<>();
         shoppingList = new HashMap<>();
+        itemIndex = new SearchIndex();
+        recipeIndex = new SearchIndex();
+        feasibility = new RecipeFeasibility(this);
+        similarity = new RecipeSimilarity();
+        ingredientTags = new HashMap<>();
+        substitutions = new Substitutions();
+        history = new ConsumptionHistory();
+        forecast = new DemandForecast();
+        plannedMeals = new TreeMap<>();
+        timesPlanned = new IdentityHashMap<>();
+        undoHistory = new UndoHistory();
+        version++;
+    }
+    
+    /**
+     * Sets where change records go, for replication (see FridgeLog).
+     * 
+     * @param log receives one record per change, called on the thread making the change; null to stop
+     */
+    public void setChangeLog(java.util.function.Consumer<String> log) {
+        changeLog = log;
+    }
+    
+    /**
+     * Sends a change record to the change log, if there is one.
+     * 
+     * @param fields record type followed by its fields
+     */
+    private void log(String... fields) {
+        if (changeLog != null) {
+            changeLog.accept(FridgeLog.encode(fields));
+        }
     }
 
     /**
@@ -35,21 +132,34 @@ public class Fridge {
      * Contributed by: Annika Hambali
      */
     public void addFood(FoodItem food){
+        long t = Metrics.start();
         String key = food.getNormalizedName();
+        log(FridgeLog.addRecord(food, food.getScaledQuantity()));
 
         // If item already exists
         if (inventoryByName.containsKey(key)) {
             FoodItem existing = inventoryByName.get(key);
+            long before = existing.getScaledQuantity();
+            remember(UndoHistory.quantity(key, food.getScaledQuantity(), null));
             // Merges quantities
-            existing.addQuantity(food.getQuantity());
+            existing.addScaledQuantity(food.getScaledQuantity());
+            version++;
+            feasibility.stockChanged(key, before);
         }
         // If item is new
         else {
+            // Keeps it as it is now, since the stored item changes later
+            remember(UndoHistory.quantity(key, food.getScaledQuantity(), new FoodItem(food.getName(), 0,
+                food.getUnit(), food.getCategory(), food.getExpirationDate(), food.getImgFilePath())));
             // Stores it
             inventoryByName.put(key, food);
+            itemCount = inventoryByName.size();
+            itemIndex.add(food);
+            addToCategory(food);
+            version++;
+            feasibility.stockChanged(key, 0);
         }
-        
-        rebuildExpirationIndex();
+        ADD_FOOD_TIMER.stop(t);
     }
     
     /**
@@ -62,29 +172,145 @@ public class Fridge {
      * Contributed by: Annika Hambali
      */
     public boolean removeFood(String name, double amt) {
+        return removeScaledFood(name, Quantity.fromDouble(amt));
+    }
+    
+    /**
+     * Removes an amount, given in thousandths, of a food item from the fridge inventory.
+     * The arithmetic is exact, so removing everything always deletes the entry.
+     * 
+     * @param name name of the food item
+     * @param amt amount to remove in thousandths
+     * @return true is removal was successful, false otherwise
+     */
+    public boolean removeScaledFood(String name, long amt) {
+        return removeScaledFood(name, amt, ConsumptionHistory.Kind.CONSUMED, LocalDate.now());
+    }
+    
+    /**
+     * Throws away an amount of a food item, recording it as waste.
+     * 
+     * @param name name of the food item
+     * @param amt amount to throw away
+     * @return true is removal was successful, false otherwise
+     */
+    public boolean discardFood(String name, double amt) {
+        return removeScaledFood(name, Quantity.fromDouble(amt), ConsumptionHistory.Kind.WASTED, LocalDate.now());
+    }
+    
+    /**
+     * Removes an amount of a food item and records it in the history.
+     * 
+     * @param name name of the food item
+     * @param amt amount to remove in thousandths
+     * @param kind whether it was consumed or wasted; null for a correction, which is not recorded
+     * @param today day of the removal
+     * @return true is removal was successful, false otherwise
+     */
+    boolean removeScaledFood(String name, long amt, ConsumptionHistory.Kind kind, LocalDate today) {
+        long t = Metrics.start();
+        try {
+            return removeScaledFoodTimed(name, amt, kind, today);
+        } finally {
+            REMOVE_FOOD_TIMER.stop(t);
+        }
+    }
+    
+    /**
+     * Does the work of removeScaledFood.
+     */
+    private boolean removeScaledFoodTimed(String name, long amt, ConsumptionHistory.Kind kind, LocalDate today) {
         String key = name.toLowerCase().trim();
         FoodItem item = inventoryByName.get(key);
         
         // If item is missing or amount is too large
-        if (item == null || amt > item.getQuantity()) {
+        if (item == null || amt > item.getScaledQuantity()) {
             return false;
         }
         
         // If subtraction fails validation
-        if (!item.subtractQuantity(amt)) {
+        if (!item.subtractScaledQuantity(amt)) {
             return false;
         }
+        log(FridgeLog.REMOVE, key, Long.toString(amt), kind == null ? null : kind.name(), today.toString());
+        // A removed item no longer changes, so it can be kept as it is
+        remember(UndoHistory.removal(key, amt, item.getScaledQuantity() == 0 ? item : null, kind, today));
+        if (kind != null) {
+            history.record(item.getName(), item.getCategory(), kind, amt, today);
+        }
+        // Waste is not demand, so only consumption feeds the forecast
+        if (kind == ConsumptionHistory.Kind.CONSUMED) {
+            forecast.observe(item.getName(), item.getUnit(), amt, today);
+        }
         
         // If quantity reaches zero
-        if (item.getQuantity() == 0) {
+        if (item.getScaledQuantity() == 0) {
             // Removes the entry
             inventoryByName.remove(key);
+            itemCount = inventoryByName.size();
+            itemIndex.remove(item);
+            removeFromCategory(item);
         }
         
-        rebuildExpirationIndex();
+        version++;
+        feasibility.stockChanged(key, item.getScaledQuantity() + amt);
         return true;
     }
+    
+    /**
+     * Sets a food item's quantity. Setting it to zero removes the item. This
+     * corrects the count, so a decrease is not recorded as consumption or waste.
+     * 
+     * @param name name of the food item
+     * @param amt new quantity
+     * @return true if the item exists and the quantity was valid
+     */
+    public boolean setQuantity(String name, double amt) {
+        FoodItem item = getFoodItem(name);
+        if (item == null || !(amt >= 0)) {
+            return false;
+        }
+        
+        long diff = Quantity.fromDouble(amt) - item.getScaledQuantity();
+        // If it is a decrease, removal takes care of emptying the item
+        if (diff < 0) {
+            return removeScaledFood(name, -diff, null, LocalDate.now());
+        }
+        if (diff > 0) {
+            log(FridgeLog.addRecord(item, diff));
+            remember(UndoHistory.quantity(item.getNormalizedName(), diff, null));
+            item.addScaledQuantity(diff);
+            version++;
+            feasibility.stockChanged(item.getNormalizedName(), item.getScaledQuantity() - diff);
+        }
+        return true;
+    }
+    
+    /** @return consumption and waste history */
+    public ConsumptionHistory getHistory() {
+        return history;
+    }
+    
+    /**
+     * Returns the inventory version. It goes up on every add, removal or edit,
+     * so a view built at one version is current as long as this has not changed.
+     * 
+     * @return inventory version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /** @return number of distinct food items; safe to call from any thread */
+    public int getItemCount() {
+        return itemCount;
+    }
 
+    /** @return number of recipes; safe to call from any thread */
+    public int getRecipeCount() {
+        return recipeCount;
+    }
+    
     /** @return food item by name */
     public FoodItem getFoodItem(String name) {
         return inventoryByName.get(name.toLowerCase().trim());
@@ -111,9 +337,52 @@ public class Fridge {
      * Contributed by: Annika Hambali
      */
     public List<FoodItem> getAllFoodItemsSortedExpiration() {
-        List<FoodItem> list = getAllFoodItemsSortedAZ();
-        list.sort(Comparator.comparing(FoodItem::getExpirationDate));
-        return list;
+        // Merges the categories' expiration trees instead of sorting
+        return query(new InventoryQuery().sortBy(InventoryQuery.Sort.EXPIRATION));
+    }
+    
+    /**
+     * Answers an inventory query, reading whichever index narrows it down most
+     * (see InventoryQuery).
+     * 
+     * @param query what to find
+     * @return matching items in the query's order, at most its limit
+     */
+    public List<FoodItem> query(InventoryQuery query) {
+        long t = Metrics.start();
+        List<FoodItem> result = query.run(this);
+        QUERY_TIMER.stop(t);
+        return result;
+    }
+    
+    /**
+     * Describes how query() would answer a query, without running it.
+     * 
+     * @param query query to plan
+     * @return the plan
+     */
+    public InventoryQuery.Plan explain(InventoryQuery query) {
+        return query.plan(this);
+    }
+    
+    /** @return every food item, in no order */
+    Collection<FoodItem> getAllFoodItems() {
+        return Collections.unmodifiableCollection(inventoryByName.values());
+    }
+    
+    /** @return a category's items by name; items without a category are under OTHER */
+    NavigableMap<String, FoodItem> getNameIndex(Category category) {
+        return Collections.unmodifiableNavigableMap(categoryByName.get(category));
+    }
+    
+    /** @return a category's items grouped by expiration date, each group in name order */
+    NavigableMap<LocalDate, List<FoodItem>> getExpirationIndex(Category category) {
+        return Collections.unmodifiableNavigableMap(categoryByExpiration.get(category));
+    }
+    
+    /** @return what the stock allows of each recipe, kept up to date as it changes */
+    RecipeFeasibility getFeasibility() {
+        return feasibility;
     }
     
     /**
@@ -124,26 +393,58 @@ public class Fridge {
      * Contributed by: Annika Hambali
      */
     public List<FoodItem> getLowStockItems() {
+        long t = Metrics.start();
         List<FoodItem> low = new ArrayList<>();
         for (FoodItem item : inventoryByName.values()) {
             // If quantity is low
-            if (item.getQuantity() <= LOW_STOCK_THRESHOLD) {
+            if (item.getScaledQuantity() <= LOW_STOCK_THRESHOLD) {
                 low.add(item);
             }
         }
+        LOW_STOCK_TIMER.stop(t);
         return low;
     }
     
     /**
-     * Rebuilds the expiration index to match the current inventory.
+     * Returns an iterator over the items from soonest to latest expiration,
+     * then by name. It merges the categories' expiration trees, which are kept
+     * up to date as items change, so nothing is rebuilt or sorted. It must not
+     * be used after the inventory changes.
      * 
-     * Contributed by: Annika Hambali
+     * @return items in expiration order
      */
-    public void rebuildExpirationIndex() {
-        expirationIndex.clear();
-        for (FoodItem item : inventoryByName.values()) {
-            expirationIndex.computeIfAbsent(item.getExpirationDate(), d -> new ArrayList<>()).add(item);
+    public Iterator<FoodItem> expirationOrder() {
+        // Next item of each category, soonest first
+        PriorityQueue<FoodItem> heads = new PriorityQueue<>(Comparator.comparing(FoodItem::getExpirationDate)
+            .thenComparing(FoodItem::getNormalizedName));
+        Map<FoodItem, Iterator<FoodItem>> rest = new IdentityHashMap<>();
+        for (TreeMap<LocalDate, List<FoodItem>> byDate : categoryByExpiration.values()) {
+            Iterator<FoodItem> it = byDate.values().stream().flatMap(List::stream).iterator();
+            if (it.hasNext()) {
+                FoodItem head = it.next();
+                heads.add(head);
+                rest.put(head, it);
+            }
         }
+        return new Iterator<FoodItem>() {
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+            
+            public FoodItem next() {
+                if (heads.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                FoodItem item = heads.poll();
+                Iterator<FoodItem> it = rest.remove(item);
+                if (it.hasNext()) {
+                    FoodItem head = it.next();
+                    heads.add(head);
+                    rest.put(head, it);
+                }
+                return item;
+            }
+        };
     }
     
     /**
@@ -155,7 +456,238 @@ public class Fridge {
      * Contributed by: Annika Hambali
      */
     public List<FoodItem> getItemsExpiringWithin(int days) {
-        List<FoodItem> soon = new ArrayList<>();
+        long t = Metrics.start();
+        // Only the dates inside the window are visited, already in date order,
+        // from the category trees that are kept up to date as items change
+        List<FoodItem> soon = query(new InventoryQuery().expiringWithin(days).sortBy(InventoryQuery.Sort.EXPIRATION));
+        EXPIRING_TIMER.stop(t);
+        return soon;
+    }
+    
+    /**
+     * Moves an item to a new category.
+     * 
+     * @param name name of the food item
+     * @param category new category
+     * @return true if the item exists and the category was valid
+     */
+    public boolean setCategory(String name, Category category) {
+        FoodItem item = getFoodItem(name);
+        if (item == null || category == null) {
+            return false;
+        }
+        // If nothing changes, there is nothing to log, reindex or undo
+        if (category == item.getCategory()) {
+            return true;
+        }
+        
+        log(FridgeLog.CATEGORY, item.getNormalizedName(), category.name());
+        remember(UndoHistory.category(item.getNormalizedName(), item.getCategory(), category));
+        // Takes it out of the old partition before changing the key
+        removeFromCategory(item);
+        item.setCategory(category);
+        addToCategory(item);
+        version++;
+        return true;
+    }
+    
+    /**
+     * Changes an item's expiration date.
+     * 
+     * @param name name of the food item
+     * @param date new expiration date
+     * @return true if the item exists and the date was valid
+     */
+    public boolean setExpirationDate(String name, LocalDate date) {
+        FoodItem item = getFoodItem(name);
+        if (item == null || date == null) {
+            return false;
+        }
+        // If nothing changes, there is nothing to log, reindex or undo
+        if (date.equals(item.getExpirationDate())) {
+            return true;
+        }
+        
+        log(FridgeLog.EXPIRES, item.getNormalizedName(), date.toString());
+        remember(UndoHistory.expires(item.getNormalizedName(), item.getExpirationDate(), date));
+        // Takes it out of the old date group before changing the key
+        removeFromCategory(item);
+        item.setExpirationDate(date);
+        addToCategory(item);
+        version++;
+        return true;
+    }
+
+    /**
+     * Starts gathering inventory changes into one undo step, until endEdit.
+     * 
+     * @param label what the step does, e.g. "Edit milk"
+     */
+    public void beginEdit(String label) {
+        undoHistory.begin(label);
+    }
+    
+    /**
+     * Ends the undo step started by beginEdit.
+     */
+    public void endEdit() {
+        undoHistory.end();
+    }
+    
+    /**
+     * Reverses the newest inventory change, or group of changes, not yet undone.
+     * The reversal goes through the usual changes, so indexes, recipes and the
+     * change log follow. Usage the change recorded is taken back out of the
+     * history and the forecast, and a redo records it again.
+     * 
+     * @return true if there was something to undo
+     */
+    public boolean undo() {
+        UndoHistory.Step step = undoHistory.popUndo();
+        if (step == null) {
+            return false;
+        }
+        undoing = true;
+        try {
+            // Newest first
+            for (UndoHistory.Edit e = step.last; e != null; e = e.prev) {
+                applyEdit(e, false);
+            }
+        } finally {
+            undoing = false;
+        }
+        return true;
+    }
+    
+    /**
+     * Makes the newest undone change again.
+     * 
+     * @return true if there was something to redo
+     */
+    public boolean redo() {
+        UndoHistory.Step step = undoHistory.popRedo();
+        if (step == null) {
+            return false;
+        }
+        ArrayList<UndoHistory.Edit> edits = new ArrayList<>();
+        for (UndoHistory.Edit e = step.last; e != null; e = e.prev) {
+            edits.add(e);
+        }
+        undoing = true;
+        try {
+            // Oldest first, as they were made
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                applyEdit(edits.get(i), true);
+            }
+        } finally {
+            undoing = false;
+        }
+        return true;
+    }
+    
+    /** @return the undo and redo history */
+    public UndoHistory getUndoHistory() {
+        return undoHistory;
+    }
+    
+    /**
+     * Takes back usage recorded by a removal, as when the removal is undone.
+     * 
+     * @param name normalized item name
+     * @param category category the usage was recorded under
+     * @param kind whether it was recorded as consumed or wasted
+     * @param amt amount in thousandths
+     * @param day day it was recorded for
+     */
+    void retractUsage(String name, Category category, ConsumptionHistory.Kind kind, long amt, LocalDate day) {
+        log(FridgeLog.RETRACT, name, Long.toString(amt), kind.name(), category == null ? null : category.name(), day.toString());
+        history.retract(name, category, kind, amt, day);
+        if (kind == ConsumptionHistory.Kind.CONSUMED) {
+            forecast.retract(name, amt, day);
+        }
+    }
+    
+    /**
+     * Records an inventory change for undo, unless it is an undo itself.
+     */
+    private void remember(UndoHistory.Edit edit) {
+        if (!undoing) {
+            undoHistory.record(edit);
+        }
+    }
+    
+    /**
+     * Makes or reverses one recorded change.
+     * 
+     * @param edit the change
+     * @param forward true to make it again, false to reverse it
+     */
+    private void applyEdit(UndoHistory.Edit edit, boolean forward) {
+        switch (edit.kind) {
+            case QUANTITY:
+                long delta = forward ? edit.delta : -edit.delta;
+                ConsumptionHistory.Kind use = (ConsumptionHistory.Kind) edit.before;
+                LocalDate day = (LocalDate) edit.after;
+                // Undoing an add is a correction; redoing a use records it again for its day
+                if (delta < 0) {
+                    removeScaledFood(edit.name, -delta, use, day == null ? LocalDate.now() : day);
+                }
+                else {
+                    // If the item is gone, it comes back as it was; otherwise it is added to
+                    FoodItem was = edit.item != null ? edit.item : inventoryByName.get(edit.name);
+                    FoodItem food = new FoodItem(was.getName(), 0, was.getUnit(), was.getCategory(),
+                        was.getExpirationDate(), was.getImgFilePath());
+                    food.addScaledQuantity(delta);
+                    addFood(food);
+                    // If a use is being undone, so is its record
+                    if (use != null) {
+                        retractUsage(edit.name, was.getCategory(), use, delta, day);
+                    }
+                }
+                break;
+            case CATEGORY:
+                setCategory(edit.name, (Category) (forward ? edit.after : edit.before));
+                break;
+            case EXPIRES:
+                setExpirationDate(edit.name, (LocalDate) (forward ? edit.after : edit.before));
+                break;
+        }
+    }
+    
+    /**
+     * Returns the items in a category sorted alphabetically (A-Z).
+     * 
+     * @param category category to list
+     * @return a list of FoodItems sorted by name
+     */
+    public List<FoodItem> getItemsInCategory(Category category) {
+        return new ArrayList<>(categoryByName.get(category).values());
+    }
+    
+    /**
+     * Returns the items in a category sorted by expiration date (soonest first).
+     * 
+     * @param category category to list
+     * @return a list of FoodItems sorted by expiration date
+     */
+    public List<FoodItem> getItemsInCategorySortedExpiration(Category category) {
+        List<FoodItem> list = new ArrayList<>();
+        for (List<FoodItem> group : categoryByExpiration.get(category).values()) {
+            list.addAll(group);
+        }
+        return list;
+    }
+    
+    /**
+     * Returns items in a category expiring within a certain number of days (inclusive),
+     * ex. proteins expiring this week. Only the matching dates are visited.
+     * 
+     * @param category category to check
+     * @param days the number of days from today
+     * @return a list of FoodItems sorted by expiration date
+     */
+    public List<FoodItem> getItemsExpiringWithin(Category category, int days) {
+        long t = Metrics.start();
         LocalDate today = LocalDate.now();
         
         // If days is negative
@@ -163,18 +695,80 @@ public class Fridge {
             days = 0;
         }
         
-        for (FoodItem item : inventoryByName.values()) {
-            long diff = item.daysUntilExpiration(today);
-            // If item expires within the window
-            if (diff >= 0 && diff <= days) {
-                soon.add(item);
-            }
+        List<FoodItem> soon = new ArrayList<>();
+        for (List<FoodItem> group : categoryByExpiration.get(category).subMap(today, true, today.plusDays(days), true).values()) {
+            soon.addAll(group);
         }
-        
-        soon.sort(Comparator.comparing(FoodItem::getExpirationDate));
+        EXPIRING_TIMER.stop(t);
         return soon;
     }
     
+    /**
+     * Adds an item to its category partitions.
+     * 
+     * @param item item to add
+     */
+    private void addToCategory(FoodItem item) {
+        Category c = partitionOf(item);
+        categoryByName.get(c).put(item.getNormalizedName(), item);
+        List<FoodItem> group = categoryByExpiration.get(c).computeIfAbsent(item.getExpirationDate(), d -> new ArrayList<>());
+        group.add(item);
+        // Keeps same-day items in name order
+        group.sort(Comparator.comparing(FoodItem::getNormalizedName));
+    }
+    
+    /**
+     * Removes an item from its category partitions.
+     * 
+     * @param item item to remove
+     */
+    private void removeFromCategory(FoodItem item) {
+        Category c = partitionOf(item);
+        categoryByName.get(c).remove(item.getNormalizedName());
+        TreeMap<LocalDate, List<FoodItem>> byDate = categoryByExpiration.get(c);
+        List<FoodItem> group = byDate.get(item.getExpirationDate());
+        if (group != null) {
+            group.remove(item);
+            if (group.isEmpty()) {
+                byDate.remove(item.getExpirationDate());
+            }
+        }
+    }
+    
+    /**
+     * Returns the partition an item belongs to. Items without a category go under OTHER.
+     */
+    private Category partitionOf(FoodItem item) {
+        if (item.getCategory() == null) {
+            return Category.OTHER;
+        }
+        return item.getCategory();
+    }
+    
+    /**
+     * Searches food items by name. The last word of the query may be partial,
+     * and small typos are tolerated.
+     * 
+     * @param query search text
+     * @param category only items in this category, or null for all
+     * @param limit maximum number of results
+     * @return matching items, best match first
+     */
+    public List<FoodItem> searchFood(String query, Category category, int limit) {
+        return itemIndex.searchFood(query, category, limit);
+    }
+    
+    /**
+     * Searches recipes by name, ingredients and steps.
+     * 
+     * @param query search text
+     * @param limit maximum number of results
+     * @return matching recipes, best match first
+     */
+    public List<Recipe> searchRecipes(String query, int limit) {
+        return recipeIndex.searchRecipes(query, limit);
+    }
+    
     /**
      * Adds a recipe to the fridge's stored recipe list.
      * 
@@ -184,8 +778,337 @@ public class Fridge {
      */
     public void addRecipe(Recipe recipe) {
         if (recipe != null) {
+            log(FridgeLog.recipeRecord(recipe));
+            // If this fridge has corrected any ingredient's tags
+            if (!ingredientTags.isEmpty()) {
+                recipe.setDietTags(recipeTags(recipe));
+            }
+            recipeRows.put(recipe, recipes.size());
             recipes.add(recipe);
+            recipeCount = recipeRows.size();
+            recipesByContent.computeIfAbsent(recipe.getContentHash(), h -> new ArrayList<>(1)).add(recipe);
+            recipeIndex.add(recipe);
+            feasibility.add(recipe);
+            similarity.add(recipe);
+        }
+    }
+    
+    /**
+     * Removes a recipe and any plans to cook it. Recipes using it as a
+     * sub-recipe keep their own copy of the link.
+     * 
+     * @param recipe recipe to remove; compared by identity
+     * @return true if it was stored
+     */
+    public boolean removeRecipe(Recipe recipe) {
+        Integer row = recipeRows.get(recipe);
+        if (row == null) {
+            return false;
+        }
+        // If it is planned at all
+        if (timesPlanned.containsKey(recipe)) {
+            for (LocalDate day : new ArrayList<>(plannedMeals.keySet())) {
+                while (unplanRecipe(recipe, day)) {
+                    // Once per time it was planned that day
+                }
+            }
+        }
+        log(FridgeLog.UNRECIPE, recipe.getName(), Long.toHexString(recipe.getContentHash()));
+        recipeRows.remove(recipe);
+        recipeCount = recipeRows.size();
+        // Packed when the list is next read, so removing many recipes costs one pass
+        recipes.set(row, null);
+        removedRecipes++;
+        List<Recipe> same = recipesByContent.get(recipe.getContentHash());
+        same.removeIf(r -> r == recipe);
+        if (same.isEmpty()) {
+            recipesByContent.remove(recipe.getContentHash());
+        }
+        recipeIndex.remove(recipe);
+        feasibility.remove(recipe);
+        similarity.remove(recipe);
+        return true;
+    }
+    
+    /**
+     * Returns the recipes whose ingredients overlap most with a recipe's.
+     * Found through RecipeSimilarity, so the result is approximate but does
+     * not compare the recipe with every other one.
+     * 
+     * @param recipe recipe to compare with
+     * @param limit most recipes to return
+     * @return other recipes, most similar first
+     */
+    public List<Recipe> getSimilarRecipes(Recipe recipe, int limit) {
+        long t = Metrics.start();
+        List<Recipe> similar = similarity.similarTo(recipe, limit);
+        SIMILAR_TIMER.stop(t);
+        return similar;
+    }
+    
+    /**
+     * Returns other recipes that would use up the same things as a recipe:
+     * those whose ingredients overlap most with the recipe's ingredients in stock.
+     * 
+     * @param recipe recipe to compare with
+     * @param limit most recipes to return
+     * @return other recipes, best first; empty if none of the recipe's ingredients are in stock
+     */
+    public List<Recipe> getRecipesUsingSameLeftovers(Recipe recipe, int limit) {
+        long t = Metrics.start();
+        Set<String> leftovers = new HashSet<>();
+        for (IngredientLine line : recipe.getIngredients()) {
+            if (inventoryByName.containsKey(line.getNormalizedName())) {
+                leftovers.add(line.getNormalizedName());
+            }
+        }
+        List<Recipe> result = similarity.similarTo(leftovers, recipe, limit);
+        SIMILAR_TIMER.stop(t);
+        return result;
+    }
+    
+    /**
+     * Returns the recipes that suit a household's restrictions. Under any
+     * restriction, recipes with an ingredient of UNKNOWN tags are left out.
+     * 
+     * @param avoided mask of DietTags to avoid
+     * @return suitable recipes, in the order they were added
+     */
+    public List<Recipe> getRecipesFor(long avoided) {
+        List<Recipe> suitable = new ArrayList<>();
+        for (Recipe r : getRecipes()) {
+            if (r.suits(avoided)) {
+                suitable.add(r);
+            }
+        }
+        return suitable;
+    }
+    
+    /**
+     * Returns an ingredient's diet tags: the ones set on this fridge, or else
+     * the ones guessed from its name.
+     * 
+     * @param name ingredient name
+     * @return DietTag mask
+     */
+    public long getIngredientTags(String name) {
+        String key = name.toLowerCase().trim();
+        Long tags = ingredientTags.get(key);
+        return tags != null ? tags : DietTag.defaultTags(key);
+    }
+    
+    /**
+     * Sets an ingredient's diet tags. Only the recipes that use it, directly or
+     * through a sub-recipe, are updated.
+     * 
+     * @param name ingredient name
+     * @param tags DietTag mask
+     */
+    public void setIngredientTags(String name, long tags) {
+        String key = name.toLowerCase().trim();
+        log(FridgeLog.TAGS, key, DietTag.format(tags));
+        ingredientTags.put(key, tags);
+        Deque<String> changed = new ArrayDeque<>();
+        changed.add(key);
+        while (!changed.isEmpty()) {
+            for (Recipe r : feasibility.recipesUsing(changed.poll())) {
+                long updated = recipeTags(r);
+                // If it changed, recipes using this one as a sub-recipe change too
+                if (updated != r.getDietTags()) {
+                    r.setDietTags(updated);
+                    changed.add(r.getName().toLowerCase().trim());
+                }
+            }
+        }
+    }
+    
+    /** @return ingredient tag masks set on this fridge, by name */
+    Map<String, Long> getIngredientTagOverrides() {
+        return ingredientTags;
+    }
+    
+    /** @return DietTag mask of all a recipe's ingredients */
+    private long recipeTags(Recipe recipe) {
+        long tags = 0;
+        for (IngredientLine line : recipe.getIngredients()) {
+            tags |= line.getSubRecipe() != null ? line.getSubRecipe().getDietTags()
+                : getIngredientTags(line.getNormalizedName());
+        }
+        return tags;
+    }
+    
+    /**
+     * Lets one ingredient stand in for another in recipes, such as margarine
+     * for butter. Substitutes chain: whatever stands in for margarine then
+     * stands in for butter too.
+     * 
+     * @param from ingredient that can be replaced
+     * @param to ingredient that replaces it
+     * @param ratio amount of to per one of from
+     * @throws IllegalArgumentException if the ratio is not positive or from and to are the same
+     */
+    public void addSubstitution(String from, String to, double ratio) {
+        long scaled = Quantity.fromDouble(ratio);
+        substitutions.add(from, to, scaled);
+        log(FridgeLog.SUBST, from.toLowerCase().trim(), to.toLowerCase().trim(), Long.toString(scaled));
+        feasibility.recount();
+    }
+    
+    /**
+     * Stops one ingredient standing in for another.
+     * 
+     * @param from ingredient that could be replaced
+     * @param to ingredient that replaced it
+     * @return true if there was such a substitution
+     */
+    public boolean removeSubstitution(String from, String to) {
+        if (!substitutions.remove(from, to)) {
+            return false;
+        }
+        log(FridgeLog.UNSUBST, from.toLowerCase().trim(), to.toLowerCase().trim());
+        feasibility.recount();
+        return true;
+    }
+    
+    /** @return this fridge's substitutions; change them through addSubstitution */
+    public Substitutions getSubstitutions() {
+        return substitutions;
+    }
+    
+    /**
+     * Returns how much of an ingredient a recipe can count on: the stock of it
+     * plus what the stock of its substitutes stands in for.
+     * 
+     * @param name ingredient name
+     * @return amount in thousandths
+     */
+    public long getEffectiveQuantity(String name) {
+        String key = name.toLowerCase().trim();
+        FoodItem item = inventoryByName.get(key);
+        long have = item == null ? 0 : item.getScaledQuantity();
+        for (Substitutions.Substitute s : substitutions.of(key)) {
+            FoodItem sub = inventoryByName.get(s.getName());
+            if (sub != null) {
+                have = Math.min(Long.MAX_VALUE / 2, have + s.covers(sub.getScaledQuantity()));
+            }
+        }
+        return have;
+    }
+    
+    /**
+     * Works out what to take from the stock for some ingredient lines: each
+     * ingredient itself first, then its substitutes, best first. Nothing is taken.
+     * 
+     * @param lines ingredient lines to cover
+     * @param times how many times each line is needed
+     * @return amounts in thousandths by item name, or null if the stock does not cover them all
+     */
+    Map<String, Long> allocate(List<IngredientLine> lines, int times) {
+        Map<String, Long> take = new HashMap<>();
+        for (IngredientLine line : lines) {
+            String key = line.getNormalizedName();
+            long need = Math.multiplyExact(line.getScaledAmount(), (long) times);
+            need -= claim(take, key, need);
+            for (Substitutions.Substitute s : substitutions.of(key)) {
+                if (need <= 0) {
+                    break;
+                }
+                FoodItem sub = inventoryByName.get(s.getName());
+                long left = sub == null ? 0 : sub.getScaledQuantity() - take.getOrDefault(s.getName(), 0L);
+                long use = Math.min(need, s.covers(left));
+                if (use > 0) {
+                    take.merge(s.getName(), s.needed(use), Long::sum);
+                    need -= use;
+                }
+            }
+            if (need > 0) {
+                return null;
+            }
+        }
+        return take;
+    }
+    
+    /**
+     * Claims up to an amount of an item for allocate, minus what is already claimed.
+     * 
+     * @return amount claimed
+     */
+    private long claim(Map<String, Long> take, String key, long need) {
+        FoodItem item = inventoryByName.get(key);
+        long left = item == null ? 0 : item.getScaledQuantity() - take.getOrDefault(key, 0L);
+        long use = Math.min(need, Math.max(0, left));
+        if (use > 0) {
+            take.merge(key, use, Long::sum);
+        }
+        return use;
+    }
+    
+    /**
+     * Returns how many servings of a recipe the stock allows. For the fridge's
+     * own recipes this is kept up to date as stock changes, so it costs a lookup.
+     * 
+     * @param recipe recipe to check
+     * @return servings, or Integer.MAX_VALUE if it needs nothing
+     */
+    public int getMaxServings(Recipe recipe) {
+        return feasibility.getServings(recipe);
+    }
+    
+    /**
+     * Returns the recipes the stock covers now. The set is kept up to date as
+     * stock changes, so reading it is free.
+     * 
+     * @return read-only live view; read on the fridge's owner thread only
+     */
+    public Set<Recipe> getCookableNow() {
+        return feasibility.getCookableNow();
+    }
+    
+    /**
+     * Returns the recipes short of exactly one ingredient, kept up to date like
+     * getCookableNow().
+     * 
+     * @return read-only live view; read on the fridge's owner thread only
+     */
+    public Set<Recipe> getOneIngredientAway() {
+        return feasibility.getOneIngredientAway();
+    }
+    
+    /**
+     * Returns the recipes that can be cooked now. The set is kept up to date
+     * as stock changes, so this is a lookup, not a pass over the catalog.
+     * 
+     * @return read-only live view, in the order recipes became cookable; read
+     *         on the fridge's owner thread only
+     */
+    public Set<Recipe> getCookableRecipes() {
+        return feasibility.getCookableNow();
+    }
+    
+    /**
+     * Finds a stored recipe with the same ingredients and steps as another,
+     * whatever its name. Only recipes with the same content hash are compared.
+     * 
+     * @param recipe recipe to look for
+     * @return the stored recipe, or null if none matches
+     */
+    public Recipe findDuplicate(Recipe recipe) {
+        for (Recipe r : recipesByContent.getOrDefault(recipe.getContentHash(), Collections.emptyList())) {
+            if (r != recipe && r.sameContent(recipe)) {
+                return r;
+            }
         }
+        return null;
+    }
+    
+    /**
+     * Returns the stored recipes with a content hash, oldest first.
+     * 
+     * @param hash content hash (see Recipe.getContentHash)
+     * @return matching recipes; empty if none
+     */
+    List<Recipe> getRecipesWithContent(long hash) {
+        return Collections.unmodifiableList(recipesByContent.getOrDefault(hash, Collections.emptyList()));
     }
     
     /**
@@ -194,6 +1117,14 @@ public class Fridge {
      * @return recipes
      */
     public List<Recipe> getRecipes() {
+        // If recipes were removed since it was last packed
+        if (removedRecipes > 0) {
+            recipes.removeIf(Objects::isNull);
+            for (int i = 0; i < recipes.size(); i++) {
+                recipeRows.put(recipes.get(i), i);
+            }
+            removedRecipes = 0;
+        }
         return recipes;
     }
     
@@ -203,15 +1134,176 @@ public class Fridge {
      * Contributed by: Angela Zhong
      */
     public void createShoppingList() {
+        createShoppingList(0);
+    }
+    
+    /**
+     * Builds the shopping list from low stock items and from what is expected
+     * to run short before the next shop. Expected use of an ingredient is the
+     * larger of its forecast use and what the meals still planned from today
+     * until the shop need; the forecast already learned from past cooking, so
+     * the two are not added. Each line is the larger of the low stock and
+     * expected shortfalls. With no lead time this is the low stock list alone.
+     * 
+     * A planned meal's sub-recipe lines, such as a stock or a dough, come from
+     * the fridge's own stock of them first. Whole batches of the rest are
+     * broken down into raw ingredients with a BillOfMaterials.
+     * 
+     * @param leadDays days until the next shop
+     */
+    public void createShoppingList(int leadDays) {
         shoppingList.clear();
         
         for (FoodItem item : getLowStockItems()) {
-            double shortage = LOW_STOCK_THRESHOLD - item.getQuantity();
+            long shortage = LOW_STOCK_THRESHOLD - item.getScaledQuantity();
             
             if (shortage > 0) {
-                shoppingList.put(item.getNormalizedName(), new IngredientLine(item.getName(), shortage, item.getUnit()));
+                shoppingList.put(item.getNormalizedName(), IngredientLine.ofScaled(item.getName(), shortage, item.getUnit()));
+            }
+        }
+        
+        // Adds up planned recipe needs in the window; cooked meals are no longer planned
+        LocalDate today = LocalDate.now();
+        HashMap<String, Long> need = new HashMap<>();
+        HashMap<String, String> units = new HashMap<>();
+        if (leadDays > 0) {
+            // Sub-recipe lines by recipe, in thousandths of a batch
+            IdentityHashMap<Recipe, Long> subNeed = new IdentityHashMap<>();
+            for (List<Recipe> meals : plannedMeals.subMap(today, true, today.plusDays(leadDays), false).values()) {
+                for (Recipe r : meals) {
+                    for (IngredientLine line : r.getIngredients()) {
+                        if (line.getSubRecipe() != null) {
+                            subNeed.merge(line.getSubRecipe(), line.getScaledAmount(), Long::sum);
+                            continue;
+                        }
+                        need.merge(line.getNormalizedName(), line.getScaledAmount(), Long::sum);
+                        units.putIfAbsent(line.getNormalizedName(), line.getUnit());
+                    }
+                }
+            }
+            // Makes whole batches of what the stock of each sub-recipe does not cover
+            Map<Recipe, Integer> order = new IdentityHashMap<>();
+            for (Map.Entry<Recipe, Long> e : subNeed.entrySet()) {
+                FoodItem made = inventoryByName.get(e.getKey().getName().toLowerCase().trim());
+                long missing = e.getValue() - (made == null ? 0 : made.getScaledQuantity());
+                if (missing > 0) {
+                    order.put(e.getKey(), (int) ((missing + Quantity.SCALE - 1) / Quantity.SCALE));
+                }
+            }
+            if (!order.isEmpty()) {
+                BillOfMaterials bom = new BillOfMaterials();
+                for (Map.Entry<String, Long> e : bom.explode(order).entrySet()) {
+                    need.merge(e.getKey(), e.getValue(), Long::sum);
+                    units.putIfAbsent(e.getKey(), bom.getUnit(e.getKey()));
+                }
+            }
+            for (String name : forecast.getIngredientNames()) {
+                need.merge(name, forecast.getProjectedUse(name, today, leadDays), Math::max);
+                units.putIfAbsent(name, forecast.getUnit(name));
             }
         }
+        
+        for (Map.Entry<String, Long> e : need.entrySet()) {
+            FoodItem item = inventoryByName.get(e.getKey());
+            long shortfall = e.getValue() - (item == null ? 0 : item.getScaledQuantity());
+            IngredientLine current = shoppingList.get(e.getKey());
+            
+            // If the projection asks for more than the low stock rule
+            if (shortfall > 0 && (current == null || shortfall > current.getScaledAmount())) {
+                String unit = item != null ? item.getUnit() : units.get(e.getKey());
+                String name = item != null ? item.getName() : e.getKey();
+                shoppingList.put(e.getKey(), IngredientLine.ofScaled(name, shortfall, unit == null ? "" : unit));
+            }
+        }
+        
+        // Followers get the finished list, since forecasts are not replicated
+        log(FridgeLog.SHOP_CLEAR);
+        for (Map.Entry<String, IngredientLine> e : shoppingList.entrySet()) {
+            log(FridgeLog.shoppingRecord(e.getKey(), e.getValue()));
+        }
+    }
+    
+    /**
+     * Plans a recipe for a day, so its ingredients count toward the shopping list.
+     * 
+     * @param recipe recipe to plan
+     * @param day day it will be cooked
+     */
+    public void planRecipe(Recipe recipe, LocalDate day) {
+        if (recipe != null && day != null) {
+            log(FridgeLog.PLAN, recipe.getName(), day.toString());
+            plannedMeals.computeIfAbsent(day, d -> new ArrayList<>()).add(recipe);
+            timesPlanned.merge(recipe, 1, Integer::sum);
+        }
+    }
+    
+    /**
+     * Marks a planned meal as cooked, so it no longer counts toward the
+     * shopping list: removes the recipe's plan for the day, or else its
+     * latest earlier plan.
+     * 
+     * @param recipe recipe that was cooked
+     * @param day day it was cooked
+     * @return true if a plan was removed
+     */
+    public boolean cookedPlanned(Recipe recipe, LocalDate day) {
+        // If it is not planned at all
+        if (!timesPlanned.containsKey(recipe)) {
+            return false;
+        }
+        for (LocalDate planned : plannedMeals.headMap(day, true).descendingKeySet()) {
+            if (unplanRecipe(recipe, planned)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Removes a planned recipe.
+     * 
+     * @param recipe recipe to remove
+     * @param day day it was planned for
+     * @return true if it was planned
+     */
+    public boolean unplanRecipe(Recipe recipe, LocalDate day) {
+        List<Recipe> meals = plannedMeals.get(day);
+        if (meals == null || !meals.remove(recipe)) {
+            return false;
+        }
+        if (meals.isEmpty()) {
+            plannedMeals.remove(day);
+        }
+        timesPlanned.computeIfPresent(recipe, (r, n) -> n > 1 ? n - 1 : null);
+        log(FridgeLog.UNPLAN, recipe.getName(), day.toString());
+        return true;
+    }
+    
+    /**
+     * Returns the recipes planned in a date range.
+     * 
+     * @param from first day (inclusive)
+     * @param to last day (inclusive)
+     * @return planned recipes by day
+     */
+    public SortedMap<LocalDate, List<Recipe>> getPlannedRecipes(LocalDate from, LocalDate to) {
+        return Collections.unmodifiableSortedMap(plannedMeals.subMap(from, true, to, true));
+    }
+    
+    /**
+     * Returns the day an item is expected to run out, from its usage so far.
+     * 
+     * @param name name of the food item
+     * @return expected depletion day, or null if it is not being used
+     */
+    public LocalDate getDepletionDate(String name) {
+        FoodItem item = getFoodItem(name);
+        return forecast.getDepletionDate(name, item == null ? 0 : item.getScaledQuantity(), LocalDate.now());
+    }
+    
+    /** @return usage forecast */
+    public DemandForecast getForecast() {
+        return forecast;
     }
     
     /**
@@ -223,13 +1315,15 @@ public class Fridge {
         name = name.toLowerCase().trim();
         IngredientLine line = shoppingList.get(name);
         if (line != null) {
-            double remaining = line.getAmount() - amt;
+            long remaining = line.getScaledAmount() - Quantity.fromDouble(amt);
             
             if (remaining <= 0) {
                 shoppingList.remove(name);
+                log(FridgeLog.SHOP_REMOVE, name);
             }
             else {
-                shoppingList.put(name, new IngredientLine(line.getNormalizedName(), remaining, line.getUnit()));
+                shoppingList.put(name, IngredientLine.ofScaled(line.getNormalizedName(), remaining, line.getUnit()));
+                log(FridgeLog.shoppingRecord(name, shoppingList.get(name)));
             }
         }
     }
@@ -263,8 +1357,36 @@ public class Fridge {
         if (existing == null) {
             shoppingList.put(key, new IngredientLine(name, amt, unit));
         } else {
-            shoppingList.put(key, new IngredientLine(existing.getNormalizedName(), existing.getAmount() + amt, existing.getUnit()));
+            shoppingList.put(key, IngredientLine.ofScaled(existing.getNormalizedName(), existing.getScaledAmount() + Quantity.fromDouble(amt), existing.getUnit()));
         }
+        log(FridgeLog.shoppingRecord(key, shoppingList.get(key)));
+    }
+    
+    /**
+     * Sets a shopping list line directly. Used when replaying a change log.
+     * 
+     * @param key shopping list key
+     * @param line line to store, or null to remove it
+     */
+    void putShoppingListLine(String key, IngredientLine line) {
+        if (line == null) {
+            shoppingList.remove(key);
+        }
+        else {
+            shoppingList.put(key, line);
+        }
+    }
+    
+    /**
+     * Empties the shopping list. Used when replaying a change log.
+     */
+    void clearShoppingList() {
+        shoppingList.clear();
+    }
+    
+    /** @return shopping list lines by key */
+    Map<String, IngredientLine> getShoppingListByKey() {
+        return Collections.unmodifiableMap(shoppingList);
     }
 
     /**
@@ -277,7 +1399,7 @@ public class Fridge {
     public Recipe getRecipeWithIngredients(){
         double max = 0;
         Recipe bestRecipe = null;
-        for(Recipe recipe : recipes){
+        for(Recipe recipe : getRecipes()){
             double temp = recipe.getMissingIngredients(this);
             if(max < temp){
                 max = temp;
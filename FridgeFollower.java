@@ -0,0 +1,250 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps a read-only copy of a primary fridge by following its LogShipper.
+ *
+ * Records are applied in order on the copy's owner thread. The follower
+ * tracks how far behind it may be, so reads can be refused when the copy
+ * is older than the caller accepts. If the connection drops, it reconnects
+ * and resumes after the last record it received; the first connection, or
+ * one to a restarted primary, starts from a snapshot. If a record does not
+ * apply, the copy no longer matches the primary: later records are dropped,
+ * reads are refused and the follower starts over from a snapshot.
+ */
+public class FridgeFollower {
+    /** pause before reconnecting */
+    private static final long RETRY_MILLIS = 1000;
+
+    /** the copy */
+    private Fridge fridge;
+    /** primary's shipper port on this machine */
+    private int port;
+    /** runs record replay on the copy's owner thread */
+    private Executor fridgeThread;
+    /** offset of the next record to apply */
+    private volatile long appliedOffset;
+    /** offset of the next record to receive; everything before it is applied or queued */
+    private long receivedOffset;
+    /** id of the primary's log being followed, or "-" */
+    private String logId = "-";
+    /** primary's end offset as last heard */
+    private volatile long primaryOffset;
+    /** System.nanoTime() when the copy was last known to be current */
+    private volatile long currentAsOf;
+    /** whether the copy has been current since it last started over */
+    private volatile boolean synced;
+    /** set when a record did not apply; cleared by a snapshot that does */
+    private volatile boolean diverged;
+    /** whether to keep following */
+    private volatile boolean running;
+    /** connection to the primary */
+    private volatile Socket socket;
+
+    /**
+     * Creates a follower that copies into a fridge.
+     *
+     * @param fridge fridge to keep as a copy; its contents are replaced
+     * @param port primary's shipper port on this machine
+     * @param fridgeThread runs record replay on the fridge's owner thread, in order
+     */
+    public FridgeFollower(Fridge fridge, int port, Executor fridgeThread) {
+        this.fridge = fridge;
+        this.port = port;
+        this.fridgeThread = fridgeThread;
+    }
+
+    /**
+     * Starts following in the background.
+     */
+    public void start() {
+        running = true;
+        Thread t = new Thread(this::followLoop, "mealcraft-follower");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Stops following. The copy keeps its last state.
+     */
+    public void stop() {
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /** @return offset of the next record to apply */
+    public long getAppliedOffset() {
+        return appliedOffset;
+    }
+
+    /** @return primary's end offset as last heard */
+    public long getPrimaryOffset() {
+        return primaryOffset;
+    }
+
+    /**
+     * Returns how long ago the copy was last known to match the primary.
+     *
+     * @return milliseconds, or Long.MAX_VALUE if it never has
+     */
+    public long getStalenessMillis() {
+        if (!synced) {
+            return Long.MAX_VALUE;
+        }
+        return (System.nanoTime() - currentAsOf) / 1_000_000;
+    }
+
+    /**
+     * Checks that the copy is recent enough to read from.
+     *
+     * @param maxStalenessMillis oldest acceptable copy
+     * @throws IllegalStateException if the copy is older than that
+     */
+    public void checkFresh(long maxStalenessMillis) {
+        long stale = getStalenessMillis();
+        if (stale > maxStalenessMillis) {
+            throw new IllegalStateException(stale == Long.MAX_VALUE ? "Copy has not synced yet"
+                : "Copy is " + stale + " ms behind, more than " + maxStalenessMillis + " ms");
+        }
+    }
+
+    /**
+     * Connects, reads and applies records until stopped, reconnecting on failure.
+     */
+    private void followLoop() {
+        while (running) {
+            // If the copy diverged, asks for a snapshot instead of resuming
+            if (diverged) {
+                logId = "-";
+            }
+            try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                 Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)) {
+                socket = s;
+                s.setTcpNoDelay(true);
+                out.write("FROM " + logId + " " + receivedOffset + "\n");
+                out.flush();
+
+                String line;
+                while (running && (line = in.readLine()) != null) {
+                    handle(line, in);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Falls through to retry
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles one line from the primary.
+     */
+    private void handle(String line, BufferedReader in) throws IOException {
+        if (line.startsWith("LOG ")) {
+            logId = line.substring(4);
+        }
+        else if (line.startsWith("HB ")) {
+            primaryOffset = Long.parseLong(line.substring(3));
+            long heard = System.nanoTime();
+            // The copy is current once everything before the heartbeat is applied
+            apply(Collections.emptyList(), primaryOffset, heard, false);
+        }
+        else if (line.startsWith("R ")) {
+            int space = line.indexOf(' ', 2);
+            long offset = Long.parseLong(line.substring(2, space));
+            if (offset != receivedOffset) {
+                throw new IOException("Expected record " + receivedOffset + " but got " + offset);
+            }
+            receivedOffset++;
+            primaryOffset = Math.max(primaryOffset, receivedOffset);
+            apply(Collections.singletonList(line.substring(space + 1)), receivedOffset, 0, false);
+        }
+        else if (line.startsWith("SNAPSHOT ")) {
+            String[] parts = line.split(" ");
+            long offset = Long.parseLong(parts[1]);
+            int count = Integer.parseInt(parts[2]);
+            List<String> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String record = in.readLine();
+                if (record == null) {
+                    throw new EOFException("Snapshot cut short");
+                }
+                records.add(record);
+            }
+            receivedOffset = offset;
+            primaryOffset = offset;
+            apply(records, offset, 0, true);
+        }
+    }
+
+    /**
+     * Queues records for the owner thread, applied together so no read sees
+     * half of them, then records progress there.
+     *
+     * @param records records to apply
+     * @param nextOffset offset of the next record once these are applied
+     * @param heard nanoTime of a heartbeat to use as "current as of" if caught up, or 0
+     * @param snapshot true if the records replace the whole copy
+     */
+    private void apply(List<String> records, long nextOffset, long heard, boolean snapshot) {
+        fridgeThread.execute(() -> {
+            // Records after one that failed would only diverge further
+            if (diverged && !snapshot) {
+                return;
+            }
+            try {
+                for (String record : records) {
+                    FridgeLog.apply(fridge, record);
+                }
+            } catch (RuntimeException e) {
+                diverge();
+                return;
+            }
+            diverged = false;
+            if (!records.isEmpty()) {
+                appliedOffset = nextOffset;
+            }
+            // If everything the primary had at the heartbeat is applied
+            if (heard != 0 && appliedOffset >= nextOffset) {
+                currentAsOf = heard;
+                synced = true;
+            }
+        });
+    }
+
+    /**
+     * Stops trusting the copy and drops the connection, so the follower
+     * reconnects and starts over from a snapshot.
+     */
+    private void diverge() {
+        diverged = true;
+        synced = false;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
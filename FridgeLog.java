@@ -0,0 +1,395 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Ordered log of Fridge changes, used to copy one fridge to others.
+ *
+ * A Fridge with a change log (see Fridge.setChangeLog) describes each change
+ * as a one-line text record, e.g. "REMOVE\tmilk\t500\tCONSUMED\t2025-01-31".
+ * Replaying the records in order on an empty fridge gives the same inventory,
+ * recipes, plans and shopping list. Each record gets the next offset, and
+ * the newest records are kept so a follower that falls behind can resume
+ * from its offset; one that is too far behind starts over from a snapshot.
+ *
+ * Records are added by the fridge's owner thread and read by any thread.
+ */
+public class FridgeLog {
+    /** record types */
+    public static final String ADD = "ADD";
+    public static final String REMOVE = "REMOVE";
+    public static final String RETRACT = "RETRACT";
+    public static final String CATEGORY = "CATEGORY";
+    public static final String EXPIRES = "EXPIRES";
+    public static final String RECIPE = "RECIPE";
+    public static final String UNRECIPE = "UNRECIPE";
+    public static final String PLAN = "PLAN";
+    public static final String UNPLAN = "UNPLAN";
+    public static final String SHOP_CLEAR = "SHOP_CLEAR";
+    public static final String SHOP_PUT = "SHOP_PUT";
+    public static final String SHOP_REMOVE = "SHOP_REMOVE";
+    public static final String TAGS = "TAGS";
+    public static final String SUBST = "SUBST";
+    public static final String UNSUBST = "UNSUBST";
+    /** empties the fridge; starts every snapshot */
+    public static final String RESET = "RESET";
+
+    /** default number of records kept */
+    private static final int DEFAULT_CAPACITY = 100_000;
+    /** marks a null field */
+    private static final String NULL = "\\N";
+    /** starts the unit field of a RECIPE ingredient that is another recipe: "@recipe:hash:unit" */
+    private static final String SUB_RECIPE_UNIT = "@recipe:";
+
+    /** random id, so followers can tell a restarted primary from the one they followed */
+    private final String id = java.util.UUID.randomUUID().toString();
+    /** the newest records, by offset modulo the capacity */
+    private final String[] ring;
+    /** offset the next record will get */
+    private long endOffset;
+
+    /**
+     * Creates a log keeping the default number of records.
+     */
+    public FridgeLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a log keeping a given number of records.
+     *
+     * @param capacity records kept before the oldest are dropped
+     */
+    public FridgeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        ring = new String[capacity];
+    }
+
+    /**
+     * Adds a record. Waiting readers are woken up.
+     *
+     * @param record encoded record
+     */
+    public synchronized void append(String record) {
+        ring[(int) (endOffset % ring.length)] = record;
+        endOffset++;
+        notifyAll();
+    }
+
+    /** @return id of this log */
+    public String getId() {
+        return id;
+    }
+
+    /** @return offset the next record will get */
+    public synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    /** @return oldest offset still kept */
+    public synchronized long getStartOffset() {
+        return Math.max(0, endOffset - ring.length);
+    }
+
+    /**
+     * Returns records starting at an offset, waiting a while if there are none yet.
+     *
+     * @param offset first offset wanted
+     * @param max most records to return
+     * @param waitMillis how long to wait for a record
+     * @return records in order (empty if none arrived in time), or null if the offset is no longer kept
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized List<String> read(long offset, int max, long waitMillis) throws InterruptedException {
+        if (offset < getStartOffset() || offset > endOffset) {
+            return null;
+        }
+        if (offset == endOffset && waitMillis > 0) {
+            wait(waitMillis);
+            // If records were dropped while waiting
+            if (offset < getStartOffset()) {
+                return null;
+            }
+        }
+        List<String> records = new ArrayList<>();
+        for (long o = offset; o < endOffset && records.size() < max; o++) {
+            records.add(ring[(int) (o % ring.length)]);
+        }
+        return records;
+    }
+
+    // Records
+    /**
+     * Joins fields into a record. Tabs, newlines and backslashes are escaped
+     * so a record is always one line.
+     *
+     * @param fields record type followed by its fields
+     * @return encoded record
+     */
+    public static String encode(String... fields) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append('\t');
+            }
+            String f = fields[i];
+            if (f == null) {
+                sb.append(NULL);
+                continue;
+            }
+            for (int j = 0; j < f.length(); j++) {
+                char c = f.charAt(j);
+                switch (c) {
+                    case '\\': sb.append("\\\\"); break;
+                    case '\t': sb.append("\\t"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    default: sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Splits a record back into fields.
+     *
+     * @param record encoded record
+     * @return fields
+     */
+    public static String[] decode(String record) {
+        List<String> fields = new ArrayList<>();
+        for (String raw : record.split("\t", -1)) {
+            if (raw.equals(NULL)) {
+                fields.add(null);
+                continue;
+            }
+            StringBuilder sb = new StringBuilder(raw.length());
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (c == '\\' && i + 1 < raw.length()) {
+                    char e = raw.charAt(++i);
+                    sb.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+                }
+                else {
+                    sb.append(c);
+                }
+            }
+            fields.add(sb.toString());
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    /** @return fields of an ADD record for an amount of an item */
+    static String[] addRecord(FoodItem item, long amount) {
+        return new String[] { ADD, item.getName(), Long.toString(amount), item.getUnit(),
+            item.getCategory() == null ? null : item.getCategory().name(),
+            item.getExpirationDate() == null ? null : item.getExpirationDate().toString(), item.getImgFilePath() };
+    }
+
+    /** @return fields of a RECIPE record */
+    static String[] recipeRecord(Recipe recipe) {
+        List<String> f = new ArrayList<>();
+        f.add(RECIPE);
+        f.add(recipe.getName());
+        f.add(recipe.getImgFilePath());
+        f.add(Integer.toString(recipe.getIngredients().size()));
+        for (IngredientLine line : recipe.getIngredients()) {
+            f.add(line.getNormalizedName());
+            f.add(Long.toString(line.getScaledAmount()));
+            // Sub-recipe lines carry the sub-recipe's content hash, so the copy links them to the same recipe
+            Recipe sub = line.getSubRecipe();
+            f.add(sub == null ? line.getUnit()
+                : SUB_RECIPE_UNIT + Long.toHexString(sub.getContentHash()) + ":" + line.getUnit());
+        }
+        f.addAll(recipe.readSteps());
+        return f.toArray(new String[0]);
+    }
+
+    /** @return fields of a SHOP_PUT record */
+    static String[] shoppingRecord(String key, IngredientLine line) {
+        return new String[] { SHOP_PUT, key, line.getNormalizedName(), Long.toString(line.getScaledAmount()), line.getUnit() };
+    }
+
+    /**
+     * Describes a fridge's current state as records that rebuild it, starting with RESET.
+     * Consumption history and usage forecasts are not included.
+     *
+     * @param fridge fridge to describe; must be called on its owner thread
+     * @return encoded records
+     */
+    public static List<String> snapshot(Fridge fridge) {
+        List<String> records = new ArrayList<>();
+        records.add(encode(RESET));
+        for (Map.Entry<String, Long> e : fridge.getIngredientTagOverrides().entrySet()) {
+            records.add(encode(TAGS, e.getKey(), DietTag.format(e.getValue())));
+        }
+        for (Map.Entry<String, Map<String, Long>> e : fridge.getSubstitutions().getDirect().entrySet()) {
+            for (Map.Entry<String, Long> to : e.getValue().entrySet()) {
+                records.add(encode(SUBST, e.getKey(), to.getKey(), Long.toString(to.getValue())));
+            }
+        }
+        for (Recipe r : fridge.getRecipes()) {
+            records.add(encode(recipeRecord(r)));
+        }
+        for (FoodItem item : fridge.getAllFoodItemsSortedAZ()) {
+            records.add(encode(addRecord(item, item.getScaledQuantity())));
+        }
+        for (Map.Entry<LocalDate, List<Recipe>> e : fridge.getPlannedRecipes(LocalDate.MIN, LocalDate.MAX).entrySet()) {
+            for (Recipe r : e.getValue()) {
+                records.add(encode(PLAN, r.getName(), e.getKey().toString()));
+            }
+        }
+        for (Map.Entry<String, IngredientLine> e : fridge.getShoppingListByKey().entrySet()) {
+            records.add(encode(shoppingRecord(e.getKey(), e.getValue())));
+        }
+        return records;
+    }
+
+    /**
+     * Replays one record on a fridge.
+     *
+     * @param fridge fridge to change; must be called on its owner thread
+     * @param record encoded record
+     * @throws IllegalArgumentException if the record cannot be read
+     * @throws IllegalStateException if the record does not fit the fridge, so it has diverged from the source
+     */
+    public static void apply(Fridge fridge, String record) {
+        String[] f = decode(record);
+        try {
+            switch (f[0]) {
+                case RESET:
+                    fridge.reset();
+                    break;
+                case ADD: {
+                    FoodItem item = new FoodItem(f[1], 0, f[3], f[4] == null ? null : Category.valueOf(f[4]),
+                        f[5] == null ? null : LocalDate.parse(f[5]), f[6]);
+                    item.addScaledQuantity(Long.parseLong(f[2]));
+                    fridge.addFood(item);
+                    break;
+                }
+                case REMOVE:
+                    // A null kind is a correction, such as an undo
+                    check(fridge.removeScaledFood(f[1], Long.parseLong(f[2]),
+                        f[3] == null ? null : ConsumptionHistory.Kind.valueOf(f[3]), LocalDate.parse(f[4])), record);
+                    break;
+                case RETRACT:
+                    fridge.retractUsage(f[1], f[4] == null ? null : Category.valueOf(f[4]),
+                        ConsumptionHistory.Kind.valueOf(f[3]), Long.parseLong(f[2]), LocalDate.parse(f[5]));
+                    break;
+                case CATEGORY:
+                    check(fridge.setCategory(f[1], Category.valueOf(f[2])), record);
+                    break;
+                case EXPIRES:
+                    check(fridge.setExpirationDate(f[1], LocalDate.parse(f[2])), record);
+                    break;
+                case RECIPE: {
+                    int n = Integer.parseInt(f[3]);
+                    List<IngredientLine> ingredients = new ArrayList<>();
+                    for (int i = 0; i < n; i++) {
+                        String name = f[4 + 3 * i];
+                        long amount = Long.parseLong(f[5 + 3 * i]);
+                        String unit = f[6 + 3 * i];
+                        if (unit == null || !unit.startsWith(SUB_RECIPE_UNIT)) {
+                            ingredients.add(IngredientLine.ofScaled(name, amount, unit));
+                            continue;
+                        }
+                        String[] sub = unit.split(":", 3);
+                        Recipe r = findSubRecipe(fridge, name, Long.parseUnsignedLong(sub[1], 16));
+                        // If the source's sub-recipe is no longer in its fridge either (it was
+                        // replaced since), the line keeps its unit but not the link, so the
+                        // recipe's content hash still matches the source's
+                        ingredients.add(r != null ? IngredientLine.ofRecipe(r, Quantity.toDouble(amount))
+                            : IngredientLine.ofScaled(name, amount, sub[2]));
+                    }
+                    List<String> steps = new ArrayList<>(Arrays.asList(f).subList(4 + 3 * n, f.length));
+                    fridge.addRecipe(new Recipe(f[1], steps, ingredients, f[2]));
+                    break;
+                }
+                case UNRECIPE: {
+                    long hash = Long.parseUnsignedLong(f[2], 16);
+                    Recipe gone = null;
+                    for (Recipe r : fridge.getRecipesWithContent(hash)) {
+                        if (r.getName().equals(f[1]) && r.getContentHash() == hash) {
+                            gone = r;
+                            break;
+                        }
+                    }
+                    check(gone != null, record);
+                    fridge.removeRecipe(gone);
+                    break;
+                }
+                case PLAN:
+                case UNPLAN: {
+                    Recipe r = findRecipe(fridge, f[1]);
+                    check(r != null, record);
+                    if (f[0].equals(PLAN)) {
+                        fridge.planRecipe(r, LocalDate.parse(f[2]));
+                    }
+                    else {
+                        check(fridge.unplanRecipe(r, LocalDate.parse(f[2])), record);
+                    }
+                    break;
+                }
+                case SHOP_CLEAR:
+                    fridge.clearShoppingList();
+                    break;
+                case SHOP_PUT:
+                    fridge.putShoppingListLine(f[1], IngredientLine.ofScaled(f[2], Long.parseLong(f[3]), f[4]));
+                    break;
+                case SHOP_REMOVE:
+                    fridge.putShoppingListLine(f[1], null);
+                    break;
+                case TAGS:
+                    fridge.setIngredientTags(f[1], DietTag.parse(f[2]));
+                    break;
+                case SUBST:
+                    fridge.addSubstitution(f[1], f[2], Quantity.toDouble(Long.parseLong(f[3])));
+                    break;
+                case UNSUBST:
+                    fridge.removeSubstitution(f[1], f[2]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown record type " + f[0]);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | java.time.DateTimeException e) {
+            throw new IllegalArgumentException("Bad record: " + record, e);
+        }
+    }
+
+    /**
+     * Fails a record that the fridge could not apply; the source applied it,
+     * so the two no longer match.
+     *
+     * @param applied whether the change was made
+     * @param record the record, for the message
+     * @throws IllegalStateException if it was not
+     */
+    private static void check(boolean applied, String record) {
+        if (!applied) {
+            throw new IllegalStateException("Record does not apply: " + record);
+        }
+    }
+
+    /** @return the first recipe with a name, or null */
+    private static Recipe findRecipe(Fridge fridge, String name) {
+        for (Recipe r : fridge.getRecipes()) {
+            if (r.getName().equals(name)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /** @return the most recently added recipe with a normalized name and content hash, or null */
+    private static Recipe findSubRecipe(Fridge fridge, String normalizedName, long hash) {
+        List<Recipe> recipes = fridge.getRecipesWithContent(hash);
+        for (int i = recipes.size() - 1; i >= 0; i--) {
+            if (recipes.get(i).getName().toLowerCase().trim().equals(normalizedName)) {
+                return recipes.get(i);
+            }
+        }
+        return null;
+    }
+}
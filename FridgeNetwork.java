@@ -0,0 +1,380 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Inventory spread over several locations (walk-ins, freezers, pantries),
+ * each kept in its own Fridge. Answers questions across all of them:
+ * totals per item, soonest-expiring items and whether a recipe can be
+ * made from what every location holds together, counting substitutes and
+ * making sub-recipes that are not stocked.
+ *
+ * Like Fridge, it is not thread-safe.
+ */
+public class FridgeNetwork {
+    /** fridges by location name, in the order they were added */
+    private LinkedHashMap<String, Fridge> locations;
+
+    /**
+     * Creates a network with no locations.
+     */
+    public FridgeNetwork() {
+        locations = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a location.
+     *
+     * @param name location name
+     * @param fridge fridge holding its inventory
+     * @throws IllegalArgumentException if the name is already used
+     */
+    public void addLocation(String name, Fridge fridge) {
+        if (locations.containsKey(name)) {
+            throw new IllegalArgumentException("Location already exists: " + name);
+        }
+        locations.put(name, fridge);
+    }
+
+    /**
+     * Removes a location.
+     *
+     * @param name location name
+     * @return its fridge, or null if there was none
+     */
+    public Fridge removeLocation(String name) {
+        return locations.remove(name);
+    }
+
+    /** @return fridge at a location, or null */
+    public Fridge getLocation(String name) {
+        return locations.get(name);
+    }
+
+    /** @return location names in the order they were added */
+    public List<String> getLocationNames() {
+        return new ArrayList<>(locations.keySet());
+    }
+
+    /**
+     * Returns how much of an item there is across every location.
+     *
+     * @param name item name
+     * @return total quantity
+     */
+    public double getTotalQuantity(String name) {
+        return Quantity.toDouble(getScaledTotal(name));
+    }
+
+    /**
+     * Returns how much of an item each location holds. Locations without it are left out.
+     *
+     * @param name item name
+     * @return quantity by location
+     */
+    public Map<String, Double> getQuantityByLocation(String name) {
+        Map<String, Double> byLocation = new LinkedHashMap<>();
+        for (Map.Entry<String, Fridge> e : locations.entrySet()) {
+            FoodItem item = e.getValue().getFoodItem(name);
+            if (item != null) {
+                byLocation.put(e.getKey(), item.getQuantity());
+            }
+        }
+        return byLocation;
+    }
+
+    /**
+     * Returns items from every location from soonest to latest expiration.
+     * Each location's expiration index is already sorted, so they are merged
+     * rather than sorted again, and only as many entries as asked for are read.
+     *
+     * @param limit maximum number of items
+     * @return items with their locations
+     */
+    public List<Stock> getSoonestExpiring(int limit) {
+        return merge(limit, null);
+    }
+
+    /**
+     * Returns items from every location expiring within a number of days (inclusive),
+     * soonest first.
+     *
+     * @param days the number of days from today
+     * @return items with their locations
+     */
+    public List<Stock> getItemsExpiringWithin(int days) {
+        LocalDate today = LocalDate.now();
+        LocalDate last = today.plusDays(Math.max(0, days));
+        List<Stock> soon = new ArrayList<>();
+        for (Stock s : merge(Integer.MAX_VALUE, last)) {
+            // If it has already expired
+            if (!s.getItem().getExpirationDate().isBefore(today)) {
+                soon.add(s);
+            }
+        }
+        return soon;
+    }
+
+    /**
+     * Checks whether a recipe can be made from all locations together,
+     * counting substitutes and making sub-recipes that are not stocked.
+     *
+     * @param recipe recipe to check
+     * @return true if the locations hold enough for every ingredient
+     */
+    public boolean canCook(Recipe recipe) {
+        return plan(recipe) != null;
+    }
+
+    /**
+     * Plans where to take each ingredient from. See plan() for the order
+     * stock is used in.
+     *
+     * @param recipe recipe to plan
+     * @return items to take by location, or null if the recipe cannot be made
+     */
+    public Map<String, List<IngredientLine>> getPickList(Recipe recipe) {
+        Map<String, Map<String, Long>> take = plan(recipe);
+        if (take == null) {
+            return null;
+        }
+        Map<String, List<IngredientLine>> picks = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Long>> e : take.entrySet()) {
+            Fridge fridge = locations.get(e.getKey());
+            List<IngredientLine> lines = new ArrayList<>();
+            for (Map.Entry<String, Long> t : e.getValue().entrySet()) {
+                lines.add(IngredientLine.ofScaled(t.getKey(), t.getValue(), fridge.getFoodItem(t.getKey()).getUnit()));
+            }
+            picks.put(e.getKey(), lines);
+        }
+        return picks;
+    }
+
+    /**
+     * Cooks a recipe, taking ingredients from whichever locations the pick
+     * list chooses. Each location's removals are one undo step there. If a
+     * removal fails anyway, what was already taken is put back.
+     *
+     * @param recipe recipe to cook
+     * @return true if it was cooked, false if the locations did not hold enough
+     */
+    public boolean cook(Recipe recipe) {
+        Map<String, Map<String, Long>> take = plan(recipe);
+        if (take == null) {
+            return false;
+        }
+        List<Fridge> done = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Long>> e : take.entrySet()) {
+            Fridge fridge = locations.get(e.getKey());
+            boolean ok = true;
+            fridge.beginEdit("Cook " + recipe.getName());
+            try {
+                for (Map.Entry<String, Long> t : e.getValue().entrySet()) {
+                    if (!fridge.removeScaledFood(t.getKey(), t.getValue())) {
+                        ok = false;
+                        break;
+                    }
+                }
+            } finally {
+                fridge.endEdit();
+            }
+            done.add(fridge);
+            if (!ok) {
+                // Takes back this location's step and every earlier one
+                for (Fridge f : done) {
+                    f.undo();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Works out what to take from each location for a recipe. Lines for the
+     * same ingredient are added up first. A sub-recipe line, such as a stock,
+     * uses what the locations hold of it, and the rest is made from its raw
+     * ingredients (see BillOfMaterials). Each ingredient comes from the
+     * locations whose stock of it expires soonest first, then from
+     * substitutes, location by location, using each location's own
+     * substitutions.
+     *
+     * @return amounts in thousandths by item name by location, or null if the locations do not hold enough
+     */
+    private Map<String, Map<String, Long>> plan(Recipe recipe) {
+        Map<String, Long> need = new TreeMap<>();
+        Map<String, Recipe> made = new TreeMap<>();
+        for (IngredientLine line : recipe.getIngredients()) {
+            need.merge(line.getNormalizedName(), line.getScaledAmount(), Long::sum);
+            if (line.getSubRecipe() != null) {
+                made.put(line.getNormalizedName(), line.getSubRecipe());
+            }
+        }
+
+        Map<String, Map<String, Long>> take = new LinkedHashMap<>();
+        // Sub-recipes first, since making them adds to the raw ingredients needed
+        BillOfMaterials bom = new BillOfMaterials();
+        for (Map.Entry<String, Recipe> e : made.entrySet()) {
+            long want = need.remove(e.getKey());
+            long left = want - claim(take, e.getKey(), want);
+            if (left > 0) {
+                for (Map.Entry<String, Long> raw : bom.explode(e.getValue(), 1).entrySet()) {
+                    long amount = (Math.multiplyExact(raw.getValue(), left) + Quantity.SCALE - 1) / Quantity.SCALE;
+                    need.merge(raw.getKey(), amount, Long::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, Long> e : need.entrySet()) {
+            if (claim(take, e.getKey(), e.getValue()) < e.getValue()) {
+                return null;
+            }
+        }
+        return take;
+    }
+
+    /**
+     * Claims up to an amount of an ingredient for plan(), minus what is
+     * already claimed: the item itself, soonest-expiring location first,
+     * then its substitutes.
+     *
+     * @return amount of the ingredient covered
+     */
+    private long claim(Map<String, Map<String, Long>> take, String name, long amount) {
+        List<Stock> sources = new ArrayList<>();
+        for (Map.Entry<String, Fridge> e : locations.entrySet()) {
+            FoodItem item = e.getValue().getFoodItem(name);
+            if (item != null) {
+                sources.add(new Stock(e.getKey(), item));
+            }
+        }
+        sources.sort(Comparator.comparing(s -> s.getItem().getExpirationDate()));
+
+        long left = amount;
+        for (Stock s : sources) {
+            long free = s.getItem().getScaledQuantity() - taken(take, s.getLocation(), name);
+            long use = Math.min(left, free);
+            if (use > 0) {
+                take.computeIfAbsent(s.getLocation(), k -> new LinkedHashMap<>()).merge(name, use, Long::sum);
+                left -= use;
+            }
+        }
+        for (Map.Entry<String, Fridge> e : locations.entrySet()) {
+            for (Substitutions.Substitute sub : e.getValue().getSubstitutions().of(name)) {
+                if (left == 0) {
+                    return amount;
+                }
+                FoodItem item = e.getValue().getFoodItem(sub.getName());
+                long free = item == null ? 0 : item.getScaledQuantity() - taken(take, e.getKey(), sub.getName());
+                long use = Math.min(left, sub.covers(free));
+                if (use > 0) {
+                    take.computeIfAbsent(e.getKey(), k -> new LinkedHashMap<>()).merge(sub.getName(), sub.needed(use), Long::sum);
+                    left -= use;
+                }
+            }
+        }
+        return amount - left;
+    }
+
+    /** @return amount of an item already claimed at a location, in thousandths */
+    private static long taken(Map<String, Map<String, Long>> take, String location, String name) {
+        Map<String, Long> at = take.get(location);
+        return at == null ? 0 : at.getOrDefault(name, 0L);
+    }
+
+    /** @return total of an item across locations, in thousandths */
+    private long getScaledTotal(String name) {
+        long total = 0;
+        for (Fridge fridge : locations.values()) {
+            FoodItem item = fridge.getFoodItem(name);
+            if (item != null) {
+                total += item.getScaledQuantity();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Merges the locations' expiration orders with a heap holding the next
+     * item of each location.
+     *
+     * @param limit maximum number of items
+     * @param last latest expiration date to include, or null for no bound
+     * @return merged items
+     */
+    private List<Stock> merge(int limit, LocalDate last) {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Comparator.comparing((Cursor c) -> c.head.getExpirationDate())
+            .thenComparing(c -> c.head.getNormalizedName()));
+        for (Map.Entry<String, Fridge> e : locations.entrySet()) {
+            Cursor c = new Cursor(e.getKey(), e.getValue().expirationOrder());
+            if (c.advance()) {
+                heap.add(c);
+            }
+        }
+
+        List<Stock> merged = new ArrayList<>();
+        while (!heap.isEmpty() && merged.size() < limit) {
+            Cursor c = heap.poll();
+            // If everything left is past the last date
+            if (last != null && c.head.getExpirationDate().isAfter(last)) {
+                break;
+            }
+            merged.add(new Stock(c.location, c.head));
+            if (c.advance()) {
+                heap.add(c);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * One location's position in a merge.
+     */
+    private static class Cursor {
+        /** location name */
+        final String location;
+        /** remaining items in expiration order */
+        final Iterator<FoodItem> rest;
+        /** current item */
+        FoodItem head;
+
+        Cursor(String location, Iterator<FoodItem> rest) {
+            this.location = location;
+            this.rest = rest;
+        }
+
+        /** @return true if there was another item */
+        boolean advance() {
+            head = rest.hasNext() ? rest.next() : null;
+            return head != null;
+        }
+    }
+
+    /**
+     * A food item together with the location that holds it.
+     */
+    public static class Stock {
+        /** location name */
+        private final String location;
+        /** item at that location */
+        private final FoodItem item;
+
+        Stock(String location, FoodItem item) {
+            this.location = location;
+            this.item = item;
+        }
+
+        /** @return location name */
+        public String getLocation() {
+            return location;
+        }
+
+        /** @return item at that location */
+        public FoodItem getItem() {
+            return item;
+        }
+
+        /** @return readable string */
+        public String toString() {
+            return item + " @ " + location;
+        }
+    }
+}
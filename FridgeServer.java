@@ -0,0 +1,1024 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless fridge service with a local HTTP/JSON API, so several terminals
+ * and scripts can share one fridge without the JavaFX App.
+ *
+ * Requests are handled on virtual threads when the JDK has them, and on a
+ * thread pool otherwise. The Fridge itself is only touched by one fridge
+ * thread, which takes waiting requests in batches; identical reads in the
+ * same batch (with no write between them) are answered once.
+ *
+ * Endpoints:
+ *   GET    /inventory[?sort=az|expiration|quantity][&category=c][&prefix=p][&from=d&to=d][&min=n&max=n][&limit=n]  list items
+ *   GET    /inventory/{name}                      one item
+ *   POST   /inventory                             add {"name", "quantity", "unit", "category", "expires", "image"}
+ *   PUT    /inventory/{name}                      update {"quantity", "category", "expires"}
+ *   DELETE /inventory/{name}[?amount=n&waste=true] remove some or all of an item
+ *   GET    /expiring[?days=n&category=c]          items expiring soon
+ *   GET    /low-stock                             low stock items
+ *   GET    /history?item=x|category=c[&by=day|week|month&from=d&to=d]  usage and waste totals
+ *   GET    /recipes[?sort=availability|expiring|servings|az][&cookable=true][&diet=vegetarian,nut]  ranked recipes
+ *   GET    /production?recipe=name[&batches=n]    raw ingredients for batches of a recipe, and what is short
+ *   GET    /tags/{ingredient}                     an ingredient's diet tags
+ *   PUT    /tags/{ingredient}                     set {"tags": "dairy,egg"}
+ *   GET    /substitutions                         what can stand in for what
+ *   POST   /substitutions                         add {"from", "to", "ratio"}
+ *   DELETE /substitutions/{from}/{to}             remove one
+ *   GET    /shopping-list                         shopping list
+ *   POST   /shopping-list[?days=n]                rebuild from low stock and forecast shortfalls
+ *   POST   /shopping-list/items                   add {"name", "amount", "unit"}
+ *   DELETE /shopping-list/items/{name}[?amount=n] remove some or all of a line
+ *   GET    /replication                           role and log offsets
+ *   GET    /metrics                               text snapshot of Metrics (start with -Dmealcraft.metrics=true)
+ *
+ * A server started with --replicate-on streams its changes to followers on
+ * that port (see LogShipper). One started with --follow keeps a read-only
+ * copy of the primary at that port: writes are refused, and reads fail with
+ * 503 if the copy is older than ?maxStaleMs (default 5000).
+ *
+ * A server started with --watch keeps its recipes in step with a directory
+ * of recipe text files (see RecipeWatcher).
+ *
+ * Usage: java FridgeServer [port] [--replicate-on port | --follow port] [--watch dir] [recipe.txt ...]
+ */
+public class FridgeServer {
+    /** default port */
+    private static final int DEFAULT_PORT = 8080;
+    /** most requests the fridge thread takes at once */
+    private static final int MAX_BATCH = 256;
+    /** days used by /expiring when none are given */
+    private static final int DEFAULT_EXPIRING_DAYS = 3;
+    /** days of history returned by /history when no start is given */
+    private static final int DEFAULT_HISTORY_DAYS = 30;
+    /** time from a request arriving to its reply being ready (see Metrics) */
+    private static final Metrics.Timer REQUEST_TIMER = Metrics.timer("server.request");
+    /** oldest copy a follower serves when the request does not say */
+    private static final long DEFAULT_MAX_STALE_MILLIS = 5000;
+
+    /** shared fridge, only used on the fridge thread */
+    private Fridge fridge;
+    /** HTTP server */
+    private HttpServer server;
+    /** request handler threads */
+    private ExecutorService handlers;
+    /** requests waiting for the fridge thread */
+    private BlockingQueue<Op> queue;
+    /** thread that owns the fridge */
+    private Thread fridgeThread;
+    /** whether the fridge thread should keep running */
+    private volatile boolean running;
+    /** change log shipped to followers, or null */
+    private FridgeLog changeLog;
+    /** ships the change log, or null */
+    private LogShipper shipper;
+    /** keeps this fridge a copy of a primary, or null */
+    private FridgeFollower follower;
+
+    /**
+     * Creates a server for a fridge on a local port.
+     *
+     * @param fridge fridge to share
+     * @param port port to listen on (0 picks a free port)
+     * @throws IOException if the port cannot be opened
+     */
+    public FridgeServer(Fridge fridge, int port) throws IOException {
+        this.fridge = fridge;
+        queue = new LinkedBlockingQueue<>();
+        handlers = newHandlerExecutor();
+
+        // Only listens on this machine
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/inventory", ex -> handle(ex, this::inventory));
+        server.createContext("/expiring", ex -> handle(ex, this::expiring));
+        server.createContext("/low-stock", ex -> handle(ex, this::lowStock));
+        server.createContext("/history", ex -> handle(ex, this::history));
+        server.createContext("/recipes", ex -> handle(ex, this::recipes));
+        server.createContext("/production", ex -> handle(ex, this::production));
+        server.createContext("/tags", ex -> handle(ex, this::tags));
+        server.createContext("/substitutions", ex -> handle(ex, this::substitutions));
+        server.createContext("/shopping-list", ex -> handle(ex, this::shoppingList));
+        server.createContext("/replication", ex -> handle(ex, this::replication));
+        server.createContext("/metrics", ex -> handle(ex, this::metrics));
+        Metrics.gauge("server.queue", queue::size);
+    }
+
+    /**
+     * Makes this server a primary that streams its changes to followers.
+     * Must be called before start().
+     *
+     * @param port port followers connect to (0 picks a free port)
+     * @return the shipper
+     * @throws IOException if the port cannot be opened
+     */
+    public LogShipper replicateOn(int port) throws IOException {
+        changeLog = new FridgeLog();
+        fridge.setChangeLog(changeLog::append);
+        shipper = new LogShipper(fridge, changeLog, this::onFridgeThread, port);
+        return shipper;
+    }
+
+    /**
+     * Makes this server a read-only copy of a primary on this machine.
+     * Must be called before start().
+     *
+     * @param port the primary's replication port
+     * @return the follower
+     */
+    public FridgeFollower follow(int port) {
+        follower = new FridgeFollower(fridge, port, this::onFridgeThread);
+        return follower;
+    }
+
+    /**
+     * Queues work for the fridge thread without waiting for it.
+     */
+    private void onFridgeThread(Runnable work) {
+        queue.add(new Op(null, () -> {
+            work.run();
+            return "";
+        }));
+    }
+
+    /**
+     * Starts the fridge thread and begins accepting requests.
+     */
+    public void start() {
+        running = true;
+        fridgeThread = new Thread(this::runFridge, "mealcraft-fridge");
+        fridgeThread.setDaemon(true);
+        fridgeThread.start();
+        if (shipper != null) {
+            shipper.start();
+        }
+        if (follower != null) {
+            follower.start();
+        }
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and shuts down the worker threads.
+     */
+    public void stop() {
+        server.stop(0);
+        if (shipper != null) {
+            shipper.stop();
+        }
+        if (follower != null) {
+            follower.stop();
+        }
+        running = false;
+        fridgeThread.interrupt();
+        handlers.shutdownNow();
+    }
+
+    /** @return port the server listens on */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Runs the server until the process is stopped.
+     *
+     * @param args optional port followed by recipe text files to load
+     */
+    public static void main(String[] args) throws Exception {
+        // Sends small replies right away instead of waiting on Nagle's algorithm
+        // (must be set before the first server is created, and applies to every one)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        int port = DEFAULT_PORT;
+        int first = 0;
+        if (args.length > 0 && args[0].matches("\\d+")) {
+            port = Integer.parseInt(args[0]);
+            first = 1;
+        }
+        String role = null;
+        int rolePort = 0;
+        if (args.length > first + 1 && (args[first].equals("--replicate-on") || args[first].equals("--follow"))) {
+            role = args[first];
+            rolePort = Integer.parseInt(args[first + 1]);
+            first += 2;
+        }
+        String watchDir = null;
+        if (args.length > first + 1 && args[first].equals("--watch")) {
+            watchDir = args[first + 1];
+            first += 2;
+            if ("--follow".equals(role)) {
+                throw new IllegalArgumentException("A follower's recipes come from its primary; --watch cannot be used with --follow");
+            }
+        }
+
+        Fridge fridge = new Fridge();
+        for (int i = first; i < args.length; i++) {
+            File file = new File(args[i]);
+            String name = file.getName().replaceFirst("\\.txt$", "");
+            Recipe recipe = Recipe.headerFromTxtFile(name, file, "fooditem-images/default_recipe.png", fridge);
+            Recipe same = fridge.findDuplicate(recipe);
+            if (same != null) {
+                System.out.println("Skipping " + file + ": same recipe as " + same.getName());
+                continue;
+            }
+            fridge.addRecipe(recipe);
+        }
+
+        FridgeServer s = new FridgeServer(fridge, port);
+        if ("--replicate-on".equals(role)) {
+            System.out.println("Shipping changes to followers on port " + s.replicateOn(rolePort).getPort());
+        }
+        else if ("--follow".equals(role)) {
+            s.follow(rolePort);
+            System.out.println("Following the primary on port " + rolePort);
+        }
+        s.start();
+        if (watchDir != null) {
+            new RecipeWatcher(fridge, Paths.get(watchDir), s::onFridgeThread).start();
+            System.out.println("Watching " + watchDir + " for recipes");
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(s::stop));
+        System.out.println("MealCraft fridge server listening on http://localhost:" + s.getPort());
+    }
+
+    // Fridge thread
+    /**
+     * Runs waiting requests against the fridge in batches, in arrival order.
+     */
+    private void runFridge() {
+        List<Op> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+
+            // Reads with the same key and no write between them share one answer
+            Map<String, String> answered = new HashMap<>();
+            for (Op op : batch) {
+                if (op.readKey != null && answered.containsKey(op.readKey)) {
+                    op.result.complete(answered.get(op.readKey));
+                    continue;
+                }
+                try {
+                    String body = op.work.call();
+                    if (op.readKey != null) {
+                        answered.put(op.readKey, body);
+                    }
+                    else {
+                        answered.clear();
+                    }
+                    op.result.complete(body);
+                } catch (Throwable ex) {
+                    // Even an Error only fails its own request; the thread must keep
+                    // serving, or every later request would wait forever
+                    if (op.readKey == null) {
+                        answered.clear();
+                    }
+                    op.result.completeExceptionally(ex);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Runs a read-only query on the fridge thread.
+     *
+     * @param key identifies the query and its parameters
+     * @param work query that returns a JSON body
+     * @return JSON body
+     */
+    private String read(String key, Callable<String> work) throws Exception {
+        return await(new Op(key, work));
+    }
+
+    /**
+     * Runs a change on the fridge thread.
+     *
+     * @param work change that returns a JSON body
+     * @return JSON body
+     */
+    private String write(Callable<String> work) throws Exception {
+        return await(new Op(null, work));
+    }
+
+    /**
+     * Queues an operation and waits for its result.
+     */
+    private String await(Op op) throws Exception {
+        queue.put(op);
+        try {
+            return op.result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Routes
+    /**
+     * Handles /inventory.
+     */
+    private Reply inventory(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        if (rest.isEmpty()) {
+            if (method.equals("GET")) {
+                InventoryQuery q = parseInventoryQuery(query);
+                return Reply.ok(read("inventory " + new TreeMap<>(query), () -> itemsJson(fridge.query(q))));
+            }
+            if (method.equals("POST")) {
+                FoodItem food = parseFoodItem(Json.parseObject(readBody(ex)));
+                return new Reply(201, write(() -> {
+                    fridge.addFood(food);
+                    return itemJson(fridge.getFoodItem(food.getName()));
+                }));
+            }
+            throw new ApiException(405, "Use GET or POST");
+        }
+
+        String name = rest;
+        if (method.equals("GET")) {
+            return Reply.ok(read("item " + name.toLowerCase().trim(), () -> itemJson(findItem(name))));
+        }
+        if (method.equals("PUT")) {
+            Map<String, String> fields = Json.parseObject(readBody(ex));
+            Double qty = fields.get("quantity") == null ? null : parseAmount(fields.get("quantity"));
+            Category cat = fields.get("category") == null ? null : parseCategory(fields.get("category"));
+            LocalDate exp = fields.get("expires") == null ? null : parseDate(fields.get("expires"));
+            return Reply.ok(write(() -> {
+                FoodItem item = findItem(name);
+                // If quantity is zero, removes the item like the edit dialog does; as a
+                // correction, not consumption (DELETE records that)
+                if (qty != null && qty == 0) {
+                    fridge.setQuantity(name, 0);
+                    return "{\"removed\":" + Json.quote(item.getName()) + "}";
+                }
+                if (qty != null && !fridge.setQuantity(name, qty)) {
+                    throw new ApiException(400, "Invalid quantity " + Json.number(qty));
+                }
+                if (cat != null) {
+                    fridge.setCategory(name, cat);
+                }
+                if (exp != null) {
+                    fridge.setExpirationDate(name, exp);
+                }
+                return itemJson(item);
+            }));
+        }
+        if (method.equals("DELETE")) {
+            Double amount = query.get("amount") == null ? null : parseAmount(query.get("amount"));
+            boolean waste = Boolean.parseBoolean(query.get("waste"));
+            return Reply.ok(write(() -> {
+                FoodItem item = findItem(name);
+                double amt = amount == null ? item.getQuantity() : amount;
+                boolean removed = waste ? fridge.discardFood(name, amt) : fridge.removeFood(name, amt);
+                if (!removed) {
+                    throw new ApiException(400, "Cannot remove " + Json.number(amt) + " of " + item.getName());
+                }
+                FoodItem left = fridge.getFoodItem(name);
+                if (left == null) {
+                    return "{\"removed\":" + Json.quote(item.getName()) + "}";
+                }
+                return itemJson(left);
+            }));
+        }
+        throw new ApiException(405, "Use GET, PUT or DELETE");
+    }
+
+    /**
+     * Handles /expiring.
+     */
+    private Reply expiring(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        requireGet(method, rest);
+        int days = query.get("days") == null ? DEFAULT_EXPIRING_DAYS : parseInt(query.get("days"));
+        Category cat = query.get("category") == null ? null : parseCategory(query.get("category"));
+        return Reply.ok(read("expiring " + days + " " + cat, () -> {
+            if (cat != null) {
+                return itemsJson(fridge.getItemsExpiringWithin(cat, days));
+            }
+            return itemsJson(fridge.getItemsExpiringWithin(days));
+        }));
+    }
+
+    /**
+     * Handles /low-stock.
+     */
+    private Reply lowStock(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        requireGet(method, rest);
+        return Reply.ok(read("low-stock", () -> itemsJson(fridge.getLowStockItems())));
+    }
+
+    /**
+     * Handles /history, answered from the history's period totals.
+     */
+    private Reply history(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        requireGet(method, rest);
+        String item = query.get("item");
+        Category cat = query.get("category") == null ? null : parseCategory(query.get("category"));
+        if ((item == null) == (cat == null)) {
+            throw new ApiException(400, "Give either item or category");
+        }
+        ConsumptionHistory.Granularity by;
+        try {
+            by = ConsumptionHistory.Granularity.valueOf(query.getOrDefault("by", "day").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "by must be day, week or month");
+        }
+        LocalDate to = query.get("to") == null ? LocalDate.now() : parseDate(query.get("to"));
+        LocalDate from = query.get("from") == null ? to.minusDays(DEFAULT_HISTORY_DAYS - 1) : parseDate(query.get("from"));
+
+        return Reply.ok(read("history " + item + " " + cat + " " + by + " " + from + " " + to, () -> {
+            ConsumptionHistory h = fridge.getHistory();
+            List<ConsumptionHistory.Bucket> buckets = item != null ? h.getTotals(item, by, from, to) : h.getTotals(cat, by, from, to);
+            StringBuilder sb = new StringBuilder("[");
+            for (ConsumptionHistory.Bucket b : buckets) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append("{\"start\":").append(Json.quote(b.getStart().toString()))
+                  .append(",\"consumed\":").append(Json.number(b.getConsumed()))
+                  .append(",\"wasted\":").append(Json.number(b.getWasted()))
+                  .append('}');
+            }
+            return sb.append(']').toString();
+        }));
+    }
+
+    /**
+     * Handles /metrics. Answered on the request thread, so it still works when the fridge thread is busy.
+     */
+    private Reply metrics(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        requireGet(method, rest);
+        Reply reply = Reply.ok(Metrics.snapshot());
+        reply.contentType = "text/plain; charset=utf-8";
+        return reply;
+    }
+
+    /**
+     * Handles /replication.
+     */
+    private Reply replication(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        requireGet(method, rest);
+        if (follower != null) {
+            long stale = follower.getStalenessMillis();
+            return Reply.ok("{\"role\":\"follower\",\"appliedOffset\":" + follower.getAppliedOffset()
+                + ",\"primaryOffset\":" + follower.getPrimaryOffset()
+                + ",\"staleMs\":" + (stale == Long.MAX_VALUE ? "null" : String.valueOf(stale)) + "}");
+        }
+        if (changeLog != null) {
+            return Reply.ok("{\"role\":\"primary\",\"endOffset\":" + changeLog.getEndOffset()
+                + ",\"startOffset\":" + changeLog.getStartOffset()
+                + ",\"port\":" + shipper.getPort() + "}");
+        }
+        return Reply.ok("{\"role\":\"standalone\"}");
+    }
+
+    /**
+     * Refuses writes on a follower, and reads when its copy is too old.
+     */
+    private void checkFollowerRead(String method, Map<String, String> query) {
+        if (!method.equals("GET")) {
+            throw new ApiException(405, "This server is a read-only copy");
+        }
+        long maxStale = query.get("maxStaleMs") == null ? DEFAULT_MAX_STALE_MILLIS : parseInt(query.get("maxStaleMs"));
+        try {
+            follower.checkFresh(maxStale);
+        } catch (IllegalStateException e) {
+            throw new ApiException(503, e.getMessage());
+        }
+    }
+
+    /**
+     * Handles /recipes, ranking recipes the same ways the recipe page sorts them.
+     */
+    private Reply recipes(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        requireGet(method, rest);
+        String sort = query.getOrDefault("sort", "availability").toLowerCase();
+        boolean cookable = Boolean.parseBoolean(query.get("cookable"));
+        long avoided = query.get("diet") == null ? DietTag.NONE : parseDiet(query.get("diet"));
+        return Reply.ok(read("recipes " + sort + " " + cookable + " " + avoided, () -> {
+            List<Recipe> ranked = new ArrayList<>(cookable ? fridge.getCookableRecipes() : fridge.getRecipes());
+            ranked.removeIf(r -> !r.suits(avoided));
+            if (sort.equals("az")) {
+                RecipeSorts.sortAZ(ranked);
+            }
+            else if (sort.equals("expiring")) {
+                RecipeSorts.sortByExpiringIngredients(ranked, fridge);
+            }
+            else if (sort.equals("servings")) {
+                RecipeSorts.sortByServings(ranked, fridge);
+            }
+            else {
+                RecipeSorts.sortByIngredientAvailability(ranked, fridge);
+            }
+
+            StringBuilder sb = new StringBuilder("[");
+            for (Recipe r : ranked) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                long days = r.getEarliestExpirationDays(fridge);
+                sb.append("{\"name\":").append(Json.quote(r.getName()))
+                  .append(",\"canCook\":").append(r.canCook(fridge))
+                  .append(",\"servings\":").append(servingsJson(fridge.getMaxServings(r)))
+                  .append(",\"oneIngredientAway\":").append(fridge.getOneIngredientAway().contains(r))
+                  .append(",\"missing\":").append(Json.number(r.getMissingIngredients(fridge)))
+                  .append(",\"earliestExpirationDays\":").append(days == Long.MAX_VALUE ? "null" : String.valueOf(days))
+                  .append(",\"ingredients\":").append(r.getIngredients().size())
+                  .append(",\"tags\":").append(Json.quote(DietTag.format(r.getDietTags())))
+                  .append(",\"unknownTags\":").append((r.getDietTags() & DietTag.UNKNOWN) != 0)
+                  .append('}');
+            }
+            return sb.append(']').toString();
+        }));
+    }
+
+    /**
+     * Handles /production, breaking a recipe's sub-recipes down into raw ingredients.
+     */
+    private Reply production(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        requireGet(method, rest);
+        String name = query.get("recipe");
+        if (name == null || name.isBlank()) {
+            throw new ApiException(400, "recipe is required");
+        }
+        int batches = query.get("batches") == null ? 1 : parseInt(query.get("batches"));
+        if (batches < 1) {
+            throw new ApiException(400, "batches must be at least 1");
+        }
+        return Reply.ok(read("production " + name.toLowerCase().trim() + " " + batches, () -> {
+            Recipe recipe = findRecipe(name);
+            BillOfMaterials bom = new BillOfMaterials();
+            Map<String, Long> need = bom.explode(recipe, batches);
+            return "{\"recipe\":" + Json.quote(recipe.getName())
+                + ",\"batches\":" + batches
+                + ",\"need\":" + amountsJson(need, bom)
+                + ",\"short\":" + amountsJson(BillOfMaterials.shortfall(need, fridge), bom)
+                + "}";
+        }));
+    }
+
+    /**
+     * Handles /tags.
+     */
+    private Reply tags(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        if (rest.isEmpty()) {
+            throw new ApiException(404, "Give an ingredient, e.g. /tags/milk");
+        }
+        String name = rest.toLowerCase().trim();
+        if (method.equals("GET")) {
+            return Reply.ok(read("tags " + name, () -> tagsJson(name)));
+        }
+        if (method.equals("PUT")) {
+            String tags = Json.parseObject(readBody(ex)).get("tags");
+            if (tags == null) {
+                throw new ApiException(400, "Missing tags");
+            }
+            long mask = parseDiet(tags);
+            return Reply.ok(write(() -> {
+                fridge.setIngredientTags(name, mask);
+                return tagsJson(name);
+            }));
+        }
+        throw new ApiException(405, "Use GET or PUT");
+    }
+
+    /**
+     * Handles /substitutions.
+     */
+    private Reply substitutions(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        if (rest.isEmpty() && method.equals("GET")) {
+            return Reply.ok(read("substitutions", this::substitutionsJson));
+        }
+        if (rest.isEmpty() && method.equals("POST")) {
+            Map<String, String> fields = Json.parseObject(readBody(ex));
+            String from = fields.get("from");
+            String to = fields.get("to");
+            if (from == null || from.isBlank() || to == null || to.isBlank()) {
+                throw new ApiException(400, "from and to are required");
+            }
+            double ratio = fields.get("ratio") == null ? 1 : parseAmount(fields.get("ratio"));
+            if (!(ratio > 0) || from.trim().equalsIgnoreCase(to.trim())) {
+                throw new ApiException(400, "A substitution needs two ingredients and a positive ratio");
+            }
+            return new Reply(201, write(() -> {
+                fridge.addSubstitution(from, to, ratio);
+                return substitutionsJson();
+            }));
+        }
+        if (method.equals("DELETE") && rest.indexOf('/') > 0) {
+            String from = rest.substring(0, rest.indexOf('/'));
+            String to = rest.substring(rest.indexOf('/') + 1);
+            return Reply.ok(write(() -> {
+                if (!fridge.removeSubstitution(from, to)) {
+                    throw new ApiException(404, "No such substitution");
+                }
+                return substitutionsJson();
+            }));
+        }
+        throw new ApiException(404, "Unknown substitutions path");
+    }
+
+    /** @return JSON for every ingredient's substitutes, chained ones included */
+    private String substitutionsJson() {
+        Substitutions subs = fridge.getSubstitutions();
+        StringBuilder sb = new StringBuilder("[");
+        for (String from : subs.getDirect().keySet()) {
+            for (Substitutions.Substitute s : subs.of(from)) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append("{\"from\":").append(Json.quote(from))
+                  .append(",\"to\":").append(Json.quote(s.getName()))
+                  .append(",\"ratio\":").append(Json.number(Quantity.toDouble(s.getRatio())))
+                  .append(",\"steps\":").append(s.getSteps())
+                  .append('}');
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Reads an inventory query from request parameters.
+     */
+    private static InventoryQuery parseInventoryQuery(Map<String, String> query) {
+        InventoryQuery q = new InventoryQuery();
+        String sort = query.getOrDefault("sort", "az");
+        switch (sort.toLowerCase()) {
+            case "az": q.sortBy(InventoryQuery.Sort.NAME); break;
+            case "expiration": q.sortBy(InventoryQuery.Sort.EXPIRATION); break;
+            case "quantity": q.sortBy(InventoryQuery.Sort.QUANTITY); break;
+            default: throw new ApiException(400, "Unknown sort " + sort);
+        }
+        if (query.get("category") != null) {
+            for (String c : query.get("category").split(",")) {
+                q.inCategory(parseCategory(c));
+            }
+        }
+        if (query.get("prefix") != null) {
+            q.nameStartsWith(query.get("prefix"));
+        }
+        if (query.get("from") != null || query.get("to") != null) {
+            q.expiringBetween(query.get("from") == null ? null : parseDate(query.get("from")),
+                query.get("to") == null ? null : parseDate(query.get("to")));
+        }
+        if (query.get("min") != null) {
+            q.minQuantity(parseAmount(query.get("min")));
+        }
+        if (query.get("max") != null) {
+            q.maxQuantity(parseAmount(query.get("max")));
+        }
+        if (query.get("limit") != null) {
+            q.limit(parseInt(query.get("limit")));
+        }
+        return q;
+    }
+
+    /** @return servings as JSON, null when a recipe needs nothing */
+    private static String servingsJson(int servings) {
+        return servings == Integer.MAX_VALUE ? "null" : Integer.toString(servings);
+    }
+
+    /** @return JSON for an ingredient's tags */
+    private String tagsJson(String name) {
+        long tags = fridge.getIngredientTags(name);
+        return "{\"name\":" + Json.quote(name) + ",\"tags\":" + Json.quote(DietTag.format(tags))
+            + ",\"unknownTags\":" + ((tags & DietTag.UNKNOWN) != 0) + "}";
+    }
+
+    /**
+     * Handles /shopping-list.
+     */
+    private Reply shoppingList(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception {
+        if (rest.isEmpty()) {
+            if (method.equals("GET")) {
+                return Reply.ok(read("shopping-list", this::shoppingListJson));
+            }
+            if (method.equals("POST")) {
+                int days = query.get("days") == null ? 0 : parseInt(query.get("days"));
+                return Reply.ok(write(() -> {
+                    fridge.createShoppingList(days);
+                    return shoppingListJson();
+                }));
+            }
+            throw new ApiException(405, "Use GET or POST");
+        }
+
+        if (rest.equals("items") && method.equals("POST")) {
+            Map<String, String> fields = Json.parseObject(readBody(ex));
+            String name = fields.get("name");
+            if (name == null || name.isBlank()) {
+                throw new ApiException(400, "name is required");
+            }
+            double amount = fields.get("amount") == null ? 1 : parseAmount(fields.get("amount"));
+            String unit = fields.get("unit");
+            return new Reply(201, write(() -> {
+                fridge.addShoppingListItem(name, amount, unit);
+                return shoppingListJson();
+            }));
+        }
+
+        if (rest.startsWith("items/") && method.equals("DELETE")) {
+            String name = rest.substring("items/".length());
+            Double amount = query.get("amount") == null ? null : parseAmount(query.get("amount"));
+            return Reply.ok(write(() -> {
+                fridge.removeShoppingListItem(name, amount == null ? Double.MAX_VALUE : amount);
+                return shoppingListJson();
+            }));
+        }
+        throw new ApiException(404, "Unknown shopping list path");
+    }
+
+    // JSON output
+    /** @return a food item as a JSON object */
+    private static String itemJson(FoodItem item) {
+        return "{\"name\":" + Json.quote(item.getName())
+            + ",\"quantity\":" + Json.number(item.getQuantity())
+            + ",\"unit\":" + Json.quote(item.getUnit())
+            + ",\"category\":" + Json.quote(String.valueOf(item.getCategory()))
+            + ",\"expires\":" + Json.quote(String.valueOf(item.getExpirationDate()))
+            + ",\"daysLeft\":" + item.daysUntilExpiration(LocalDate.now())
+            + ",\"image\":" + Json.quote(item.getImgFilePath())
+            + "}";
+    }
+
+    /** @return food items as a JSON array */
+    private static String itemsJson(List<FoodItem> items) {
+        StringBuilder sb = new StringBuilder("[");
+        for (FoodItem item : items) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(itemJson(item));
+        }
+        return sb.append(']').toString();
+    }
+
+    /** @return amounts in thousandths by ingredient as a JSON array, in the map's order */
+    private static String amountsJson(Map<String, Long> amounts, BillOfMaterials bom) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Map.Entry<String, Long> e : amounts.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            String unit = bom.getUnit(e.getKey());
+            sb.append("{\"name\":").append(Json.quote(e.getKey()))
+              .append(",\"amount\":").append(Json.number(Quantity.toDouble(e.getValue())))
+              .append(",\"unit\":").append(Json.quote(unit == null ? "" : unit))
+              .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    /** @return the shopping list as a JSON array sorted by name */
+    private String shoppingListJson() {
+        List<IngredientLine> lines = new ArrayList<>(fridge.getShoppingListItems());
+        lines.sort(Comparator.comparing(IngredientLine::getNormalizedName));
+        StringBuilder sb = new StringBuilder("[");
+        for (IngredientLine line : lines) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":").append(Json.quote(line.getNormalizedName()))
+              .append(",\"amount\":").append(Json.number(line.getAmount()))
+              .append(",\"unit\":").append(Json.quote(line.getUnit()))
+              .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    // Input parsing
+    /**
+     * Builds a FoodItem from a POST body, using the same defaults as the add item dialog.
+     */
+    private static FoodItem parseFoodItem(Map<String, String> fields) {
+        String name = fields.get("name");
+        if (name == null || name.isBlank()) {
+            throw new ApiException(400, "name is required");
+        }
+        double qty = fields.get("quantity") == null ? 1 : parseAmount(fields.get("quantity"));
+        if (qty <= 0) {
+            throw new ApiException(400, "quantity must be positive");
+        }
+        String unit = fields.get("unit") == null ? "x" : fields.get("unit");
+        Category cat = fields.get("category") == null ? Category.OTHER : parseCategory(fields.get("category"));
+        LocalDate exp = fields.get("expires") == null ? LocalDate.now().plusDays(7) : parseDate(fields.get("expires"));
+        String img = fields.get("image");
+        if (img == null || img.isBlank()) {
+            img = "fooditem-images/" + name.trim().toLowerCase().replaceAll("\\s+", "") + ".png";
+        }
+        return new FoodItem(name, qty, unit, cat, exp, img);
+    }
+
+    /** @return the named item, or a 404 error */
+    private FoodItem findItem(String name) {
+        FoodItem item = fridge.getFoodItem(name);
+        if (item == null) {
+            throw new ApiException(404, "No item named " + name);
+        }
+        return item;
+    }
+
+    private Recipe findRecipe(String name) {
+        for (Recipe r : fridge.getRecipes()) {
+            if (r.getName().equalsIgnoreCase(name.trim())) {
+                return r;
+            }
+        }
+        throw new ApiException(404, "No recipe named " + name);
+    }
+
+    private static double parseAmount(String s) {
+        try {
+            double d = Double.parseDouble(s);
+            if (d < 0 || Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new ApiException(400, "Amount must be a non-negative number: " + s);
+            }
+            return d;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Not a number: " + s);
+        }
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Not a whole number: " + s);
+        }
+    }
+
+    private static Category parseCategory(String s) {
+        try {
+            return Category.valueOf(s.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Unknown category: " + s);
+        }
+    }
+
+    private static long parseDiet(String s) {
+        try {
+            return DietTag.parse(s);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Unknown diet tag in: " + s);
+        }
+    }
+
+    private static LocalDate parseDate(String s) {
+        try {
+            return LocalDate.parse(s.trim());
+        } catch (Exception e) {
+            throw new ApiException(400, "Dates must look like 2025-01-31: " + s);
+        }
+    }
+
+    private static void requireGet(String method, String rest) {
+        if (!rest.isEmpty()) {
+            throw new ApiException(404, "Unknown path");
+        }
+        if (!method.equals("GET")) {
+            throw new ApiException(405, "Use GET");
+        }
+    }
+
+    // HTTP plumbing
+    /**
+     * Runs a route and sends its reply, turning errors into JSON error replies.
+     */
+    private void handle(HttpExchange ex, Route route) throws IOException {
+        long t = Metrics.start();
+        Reply reply;
+        try {
+            String path = ex.getRequestURI().getPath();
+            String rest = path.substring(ex.getHttpContext().getPath().length());
+            rest = rest.replaceAll("^/+|/+$", "");
+            Map<String, String> query = parseQuery(ex.getRequestURI().getRawQuery());
+            // If this is a copy, only fresh enough reads are served
+            String context = ex.getHttpContext().getPath();
+            if (follower != null && !context.equals("/replication") && !context.equals("/metrics")) {
+                checkFollowerRead(ex.getRequestMethod(), query);
+            }
+            reply = route.handle(ex.getRequestMethod(), rest, query, ex);
+        } catch (ApiException e) {
+            reply = new Reply(e.status, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+        } catch (IllegalArgumentException e) {
+            reply = new Reply(400, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+        } catch (Exception e) {
+            reply = new Reply(500, "{\"error\":" + Json.quote(String.valueOf(e)) + "}");
+        }
+
+        REQUEST_TIMER.stop(t);
+        byte[] bytes = reply.body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", reply.contentType);
+        ex.sendResponseHeaders(reply.status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /** @return query parameters by name */
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /** @return the request body as text */
+    private static String readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Uses a virtual thread per request when the JDK supports it (JDK 21+),
+     * and a fixed pool otherwise.
+     */
+    private static ExecutorService newHandlerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+        }
+    }
+
+    /**
+     * A request handler for one path prefix.
+     */
+    private interface Route {
+        Reply handle(String method, String rest, Map<String, String> query, HttpExchange ex) throws Exception;
+    }
+
+    /**
+     * A queued fridge operation.
+     */
+    private static class Op {
+        /** key shared by identical reads, or null for writes */
+        private String readKey;
+        /** work to run on the fridge thread */
+        private Callable<String> work;
+        /** result handed back to the request thread */
+        private CompletableFuture<String> result;
+
+        Op(String readKey, Callable<String> work) {
+            this.readKey = readKey;
+            this.work = work;
+            result = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * An HTTP status and JSON body.
+     */
+    private static class Reply {
+        private int status;
+        private String body;
+        private String contentType = "application/json; charset=utf-8";
+
+        Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Reply ok(String body) {
+            return new Reply(200, body);
+        }
+    }
+
+    /**
+     * An error with the HTTP status to reply with.
+     */
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
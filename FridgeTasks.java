@@ -0,0 +1,145 @@
+import javafx.application.Platform;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs fridge queries and file I/O off the JavaFX application thread.
+ * All work runs in order on one background thread, so the Fridge is only
+ * ever touched by a single thread. Results are handed back to the UI
+ * with Platform.runLater.
+ */
+public class FridgeTasks {
+    /** background worker */
+    private ExecutorService worker;
+    /** newest request number per key */
+    private Map<String, Long> latest;
+    /** unfinished task per key */
+    private Map<String, Future<?>> pending;
+    /** newest coalesced request per key that has not started yet */
+    private Map<String, Runnable> waiting;
+    /** request counter */
+    private AtomicLong counter;
+
+    /**
+     * Creates the task layer with its background thread.
+     */
+    public FridgeTasks() {
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "mealcraft-worker");
+            // Does not keep the JVM alive after the window closes
+            t.setDaemon(true);
+            return t;
+        });
+        latest = new ConcurrentHashMap<>();
+        pending = new ConcurrentHashMap<>();
+        waiting = new ConcurrentHashMap<>();
+        counter = new AtomicLong();
+    }
+
+    /**
+     * Runs work in the background and passes the result to onDone on the FX thread.
+     *
+     * @param work background work
+     * @param onDone called with the result
+     * @param onError called if the work throws
+     */
+    public <T> void submit(Callable<T> work, Consumer<T> onDone, Consumer<Exception> onError) {
+        worker.submit(() -> {
+            try {
+                T result = work.call();
+                Platform.runLater(() -> onDone.accept(result));
+            } catch (Exception ex) {
+                Platform.runLater(() -> onError.accept(ex));
+            }
+        });
+    }
+
+    /**
+     * Runs work for a key, cancelling any earlier request for the same key.
+     * Only the newest request's result is ever delivered.
+     *
+     * @param key request key (ex. "recipe-sort")
+     * @param work background work
+     * @param onDone called with the result of the newest request
+     * @param onError called if the newest request throws
+     */
+    public <T> void submitLatest(String key, Callable<T> work, Consumer<T> onDone, Consumer<Exception> onError) {
+        long id = counter.incrementAndGet();
+        latest.put(key, id);
+
+        // Cancels the stale request (interrupts it if already running)
+        Future<?> old = pending.remove(key);
+        if (old != null) {
+            old.cancel(true);
+        }
+
+        Future<?> f = worker.submit(() -> {
+            try {
+                T result = work.call();
+                Platform.runLater(() -> {
+                    // Drops results that were overtaken by a newer request
+                    if (latest.get(key) == id) {
+                        onDone.accept(result);
+                    }
+                });
+            } catch (CancellationException | InterruptedException ex) {
+                // Stale request, nothing to deliver
+            } catch (Exception ex) {
+                Platform.runLater(() -> {
+                    // A stale request's failure is as stale as its result
+                    if (latest.get(key) == id) {
+                        onError.accept(ex);
+                    }
+                });
+            }
+        });
+        pending.put(key, f);
+    }
+
+    /**
+     * Runs work for a key, merging it with a request for the same key that is
+     * still waiting. Rapid requests become one run of the newest request, so
+     * it sees the newest state and the newest parameters.
+     *
+     * @param key request key (ex. "refresh")
+     * @param work background work
+     * @param onDone called with the result
+     * @param onError called if the work throws
+     */
+    public <T> void coalesce(String key, Callable<T> work, Consumer<T> onDone, Consumer<Exception> onError) {
+        Runnable run = () -> {
+            try {
+                T result = work.call();
+                Platform.runLater(() -> onDone.accept(result));
+            } catch (Exception ex) {
+                Platform.runLater(() -> onError.accept(ex));
+            }
+        };
+        // If one is already waiting, its run does this request instead
+        if (waiting.put(key, run) != null) {
+            return;
+        }
+
+        worker.submit(() -> {
+            // Requests made from now on need a new run
+            Runnable newest = waiting.remove(key);
+            if (newest != null) {
+                newest.run();
+            }
+        });
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+}
@@ -1,25 +1,65 @@
+import java.util.Objects;
+
 /**
  * Represents a single ingredient in a recipe.
  * 
  * Contributed by: Annika Hambali
  */
 public class IngredientLine {
+    /** one shared instance per distinct line in use, see canonical() */
+    private static final WeakInterner<IngredientLine> pool = new WeakInterner<>();
     /** normalized name */
     private String normalizedName;
-    /** required amount */
-    private double amount;
+    /** required amount, in thousandths (see Quantity) */
+    private long amount;
     /** unit */
     private String unit;
+    /** recipe this line is made from, or null for a raw ingredient */
+    private Recipe subRecipe;
     
     /**
      * Creates an ingredient line.
      */
     public IngredientLine(String itemName, double itemAmount, String itemUnit) {
         normalizedName = itemName.toLowerCase().trim();
-        amount = itemAmount;
+        amount = Quantity.fromDouble(itemAmount);
         unit = itemUnit;
     }
     
+    /**
+     * Creates an ingredient line with an amount in thousandths.
+     * 
+     * @param itemName ingredient name
+     * @param scaledAmount amount in thousandths
+     * @param itemUnit unit
+     * @return the ingredient line
+     */
+    public static IngredientLine ofScaled(String itemName, long scaledAmount, String itemUnit) {
+        IngredientLine line = new IngredientLine(itemName, 0, itemUnit);
+        line.amount = scaledAmount;
+        return line;
+    }
+    
+    /**
+     * Creates a line that uses batches of another recipe, such as a stock or a
+     * dough. A fridge that holds an item with the recipe's name can use that;
+     * BillOfMaterials breaks the line down into the sub-recipe's raw ingredients.
+     * 
+     * @param recipe the sub-recipe
+     * @param batches batches of it needed
+     * @return the ingredient line
+     */
+    public static IngredientLine ofRecipe(Recipe recipe, double batches) {
+        IngredientLine line = new IngredientLine(recipe.getName(), batches, "batch");
+        line.subRecipe = recipe;
+        return line;
+    }
+    
+    /** @return recipe this line is made from, or null for a raw ingredient */
+    public Recipe getSubRecipe() {
+        return subRecipe;
+    }
+    
     /** @return normalized name */
     public String getNormalizedName() {
         return normalizedName;
@@ -27,6 +67,11 @@ public class IngredientLine {
     
     /** @return amount */
     public double getAmount() {
+        return Quantity.toDouble(amount);
+    }
+    
+    /** @return amount in thousandths */
+    public long getScaledAmount() {
         return amount;
     }
     
@@ -34,4 +79,44 @@ public class IngredientLine {
     public String getUnit() {
         return unit;
     }
+
+    /**
+     * Returns the shared instance equal to a line, so recipes that use the same
+     * line, and lines with the same name or unit, do not each keep a copy.
+     * Lines are never changed after creation, which makes sharing safe. A
+     * line is only shared while some recipe still uses it.
+     *
+     * @param line ingredient line; not changed
+     * @return the shared equal line
+     */
+    public static IngredientLine canonical(IngredientLine line) {
+        IngredientLine shared = pool.get(line);
+        if (shared != null) {
+            return shared;
+        }
+        // Builds the shared one from interned strings rather than changing the caller's line
+        IngredientLine copy = ofScaled(line.normalizedName, line.amount, null);
+        copy.normalizedName = line.normalizedName.intern();
+        copy.unit = line.unit == null ? null : line.unit.intern();
+        copy.subRecipe = line.subRecipe;
+        return pool.intern(copy);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IngredientLine)) {
+            return false;
+        }
+        IngredientLine other = (IngredientLine) o;
+        return amount == other.amount && normalizedName.equals(other.normalizedName)
+            && Objects.equals(unit, other.unit) && subRecipe == other.subRecipe;
+    }
+
+    @Override
+    public int hashCode() {
+        return (normalizedName.hashCode() * 31 + Long.hashCode(amount)) * 31 + Objects.hashCode(unit);
+    }
 }
@@ -0,0 +1,428 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * A question about the fridge's inventory, built from optional parts:
+ * categories, an expiration window, a quantity range, an exact name or a
+ * name prefix, a sort order and a limit. For example, the three dairy items
+ * expiring soonest this week:
+ *
+ *   fridge.query(new InventoryQuery().inCategory(Category.DAIRY_EGGS)
+ *       .expiringWithin(7).sortBy(InventoryQuery.Sort.EXPIRATION).limit(3))
+ *
+ * Fridge.query plans it before running it. The plan reads one of the fridge's
+ * indexes: the name map for an exact name, the category partitions in name
+ * order for a prefix, or their expiration trees for a date window. It picks
+ * whichever covers the fewest items, counting each only as far as the best
+ * so far. If the chosen index already gives the requested order, the plan
+ * stops as soon as it has limit matches. Otherwise it keeps only the best
+ * limit matches while scanning instead of sorting them all. The rest of the
+ * query is checked item by item.
+ */
+public class InventoryQuery {
+    /**
+     * Orders a result can be sorted in; ties go by name.
+     */
+    public enum Sort {
+        /** A-Z */
+        NAME,
+        /** soonest first */
+        EXPIRATION,
+        /** least first */
+        QUANTITY
+    }
+
+    /**
+     * Ways a plan can read the inventory.
+     */
+    public enum Access {
+        /** one item from the name map */
+        NAME_LOOKUP,
+        /** the category partitions, in name order, from the prefix on */
+        NAME_RANGE,
+        /** the categories' expiration trees, in date order, over the window */
+        EXPIRATION_RANGE,
+        /** every item, in no order */
+        FULL_SCAN
+    }
+
+    /** categories to include, or null for all */
+    private EnumSet<Category> categories;
+    /** first expiration date to include, or null */
+    private LocalDate expiresFrom;
+    /** last expiration date to include, or null */
+    private LocalDate expiresTo;
+    /** least quantity to include, in thousandths */
+    private long minQuantity = Long.MIN_VALUE;
+    /** greatest quantity to include, in thousandths */
+    private long maxQuantity = Long.MAX_VALUE;
+    /** normalized name to match exactly, or null */
+    private String name;
+    /** normalized name prefix, or null */
+    private String prefix;
+    /** result order */
+    private Sort sort = Sort.NAME;
+    /** most items to return */
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Includes a category. Several calls include any of them; none includes all.
+     * Items without a category count as OTHER.
+     *
+     * @param category category to include
+     * @return this query
+     */
+    public InventoryQuery inCategory(Category category) {
+        if (categories == null) {
+            categories = EnumSet.noneOf(Category.class);
+        }
+        categories.add(category);
+        return this;
+    }
+
+    /**
+     * Keeps items expiring between two dates (inclusive).
+     *
+     * @param from first date, or null for no start
+     * @param to last date, or null for no end
+     * @return this query
+     */
+    public InventoryQuery expiringBetween(LocalDate from, LocalDate to) {
+        expiresFrom = from;
+        expiresTo = to;
+        return this;
+    }
+
+    /**
+     * Keeps items expiring from today to some days from now (inclusive).
+     *
+     * @param days days from today; negative counts as 0
+     * @return this query
+     */
+    public InventoryQuery expiringWithin(int days) {
+        LocalDate today = LocalDate.now();
+        return expiringBetween(today, today.plusDays(Math.max(0, days)));
+    }
+
+    /**
+     * Keeps items with at least a quantity.
+     *
+     * @param amount least quantity
+     * @return this query
+     */
+    public InventoryQuery minQuantity(double amount) {
+        minQuantity = Quantity.fromDouble(amount);
+        return this;
+    }
+
+    /**
+     * Keeps items with at most a quantity.
+     *
+     * @param amount greatest quantity
+     * @return this query
+     */
+    public InventoryQuery maxQuantity(double amount) {
+        maxQuantity = Quantity.fromDouble(amount);
+        return this;
+    }
+
+    /**
+     * Keeps only the item with a name.
+     *
+     * @param itemName item name, any case
+     * @return this query
+     */
+    public InventoryQuery named(String itemName) {
+        name = itemName.toLowerCase().trim();
+        return this;
+    }
+
+    /**
+     * Keeps items whose names start with some text.
+     *
+     * @param text start of the name, any case
+     * @return this query
+     */
+    public InventoryQuery nameStartsWith(String text) {
+        prefix = text.toLowerCase().trim();
+        return this;
+    }
+
+    /**
+     * Sets the result order; NAME unless set.
+     *
+     * @param order result order
+     * @return this query
+     */
+    public InventoryQuery sortBy(Sort order) {
+        sort = order;
+        return this;
+    }
+
+    /**
+     * Returns at most some items.
+     *
+     * @param max most items, at least 0
+     * @return this query
+     */
+    public InventoryQuery limit(int max) {
+        limit = Math.max(0, max);
+        return this;
+    }
+
+    /**
+     * Checks an item against every part of the query.
+     *
+     * @param item item to check
+     * @return true if it belongs in the result
+     */
+    public boolean matches(FoodItem item) {
+        Category c = item.getCategory() == null ? Category.OTHER : item.getCategory();
+        LocalDate date = item.getExpirationDate();
+        long qty = item.getScaledQuantity();
+        return (categories == null || categories.contains(c))
+            && (expiresFrom == null || date != null && !date.isBefore(expiresFrom))
+            && (expiresTo == null || date != null && !date.isAfter(expiresTo))
+            && qty >= minQuantity && qty <= maxQuantity
+            && (name == null || item.getNormalizedName().equals(name))
+            && (prefix == null || item.getNormalizedName().startsWith(prefix));
+    }
+
+    /**
+     * How a query will be run.
+     */
+    public static class Plan {
+        /** index read */
+        private final Access access;
+        /** items the index is expected to give */
+        private final long estimate;
+        /** whether the index gives the requested order, so the limit ends the scan */
+        private final boolean ordered;
+
+        Plan(Access access, long estimate, boolean ordered) {
+            this.access = access;
+            this.estimate = estimate;
+            this.ordered = ordered;
+        }
+
+        /** @return index read */
+        public Access getAccess() {
+            return access;
+        }
+
+        /** @return items the index is expected to give */
+        public long getEstimate() {
+            return estimate;
+        }
+
+        /** @return true if the index gives the requested order */
+        public boolean isOrdered() {
+            return ordered;
+        }
+
+        @Override
+        public String toString() {
+            return access + " (about " + estimate + " items" + (ordered ? ", in order" : ", then sorted") + ")";
+        }
+    }
+
+    /**
+     * Chooses how to run the query on a fridge.
+     *
+     * @param fridge fridge to ask; must be called on its owner thread
+     * @return the plan
+     */
+    Plan plan(Fridge fridge) {
+        if (name != null) {
+            return new Plan(Access.NAME_LOOKUP, 1, true);
+        }
+        int total = fridge.getItemCount();
+        Plan best = new Plan(Access.FULL_SCAN, total, false);
+        Plan byName = null;
+        Plan byDate = null;
+        if (prefix != null || categories != null || sort == Sort.NAME) {
+            byName = new Plan(Access.NAME_RANGE, count(fridge, Access.NAME_RANGE, best.estimate), sort == Sort.NAME);
+            best = byName.estimate < best.estimate ? byName : best;
+        }
+        if (expiresFrom != null || expiresTo != null || categories != null || sort == Sort.EXPIRATION) {
+            byDate = new Plan(Access.EXPIRATION_RANGE, count(fridge, Access.EXPIRATION_RANGE, best.estimate), sort == Sort.EXPIRATION);
+            best = byDate.estimate < best.estimate ? byDate : best;
+        }
+        Plan inOrder = sort == Sort.NAME ? byName : sort == Sort.EXPIRATION ? byDate : null;
+        // If reading in order and stopping at the limit beats reading the fewest items and sorting
+        if (inOrder != null && inOrder != best && limit < best.estimate) {
+            // Matches are at most best.estimate, so reading in order finds limit of them within this many
+            long breakEven = (long) Math.min(total, (double) best.estimate * best.estimate / Math.max(1, limit));
+            long estimate = count(fridge, inOrder.access, breakEven + 1);
+            if (estimate <= breakEven) {
+                return new Plan(inOrder.access, estimate, true);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs the query on a fridge.
+     *
+     * @param fridge fridge to ask; must be called on its owner thread
+     * @return matching items in the requested order, at most limit of them
+     */
+    List<FoodItem> run(Fridge fridge) {
+        Plan plan = plan(fridge);
+        List<FoodItem> result = new ArrayList<>();
+        if (limit == 0) {
+            return result;
+        }
+        Iterator<FoodItem> it = scan(fridge, plan.access);
+        if (plan.ordered) {
+            while (it.hasNext() && result.size() < limit) {
+                FoodItem item = it.next();
+                if (matches(item)) {
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+        // Keeps the best limit matches, worst on top
+        Comparator<FoodItem> order = order();
+        PriorityQueue<FoodItem> top = new PriorityQueue<>(order.reversed());
+        while (it.hasNext()) {
+            FoodItem item = it.next();
+            if (!matches(item)) {
+                continue;
+            }
+            if (top.size() < limit) {
+                top.add(item);
+            }
+            else if (order.compare(item, top.peek()) < 0) {
+                top.poll();
+                top.add(item);
+            }
+        }
+        result.addAll(top);
+        result.sort(order);
+        return result;
+    }
+
+    /** @return comparator for the requested order */
+    private Comparator<FoodItem> order() {
+        Comparator<FoodItem> byName = Comparator.comparing(FoodItem::getNormalizedName);
+        switch (sort) {
+            case EXPIRATION: return Comparator.comparing(FoodItem::getExpirationDate).thenComparing(byName);
+            case QUANTITY: return Comparator.comparingLong(FoodItem::getScaledQuantity).thenComparing(byName);
+            default: return byName;
+        }
+    }
+
+    /** @return the categories to read */
+    private Collection<Category> partitions() {
+        return categories != null ? categories : Arrays.asList(Category.values());
+    }
+
+    /**
+     * Counts the items an index would give, stopping once the count reaches cap.
+     */
+    private long count(Fridge fridge, Access access, long cap) {
+        long n = 0;
+        for (Category c : partitions()) {
+            if (access == Access.NAME_RANGE) {
+                NavigableMap<String, FoodItem> range = nameRange(fridge, c);
+                // If there is no prefix the size is known without walking
+                if (prefix == null) {
+                    n += range.size();
+                }
+                else {
+                    for (Iterator<String> it = range.keySet().iterator(); it.hasNext() && n < cap; it.next()) {
+                        n++;
+                    }
+                }
+            }
+            else {
+                for (Iterator<List<FoodItem>> it = dateRange(fridge, c).values().iterator(); it.hasNext() && n < cap; ) {
+                    n += it.next().size();
+                }
+            }
+            if (n >= cap) {
+                return cap;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the items an index gives, merged across categories in the index's order.
+     */
+    private Iterator<FoodItem> scan(Fridge fridge, Access access) {
+        if (access == Access.NAME_LOOKUP) {
+            FoodItem item = fridge.getFoodItem(name);
+            return item == null ? Collections.emptyIterator() : Collections.singletonList(item).iterator();
+        }
+        if (access == Access.FULL_SCAN) {
+            return fridge.getAllFoodItems().iterator();
+        }
+        List<Iterator<FoodItem>> parts = new ArrayList<>();
+        for (Category c : partitions()) {
+            if (access == Access.NAME_RANGE) {
+                parts.add(nameRange(fridge, c).values().iterator());
+            }
+            else {
+                parts.add(dateRange(fridge, c).values().stream().flatMap(List::stream).iterator());
+            }
+        }
+        Comparator<FoodItem> byName = Comparator.comparing(FoodItem::getNormalizedName);
+        return merge(parts, access == Access.NAME_RANGE ? byName
+            : Comparator.comparing(FoodItem::getExpirationDate).thenComparing(byName));
+    }
+
+    /** @return a category's items in the prefix's name range */
+    private NavigableMap<String, FoodItem> nameRange(Fridge fridge, Category c) {
+        NavigableMap<String, FoodItem> all = fridge.getNameIndex(c);
+        return prefix == null ? all : all.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+    }
+
+    /** @return a category's date groups in the expiration window */
+    private NavigableMap<LocalDate, List<FoodItem>> dateRange(Fridge fridge, Category c) {
+        NavigableMap<LocalDate, List<FoodItem>> all = fridge.getExpirationIndex(c);
+        if (expiresFrom != null && expiresTo != null) {
+            return expiresFrom.isAfter(expiresTo) ? Collections.emptyNavigableMap()
+                : all.subMap(expiresFrom, true, expiresTo, true);
+        }
+        if (expiresFrom != null) {
+            return all.tailMap(expiresFrom, true);
+        }
+        return expiresTo != null ? all.headMap(expiresTo, true) : all;
+    }
+
+    /**
+     * Merges sorted iterators into one sorted iterator.
+     */
+    private static Iterator<FoodItem> merge(List<Iterator<FoodItem>> parts, Comparator<FoodItem> order) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        // Each entry is the next item of one part and that part
+        PriorityQueue<Map.Entry<FoodItem, Iterator<FoodItem>>> heads =
+            new PriorityQueue<>(Math.max(1, parts.size()), Map.Entry.comparingByKey(order));
+        for (Iterator<FoodItem> it : parts) {
+            if (it.hasNext()) {
+                heads.add(new AbstractMap.SimpleEntry<>(it.next(), it));
+            }
+        }
+        return new Iterator<FoodItem>() {
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            public FoodItem next() {
+                if (heads.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<FoodItem, Iterator<FoodItem>> head = heads.poll();
+                if (head.getValue().hasNext()) {
+                    heads.add(new AbstractMap.SimpleEntry<>(head.getValue().next(), head.getValue()));
+                }
+                return head.getKey();
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal JSON helpers for the fridge server.
+ * Only flat objects are read (string, number, boolean and null values),
+ * which is all the API accepts.
+ */
+public class Json {
+    /**
+     * Quotes and escapes a string as a JSON value.
+     *
+     * @param s text to quote, may be null
+     * @return JSON string literal, or null
+     */
+    public static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    /**
+     * Formats a number, dropping ".0" from whole numbers.
+     *
+     * @param d number
+     * @return JSON number
+     */
+    public static String number(double d) {
+        if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+            return String.valueOf((long) d);
+        }
+        return String.valueOf(d);
+    }
+
+    /**
+     * Reads a flat JSON object into a map of field name to text value.
+     * Numbers and booleans are returned as their text; null becomes a null value.
+     *
+     * @param text JSON object text
+     * @return fields in order
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    public static Map<String, String> parseObject(String text) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        int[] pos = { 0 };
+        skipSpace(text, pos);
+        expect(text, pos, '{');
+        skipSpace(text, pos);
+        if (peek(text, pos) == '}') {
+            pos[0]++;
+            return fields;
+        }
+
+        while (true) {
+            skipSpace(text, pos);
+            String key = readString(text, pos);
+            skipSpace(text, pos);
+            expect(text, pos, ':');
+            skipSpace(text, pos);
+            fields.put(key, readValue(text, pos));
+            skipSpace(text, pos);
+            char c = peek(text, pos);
+            pos[0]++;
+            if (c == '}') {
+                return fields;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("Expected ',' or '}' at " + (pos[0] - 1));
+            }
+        }
+    }
+
+    /**
+     * Reads one string, number, boolean or null value.
+     */
+    private static String readValue(String text, int[] pos) {
+        char c = peek(text, pos);
+        if (c == '"') {
+            return readString(text, pos);
+        }
+        if (c == '{' || c == '[') {
+            throw new IllegalArgumentException("Nested values are not supported");
+        }
+
+        int start = pos[0];
+        while (pos[0] < text.length() && ",} \t\r\n".indexOf(text.charAt(pos[0])) < 0) {
+            pos[0]++;
+        }
+        String raw = text.substring(start, pos[0]);
+        if (raw.isEmpty()) {
+            throw new IllegalArgumentException("Missing value at " + start);
+        }
+        return raw.equals("null") ? null : raw;
+    }
+
+    /**
+     * Reads a quoted string, undoing escapes.
+     */
+    private static String readString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos[0] >= text.length()) {
+                throw new IllegalArgumentException("Unterminated string");
+            }
+            char c = text.charAt(pos[0]++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos[0] >= text.length()) {
+                throw new IllegalArgumentException("Unterminated string");
+            }
+            char e = text.charAt(pos[0]++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > text.length()) {
+                        throw new IllegalArgumentException("Bad \\u escape at " + pos[0]);
+                    }
+                    sb.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+    }
+
+    /** Skips whitespace. */
+    private static void skipSpace(String text, int[] pos) {
+        while (pos[0] < text.length() && Character.isWhitespace(text.charAt(pos[0]))) {
+            pos[0]++;
+        }
+    }
+
+    /** @return the next character, or 0 at the end */
+    private static char peek(String text, int[] pos) {
+        return pos[0] < text.length() ? text.charAt(pos[0]) : 0;
+    }
+
+    /** Consumes an expected character. */
+    private static void expect(String text, int[] pos, char c) {
+        if (peek(text, pos) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at " + pos[0]);
+        }
+        pos[0]++;
+    }
+}
@@ -0,0 +1,123 @@
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder events around the expensive kitchen operations, so a
+ * recording can tie GC and allocation spikes to fridge actions.
+ *
+ * Recorded only while a recording is running, e.g.
+ *   java -XX:StartFlightRecording=filename=mealcraft.jfr,settings=profile ...
+ * and shown in JDK Mission Control under "MealCraft". When no recording is
+ * running, shouldCommit() is false and the fields are never filled in.
+ */
+public class KitchenEvents {
+    /**
+     * One pass that ranks or sorts the recipe list.
+     */
+    @Name("mealcraft.RecipeRanking")
+    @Label("Recipe Ranking")
+    @jdk.jfr.Category("MealCraft")
+    public static class RecipeRanking extends Event {
+        @Label("Order")
+        @Description("az, availability, expiring or servings")
+        public String order;
+
+        @Label("Recipes")
+        public int recipeCount;
+
+        @Label("Items")
+        @Description("Items in the fridge, or -1 if the order does not use it")
+        public int itemCount = -1;
+    }
+
+    /**
+     * One refreshAll of the app, either loading in the background or rebuilding the screens.
+     */
+    @Name("mealcraft.UiRefresh")
+    @Label("UI Refresh")
+    @jdk.jfr.Category("MealCraft")
+    public static class UiRefresh extends Event {
+        @Label("Phase")
+        @Description("load (worker thread) or render (FX thread)")
+        public String phase;
+
+        @Label("Items")
+        public int itemCount;
+
+        @Label("Recipes")
+        public int recipeCount;
+    }
+
+    /**
+     * Reading one recipe text file.
+     */
+    @Name("mealcraft.RecipeImport")
+    @Label("Recipe Import")
+    @jdk.jfr.Category("MealCraft")
+    public static class RecipeImport extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Ingredients")
+        public int ingredientCount;
+
+        @Label("Steps")
+        public int stepCount;
+
+        @Label("Items")
+        @Description("Items in the fridge the file is read for, or -1 if it is read for none")
+        public int itemCount = -1;
+
+        @Label("Recipes")
+        @Description("Recipes in the fridge the file is read for, or -1 if it is read for none")
+        public int recipeCount = -1;
+    }
+
+    /**
+     * Looking up and starting to load one image. JavaFX decodes in the
+     * background, so this covers the lookup and setup, not the whole decode.
+     */
+    @Name("mealcraft.ImageLoad")
+    @Label("Image Load")
+    @jdk.jfr.Category("MealCraft")
+    public static class ImageLoad extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Found")
+        @Description("false if the placeholder was used")
+        public boolean found;
+
+        @Label("Items")
+        public int itemCount;
+
+        @Label("Recipes")
+        public int recipeCount;
+    }
+
+    /**
+     * A rebuild of, or change to, one of the fridge's indexes.
+     */
+    @Name("mealcraft.IndexUpdate")
+    @Label("Index Update")
+    @jdk.jfr.Category("MealCraft")
+    public static class IndexUpdate extends Event {
+        @Label("Index")
+        @Description("item search or recipe search")
+        public String index;
+
+        @Label("Operation")
+        @Description("rebuild, add or remove")
+        public String operation;
+
+        @Label("Items")
+        @Description("Items in the fridge or index, or -1 if the index does not hold items")
+        public int itemCount = -1;
+
+        @Label("Recipes")
+        @Description("Recipes in the fridge or index, or -1 if the index does not hold recipes")
+        public int recipeCount = -1;
+    }
+}
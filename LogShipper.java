@@ -0,0 +1,172 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Streams a primary fridge's FridgeLog to followers over a local socket.
+ *
+ * The protocol is line-based UTF-8. A follower sends "FROM logId offset",
+ * naming the log it followed before ("-" if none) and the offset of the next
+ * record it needs, and gets "LOG logId" back. If it followed this log and
+ * that record is still kept, records are sent from there as
+ * "R offset record". Otherwise it first gets "SNAPSHOT offset count" and
+ * count snapshot records taken on the fridge's owner thread, then the records
+ * after offset. "HB endOffset" is sent whenever the follower has everything
+ * or nothing new arrived for a while, so followers know how far behind they are.
+ */
+public class LogShipper {
+    /** how long to wait for new records before sending a heartbeat */
+    private static final long HEARTBEAT_MILLIS = 200;
+    /** most records written between flushes */
+    private static final int BATCH = 1024;
+
+    /** the primary fridge */
+    private Fridge fridge;
+    /** its change log */
+    private FridgeLog log;
+    /** runs work on the fridge's owner thread */
+    private Executor fridgeThread;
+    /** listening socket */
+    private ServerSocket server;
+    /** whether to keep accepting and sending */
+    private volatile boolean running;
+
+    /**
+     * Creates a shipper for a fridge whose changes go to a log.
+     *
+     * @param fridge primary fridge
+     * @param log log the fridge writes its changes to
+     * @param fridgeThread runs snapshots on the fridge's owner thread
+     * @param port port to listen on (0 picks a free port)
+     * @throws IOException if the port cannot be opened
+     */
+    public LogShipper(Fridge fridge, FridgeLog log, Executor fridgeThread, int port) throws IOException {
+        this.fridge = fridge;
+        this.log = log;
+        this.fridgeThread = fridgeThread;
+        // Only listens on this machine
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Starts accepting followers.
+     */
+    public void start() {
+        running = true;
+        Thread t = new Thread(this::acceptLoop, "mealcraft-shipper");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Stops accepting followers. Connected followers are dropped when they next get data.
+     */
+    public void stop() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /** @return port followers connect to */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts followers, one thread each.
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket s = server.accept();
+                Thread t = new Thread(() -> serve(s), "mealcraft-shipper-" + s.getPort());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                // If the socket was closed by stop()
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends one follower what it is missing, then keeps it up to date.
+     */
+    private void serve(Socket s) {
+        try (Socket socket = s;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String hello = in.readLine();
+            if (hello == null || !hello.startsWith("FROM ")) {
+                return;
+            }
+            String[] parts = hello.split(" ");
+            long next = Long.parseLong(parts[2]);
+            out.write("LOG " + log.getId() + "\n");
+            // If it was following another log, e.g. before this primary restarted
+            if (!parts[1].equals(log.getId())) {
+                next = sendSnapshot(out);
+            }
+
+            while (running) {
+                List<String> records = log.read(next, BATCH, HEARTBEAT_MILLIS);
+                // If the follower is too far behind
+                if (records == null) {
+                    next = sendSnapshot(out);
+                    continue;
+                }
+                for (String r : records) {
+                    out.write("R " + next + " " + r + "\n");
+                    next++;
+                }
+                long end = log.getEndOffset();
+                if (records.isEmpty() || end == next) {
+                    out.write("HB " + end + "\n");
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The follower went away or sent garbage; it reconnects on its own
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a snapshot on the fridge thread and sends it.
+     *
+     * @return offset of the first record after the snapshot
+     */
+    private long sendSnapshot(Writer out) throws IOException, InterruptedException {
+        CompletableFuture<Object[]> taken = CompletableFuture.supplyAsync(
+            // Records are only added on this thread, so the offset matches the snapshot
+            () -> new Object[] { FridgeLog.snapshot(fridge), log.getEndOffset() }, fridgeThread);
+        Object[] snap;
+        try {
+            snap = taken.get();
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new IOException("Snapshot failed", e.getCause());
+        }
+        @SuppressWarnings("unchecked")
+        List<String> records = (List<String>) snap[0];
+        long offset = (Long) snap[1];
+
+        out.write("SNAPSHOT " + offset + " " + records.size() + "\n");
+        for (String r : records) {
+            out.write(r + "\n");
+        }
+        out.flush();
+        return offset;
+    }
+}
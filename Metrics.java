@@ -0,0 +1,270 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters, latency timers and gauges for the core fridge and recipe paths.
+ *
+ * Off by default. While off, each timed call costs one volatile read and a
+ * branch: start() returns 0 and stop() ignores it. Turn it on with
+ * -Dmealcraft.metrics=true or setEnabled(true). Results can be read as a
+ * text snapshot or pushed to a Sink, once or on a schedule.
+ *
+ * Typical use:
+ *   long t = Metrics.start();
+ *   ... work ...
+ *   ADD_FOOD.stop(t);
+ */
+public class Metrics {
+    /** whether metrics are being recorded */
+    private static volatile boolean enabled = Boolean.getBoolean("mealcraft.metrics");
+
+    /** counters by name */
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    /** timers by name */
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    /** gauges by name */
+    private static final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    static {
+        gauge("jvm.heap.used.mb", () -> {
+            Runtime rt = Runtime.getRuntime();
+            return (rt.totalMemory() - rt.freeMemory()) / (1024.0 * 1024.0);
+        });
+    }
+
+    /** @return true if metrics are being recorded */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. Values recorded so far are kept.
+     *
+     * @param on true to record
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Starts timing a call.
+     *
+     * @return start time for Timer.stop, or 0 when metrics are off
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Returns the counter with a name, creating it the first time.
+     *
+     * @param name counter name
+     * @return the counter
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Returns the timer with a name, creating it the first time.
+     *
+     * @param name timer name
+     * @return the timer
+     */
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /**
+     * Registers a gauge, replacing any with the same name. Gauges are read when reported,
+     * from the reporting thread, so they should only read values that are safe to race.
+     *
+     * @param name gauge name
+     * @param value reads the current value
+     */
+    public static void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Sends every metric to a sink, in name order.
+     *
+     * @param sink receives the values
+     */
+    public static void report(Sink sink) {
+        for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+            sink.counter(e.getKey(), e.getValue().get());
+        }
+        for (Map.Entry<String, DoubleSupplier> e : new TreeMap<>(gauges).entrySet()) {
+            double v;
+            try {
+                v = e.getValue().getAsDouble();
+            } catch (RuntimeException ex) {
+                v = Double.NaN;
+            }
+            sink.gauge(e.getKey(), v);
+        }
+        for (Map.Entry<String, Timer> e : new TreeMap<>(timers).entrySet()) {
+            Timer t = e.getValue();
+            sink.timer(e.getKey(), t.getCount(), t.getMeanMillis(), t.getPercentileMillis(50),
+                t.getPercentileMillis(90), t.getPercentileMillis(99), t.getMaxMillis());
+        }
+    }
+
+    /**
+     * Reports to a sink every so often on a background thread.
+     *
+     * @param sink receives the values
+     * @param periodSeconds seconds between reports
+     * @return the scheduler, to shut down when done
+     */
+    public static ScheduledExecutorService reportEvery(Sink sink, long periodSeconds) {
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mealcraft-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleAtFixedRate(() -> report(sink), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return s;
+    }
+
+    /**
+     * Returns every metric as text, one per line.
+     *
+     * @return text snapshot
+     */
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        report(new Sink() {
+            public void counter(String name, long value) {
+                sb.append(String.format("%-32s counter %d%n", name, value));
+            }
+
+            public void gauge(String name, double value) {
+                sb.append(String.format("%-32s gauge   %.2f%n", name, value));
+            }
+
+            public void timer(String name, long count, double meanMs, double p50Ms, double p90Ms, double p99Ms, double maxMs) {
+                sb.append(String.format("%-32s timer   count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms%n",
+                    name, count, meanMs, p50Ms, p90Ms, p99Ms, maxMs));
+            }
+        });
+        return sb.toString();
+    }
+
+    /**
+     * Receives metric values from report().
+     */
+    public interface Sink {
+        void counter(String name, long value);
+
+        void gauge(String name, double value);
+
+        void timer(String name, long count, double meanMs, double p50Ms, double p90Ms, double p99Ms, double maxMs);
+    }
+
+    /**
+     * A count that only goes up.
+     */
+    public static class Counter {
+        /** running count */
+        private final LongAdder count = new LongAdder();
+
+        /** Adds one, if metrics are on. */
+        public void inc() {
+            if (enabled) {
+                count.increment();
+            }
+        }
+
+        /** @return current count */
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Latency histogram. Durations go into buckets that double in size
+     * (1-2 ns, 2-4 ns, ... ), so percentiles are exact to within a factor of two
+     * and recording never allocates or locks.
+     */
+    public static class Timer {
+        /** bucket i counts durations with highest set bit i */
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        /** number of durations */
+        private final LongAdder count = new LongAdder();
+        /** total nanoseconds */
+        private final LongAdder total = new LongAdder();
+        /** longest duration in nanoseconds */
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Records the time since a start() call.
+         *
+         * @param startNanos value from Metrics.start(); 0 means metrics were off
+         */
+        public void stop(long startNanos) {
+            if (startNanos == 0) {
+                return;
+            }
+            long d = Math.max(1, System.nanoTime() - startNanos);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(d));
+            count.increment();
+            total.add(d);
+            max.accumulate(d);
+        }
+
+        /** @return number of durations */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /** @return mean duration in milliseconds */
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : total.sum() / (double) n / 1e6;
+        }
+
+        /** @return longest duration in milliseconds */
+        public double getMaxMillis() {
+            return max.get() / 1e6;
+        }
+
+        /**
+         * Returns an upper estimate of a percentile.
+         *
+         * @param p percentile from 0 to 100
+         * @return duration in milliseconds
+         */
+        public double getPercentileMillis(double p) {
+            long n = 0;
+            long[] snap = new long[64];
+            for (int i = 0; i < 64; i++) {
+                snap[i] = buckets.get(i);
+                n += snap[i];
+            }
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p / 100 * n);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += snap[i];
+                if (seen >= rank) {
+                    // Top of the bucket, but never above the real maximum
+                    long top = i == 63 ? Long.MAX_VALUE : (2L << i) - 1;
+                    return Math.min(top, max.get()) / 1e6;
+                }
+            }
+            return max.get() / 1e6;
+        }
+    }
+}
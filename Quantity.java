@@ -0,0 +1,37 @@
+/**
+ * Fixed-point helpers for item quantities and ingredient amounts.
+ * Amounts are stored as whole thousandths of a unit in a long, so adding,
+ * subtracting and comparing them is exact (0.1 + 0.2 is exactly 0.3, and
+ * removing all of an item really leaves zero).
+ */
+public final class Quantity {
+    /** stored steps per unit (three decimal places) */
+    public static final long SCALE = 1000;
+
+    private Quantity() {
+    }
+
+    /**
+     * Converts an amount to thousandths, rounding to the nearest thousandth.
+     * 
+     * @param amount amount in units
+     * @return amount in thousandths
+     */
+    public static long fromDouble(double amount) {
+        if (Double.isNaN(amount)) {
+            return 0;
+        }
+        // Math.round clamps values outside the long range
+        return Math.round(amount * SCALE);
+    }
+
+    /**
+     * Converts thousandths back to units.
+     * 
+     * @param scaled amount in thousandths
+     * @return amount in units
+     */
+    public static double toDouble(long scaled) {
+        return scaled / (double) SCALE;
+    }
+}
@@ -4,18 +4,51 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDate;
 
 public class Recipe {
+    /** recipe file parse time (see Metrics) */
+    private static final Metrics.Timer PARSE_TIMER = Metrics.timer("recipe.parse");
+    /** calls that score a recipe against the fridge */
+    private static final Metrics.Counter SCORE_CALLS = Metrics.counter("recipe.score");
+    /** most header-only recipes whose steps are kept after reading */
+    private static final int STEP_CACHE_SIZE = 64;
+    /** steps of recently viewed header-only recipes, least recently used first */
+    private static final Map<Recipe, List<String>> stepCache = new LinkedHashMap<Recipe, List<String>>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Recipe, List<String>> eldest) {
+            return size() > STEP_CACHE_SIZE;
+        }
+    };
+    /** one shared instance per distinct ingredient list in use */
+    private static final WeakInterner<List<IngredientLine>> ingredientLists = new WeakInterner<>();
+    /** FNV-1a offset basis, the hash of nothing */
+    private static final long HASH_START = 0xcbf29ce484222325L;
     /** recipe name */
     private String name;
-    /** cooking steps */
+    /** cooking steps, or null if they are read from stepsFile when needed */
     private List<String> steps;
-    /** ingredient list */
+    /** file the steps are read from, for header-only recipes */
+    private File stepsFile;
+    /** byte offset of the steps section in stepsFile */
+    private long stepsOffset;
+    /** byte length of the steps section */
+    private int stepsLength;
+    /** stepsFile's modification time when the header was read */
+    private long stepsModified;
+    /** ingredient list, immutable and shared with recipes that have the same one */
     private List<IngredientLine> ingredients;
     /** image path */
     private String imgFilePath;
+    /** hash of the ingredients and steps, see getContentHash() */
+    private long contentHash;
+    /** DietTag bits of all the ingredients */
+    private long dietTags;
 
     /**
      * Creates a recipe. 
@@ -23,8 +56,29 @@ public class Recipe {
     public Recipe (String name, List<String> steps, List<IngredientLine> ingredients, String imgFilePath) {
         this.name = name;
         this.steps = steps;
-        this.ingredients = ingredients;
+        this.ingredients = share(ingredients);
         this.imgFilePath = imgFilePath;
+        for (IngredientLine line : this.ingredients) {
+            // A sub-recipe brings in everything it is made of
+            dietTags |= line.getSubRecipe() != null ? line.getSubRecipe().getDietTags()
+                : DietTag.defaultTags(line.getNormalizedName());
+        }
+        if (steps != null) {
+            contentHash = contentHash(this.ingredients, stepsHash(steps));
+        }
+    }
+
+    /**
+     * Creates a header-only recipe whose steps stay in a file until needed.
+     */
+    private Recipe(String name, List<IngredientLine> ingredients, String imgFilePath,
+                   File stepsFile, long stepsOffset, int stepsLength, long stepsHash) {
+        this(name, null, ingredients, imgFilePath);
+        this.stepsFile = stepsFile;
+        this.stepsOffset = stepsOffset;
+        this.stepsLength = stepsLength;
+        this.stepsModified = stepsFile.lastModified();
+        this.contentHash = contentHash(this.ingredients, stepsHash);
     }
 
     /** @return recipe name */
@@ -32,9 +86,83 @@ public class Recipe {
         return name;
     }
     
-    /** @return steps lists */
+    /**
+     * Returns the steps. For a header-only recipe they are read from its file
+     * the first time and kept in a small cache shared by all recipes.
+     *
+     * @return steps list; empty if the file can no longer be read
+     */
     public List<String> getSteps() {
-        return steps;
+        if (steps != null) {
+            return steps;
+        }
+        synchronized (stepCache) {
+            List<String> cached = stepCache.get(this);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<String> read = readSteps();
+        synchronized (stepCache) {
+            stepCache.put(this, read);
+        }
+        return read;
+    }
+
+    /**
+     * Returns the steps without going through the cache, for one-off passes
+     * over many recipes such as indexing, which would only push out the
+     * steps the user is looking at.
+     *
+     * @return steps list; empty if the file can no longer be read or no longer holds this recipe
+     */
+    List<String> readSteps() {
+        if (steps != null) {
+            return steps;
+        }
+        try {
+            // If the file was edited since, the byte range no longer points at the steps,
+            // and its steps only belong with these ingredients if the content is the same
+            if (stepsFile.lastModified() != stepsModified) {
+                Recipe now = fromTxtFile(name, stepsFile, imgFilePath);
+                return now.contentHash == contentHash ? now.steps : Collections.emptyList();
+            }
+            byte[] bytes = new byte[stepsLength];
+            try (RandomAccessFile in = new RandomAccessFile(stepsFile, "r")) {
+                in.seek(stepsOffset);
+                in.readFully(bytes);
+            }
+            List<String> read = new ArrayList<>();
+            for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    read.add(stepText(line));
+                }
+            }
+            return Collections.unmodifiableList(read);
+        } catch (Exception e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Points a header-only recipe's steps at where a later reading of its file
+     * found them, after an edit that left the content the same.
+     *
+     * @param reread the same file read again, with the same content hash
+     */
+    void moveSteps(Recipe reread) {
+        if (steps == null && reread.steps == null) {
+            stepsFile = reread.stepsFile;
+            stepsOffset = reread.stepsOffset;
+            stepsLength = reread.stepsLength;
+            stepsModified = reread.stepsModified;
+        }
+    }
+
+    /** @return true if the steps are only read from the file when needed */
+    public boolean isHeaderOnly() {
+        return steps == null;
     }
     
     /** @return ingredients */
@@ -42,13 +170,59 @@ public class Recipe {
         return ingredients;
     }
     
+    /**
+     * Returns a 64-bit hash of the ingredients and steps. Recipes with the same
+     * content have the same hash whatever their names, so duplicates can be
+     * found without comparing every pair.
+     *
+     * @return content hash
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Checks if another recipe has the same ingredients and steps, in the same order.
+     *
+     * @param other recipe to compare with
+     * @return true if only the name or image may differ
+     */
+    public boolean sameContent(Recipe other) {
+        return other != null && contentHash == other.contentHash
+            && ingredients.equals(other.ingredients) && readSteps().equals(other.readSteps());
+    }
+
+    /** @return DietTag bits of all the ingredients */
+    public long getDietTags() {
+        return dietTags;
+    }
+
+    /**
+     * Sets the tag bits, when a fridge's ingredient tags differ from the defaults.
+     */
+    void setDietTags(long tags) {
+        dietTags = tags;
+    }
+
+    /**
+     * Checks a recipe against a household's restrictions.
+     *
+     * @param avoided mask of DietTags the household avoids
+     * @return true if no ingredient has an avoided tag, and under any
+     *         restriction, no ingredient's tags are UNKNOWN
+     */
+    public boolean suits(long avoided) {
+        return avoided == DietTag.NONE || (dietTags & (avoided | DietTag.UNKNOWN)) == 0;
+    }
+
     /** @return recipe image path */
     public String getImgFilePath() {
         return imgFilePath;
     }
 
     /**
-     * Checks if a recipe can be cooked.
+     * Checks if a recipe can be cooked, counting substitutes (see
+     * Fridge.getEffectiveQuantity).
      * 
      * @param fridge
      * @return true if possible
@@ -57,8 +231,7 @@ public class Recipe {
      */
     public boolean canCook(Fridge fridge) {
         for (IngredientLine line : ingredients) {
-            FoodItem item = fridge.getFoodItem(line.getNormalizedName());
-            if (item == null || item.getQuantity() < line.getAmount()) {
+            if (fridge.getEffectiveQuantity(line.getNormalizedName()) < line.getScaledAmount()) {
                 return false;
             }
         }
@@ -66,7 +239,8 @@ public class Recipe {
     }
     
     /**
-     * Gets the number of all the ingredients missing from the recipe
+     * Gets the number of all the ingredients missing from the recipe, counting
+     * what substitutes can stand in for
      * 
      * @param fridge
      * @return the number of ingredients missing
@@ -74,18 +248,17 @@ public class Recipe {
      * Contributed by: Jessie Luo
      */
     public double getMissingIngredients(Fridge fridge){
-        double cnt = 0;
+        SCORE_CALLS.inc();
+        // Sums in thousandths so the total is exact
+        long cnt = 0;
         for(IngredientLine line : ingredients){
-            FoodItem item = fridge.getFoodItem(line.getNormalizedName());
-            if(item == null){
-                cnt = cnt + line.getAmount();
-            }
-            else if(item.getQuantity() < line.getAmount()){
+            long have = fridge.getEffectiveQuantity(line.getNormalizedName());
+            if(have < line.getScaledAmount()){
                 // note that this does not account for potential unit differences
-                cnt = cnt + line.getAmount()-item.getQuantity();
+                cnt = cnt + line.getScaledAmount()-have;
             }
         }
-        return cnt;
+        return Quantity.toDouble(cnt);
     }
     
     /**
@@ -97,6 +270,7 @@ public class Recipe {
      * Contributed by: Jessie Luo
      */
     public long getEarliestExpirationDays(Fridge fridge) {
+        SCORE_CALLS.inc();
         long earliest = Long.MAX_VALUE;
 
         for (IngredientLine ing : ingredients) {
@@ -123,14 +297,67 @@ public class Recipe {
      * Contributed by: Jessie Luo
      */
     public boolean cook(Fridge fridge) {
-        if (!canCook(fridge)) {
+        return cook(fridge, 1);
+    }
+
+    /**
+     * Consumes the ingredients for several servings, or nothing if there is not
+     * enough for all of them. An ingredient that runs short is made up from
+     * its substitutes. A plan to cook it today or earlier counts as done.
+     * 
+     * @param fridge fridge to take the ingredients from
+     * @param servings number of servings, at least 1
+     * @return true if the ingredients were taken
+     */
+    public boolean cook(Fridge fridge, int servings) {
+        if (servings < 1 || getMaxServings(fridge) < servings) {
             return false;
         }
-        for (IngredientLine line : ingredients) {
-            fridge.removeFood(line.getNormalizedName(), line.getAmount());
+        // If two lines lean on the same substitute there may be less than the count suggested
+        Map<String, Long> take = fridge.allocate(ingredients, servings);
+        if (take == null) {
+            return false;
+        }
+        // Undone as one step
+        fridge.beginEdit("Cook " + name);
+        try {
+            for (Map.Entry<String, Long> e : take.entrySet()) {
+                fridge.removeScaledFood(e.getKey(), e.getValue());
+            }
+            fridge.cookedPlanned(this, LocalDate.now());
+        } finally {
+            fridge.endEdit();
         }
         return true;
     }
+
+    /**
+     * Returns how many servings the fridge has enough for: the fewest that any
+     * one ingredient allows. Fridge.getMaxServings keeps this up to date for
+     * the fridge's own recipes.
+     * 
+     * @param fridge fridge to check
+     * @return servings, or Integer.MAX_VALUE if the recipe needs nothing
+     */
+    public int getMaxServings(Fridge fridge) {
+        int best = Integer.MAX_VALUE;
+        for (IngredientLine line : ingredients) {
+            best = Math.min(best, servingsOf(line, fridge));
+        }
+        return best;
+    }
+
+    /**
+     * Returns how many servings' worth of one ingredient line the fridge holds.
+     */
+    static int servingsOf(IngredientLine line, Fridge fridge) {
+        long amount = line.getScaledAmount();
+        if (amount <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        long have = fridge.getEffectiveQuantity(line.getNormalizedName());
+        return (int) Math.min(Integer.MAX_VALUE, have / amount);
+    }
     
 
     /**
@@ -144,12 +371,30 @@ public class Recipe {
      * Contributed by: Jessie Luo
      */
     public static Recipe fromTxtFile(String recipeName,File file,String imgFilePath) throws Exception {
+        return fromTxtFile(recipeName, file, imgFilePath, null);
+    }
+
+    /**
+     * Creates a Recipe by reading a text file, for a fridge whose sizes go in
+     * the import event.
+     *
+     * @param recipeName      the display name of the recipe
+     * @param file            the text file containing the recipe data
+     * @param imgFilePath     the file path to the recipe image
+     * @param into            the fridge it is read for, or null
+     * @return                a fully constructed Recipe object
+     */
+    public static Recipe fromTxtFile(String recipeName, File file, String imgFilePath, Fridge into) throws Exception {
+        long t = Metrics.start();
+        KitchenEvents.RecipeImport event = new KitchenEvents.RecipeImport();
+        event.begin();
         List<String> steps = new ArrayList<>();
         List<IngredientLine> ingredients = new ArrayList<>();
         boolean readingSteps = false;
         boolean readingIngredients = false;
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+        // UTF-8 like headerFromTxtFile, so both give the same text and content hash
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
             String line;
             while ((line = br.readLine()) != null) {
                 line = line.trim();
@@ -167,24 +412,195 @@ public class Recipe {
                     continue;
                 }
                 if (readingSteps) {
-                    // Remove the step numbers like "1. "
-                    line = line.replaceFirst("^\\d+\\.\\s*", "");
-                    steps.add(line);
+                    steps.add(stepText(line));
                 }
                 if (readingIngredients) {
-                    int lt = line.indexOf('<');
-                    int gt = line.indexOf('>');
-                    if (lt == -1 || gt == -1){
-                        continue;
+                    IngredientLine ingredient = parseIngredient(line);
+                    if (ingredient != null) {
+                        ingredients.add(ingredient);
                     }
-                    String name = line.substring(0, lt).trim();
-                    String amtStr = line.substring(lt + 1, gt).replace("x", "").trim();
-                    double amount = Double.parseDouble(amtStr);
-                    ingredients.add(new IngredientLine(name, amount, "unit"));
                 }
             }
         }
 
+        PARSE_TIMER.stop(t);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.getPath();
+            event.ingredientCount = ingredients.size();
+            event.stepCount = steps.size();
+            fillCounts(event, into);
+            event.commit();
+        }
         return new Recipe(recipeName, steps, ingredients, imgFilePath);
     }
+
+    /**
+     * Reads only the name, ingredients and image path of a recipe text file.
+     * The steps stay in the file and are read by getSteps() when first needed,
+     * so a large catalog keeps little more than its ingredient lists in memory.
+     *
+     * @param recipeName      the display name of the recipe
+     * @param file            the text file containing the recipe data
+     * @param imgFilePath     the file path to the recipe image
+     * @return                a Recipe whose steps are read on demand
+     */
+    public static Recipe headerFromTxtFile(String recipeName, File file, String imgFilePath) throws Exception {
+        return headerFromTxtFile(recipeName, file, imgFilePath, null);
+    }
+
+    /**
+     * Reads only the name, ingredients and image path of a recipe text file,
+     * for a fridge whose sizes go in the import event.
+     *
+     * @param recipeName      the display name of the recipe
+     * @param file            the text file containing the recipe data
+     * @param imgFilePath     the file path to the recipe image
+     * @param into            the fridge it is read for, or null
+     * @return                a Recipe whose steps are read on demand
+     */
+    public static Recipe headerFromTxtFile(String recipeName, File file, String imgFilePath, Fridge into) throws Exception {
+        long t = Metrics.start();
+        KitchenEvents.RecipeImport event = new KitchenEvents.RecipeImport();
+        event.begin();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        List<IngredientLine> ingredients = new ArrayList<>();
+        int stepsStart = -1;
+        int stepsEnd = -1;
+        int stepCount = 0;
+        long stepsHash = HASH_START;
+        boolean readingSteps = false;
+        boolean readingIngredients = false;
+
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            int next = Math.min(end + 1, bytes.length);
+            String line = new String(bytes, start, end - start, StandardCharsets.UTF_8).trim();
+            if (line.equalsIgnoreCase("Steps:")) {
+                // If the steps are split over several sections, one byte range cannot hold them
+                if (stepsStart != -1) {
+                    return fromTxtFile(recipeName, file, imgFilePath, into);
+                }
+                readingSteps = true;
+                readingIngredients = false;
+                stepsStart = next;
+                stepsEnd = next;
+            }
+            else if (line.equalsIgnoreCase("Ingredients:")) {
+                readingSteps = false;
+                readingIngredients = true;
+            }
+            else if (!line.isEmpty() && readingSteps) {
+                stepsEnd = next;
+                stepCount++;
+                stepsHash = hash(stepsHash, stepText(line));
+            }
+            else if (!line.isEmpty() && readingIngredients) {
+                IngredientLine ingredient = parseIngredient(line);
+                if (ingredient != null) {
+                    ingredients.add(ingredient);
+                }
+            }
+            start = next;
+        }
+
+        PARSE_TIMER.stop(t);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.getPath();
+            event.ingredientCount = ingredients.size();
+            event.stepCount = stepCount;
+            fillCounts(event, into);
+            event.commit();
+        }
+        if (stepsStart == -1) {
+            return new Recipe(recipeName, new ArrayList<>(), ingredients, imgFilePath);
+        }
+        return new Recipe(recipeName, ingredients, imgFilePath, file, stepsStart, stepsEnd - stepsStart, stepsHash);
+    }
+
+    /**
+     * Puts a fridge's item and recipe counts in an import event, if there is a fridge.
+     */
+    private static void fillCounts(KitchenEvents.RecipeImport event, Fridge into) {
+        if (into != null) {
+            event.itemCount = into.getItemCount();
+            event.recipeCount = into.getRecipeCount();
+        }
+    }
+
+    /**
+     * Removes the step number, like "1. ", from a step line.
+     */
+    private static String stepText(String line) {
+        return line.replaceFirst("^\\d+\\.\\s*", "");
+    }
+
+    /**
+     * Parses an ingredient line like "Onion <2x>".
+     *
+     * @return the ingredient, or null if the line has no amount
+     */
+    private static IngredientLine parseIngredient(String line) {
+        int lt = line.indexOf('<');
+        int gt = line.indexOf('>');
+        if (lt == -1 || gt == -1){
+            return null;
+        }
+        String name = line.substring(0, lt).trim();
+        String amtStr = line.substring(lt + 1, gt).replace("x", "").trim();
+        double amount = Double.parseDouble(amtStr);
+        return new IngredientLine(name, amount, "unit");
+    }
+
+    /**
+     * Returns the shared immutable copy of an ingredient list, with each line shared too.
+     */
+    private static List<IngredientLine> share(List<IngredientLine> lines) {
+        if (lines == null) {
+            return List.of();
+        }
+        IngredientLine[] shared = new IngredientLine[lines.size()];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = IngredientLine.canonical(lines.get(i));
+        }
+        return ingredientLists.intern(List.of(shared));
+    }
+
+    /**
+     * Mixes a string into a 64-bit FNV-1a hash, followed by a separator so
+     * "ab","c" and "a","bc" differ.
+     */
+    private static long hash(long h, String s) {
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return (h ^ 0xffff) * 0x100000001b3L;
+    }
+
+    /** @return hash of a list of steps */
+    private static long stepsHash(List<String> steps) {
+        long h = HASH_START;
+        for (String step : steps) {
+            h = hash(h, step);
+        }
+        return h;
+    }
+
+    /** @return hash of an ingredient list combined with a steps hash */
+    private static long contentHash(List<IngredientLine> lines, long stepsHash) {
+        long h = HASH_START;
+        for (IngredientLine line : lines) {
+            h = hash(h, line.getNormalizedName());
+            h = hash(h, Long.toString(line.getScaledAmount()));
+            h = hash(h, line.getUnit());
+        }
+        return (h ^ stepsHash) * 0x100000001b3L;
+    }
 }
@@ -0,0 +1,460 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds the recipes the fridge can make without checking every ingredient
+ * line of every recipe.
+ *
+ * Each ingredient name seen in a recipe gets a small id. Each recipe keeps a
+ * bitset of the ids it needs and the fridge's stock is turned into a bitset
+ * of the ids it has. A recipe uses a handful of a catalog's ingredients, so
+ * its bitset keeps only its non-zero 64-bit words, packed with every other
+ * recipe's into flat arrays. A recipe needing anything the fridge lacks has a
+ * bit left over after (required AND NOT present), which rules out most of the
+ * catalog a word at a time when listing the recipes that use only ingredients
+ * in stock.
+ *
+ * It also keeps how many servings of each recipe the stock allows, which
+ * ingredient limits it, and how many ingredients it is short of, with the
+ * recipes short of none ("cookable now") and of one kept as sets. When an
+ * ingredient's stock changes, only the recipes using it are looked at; a
+ * recipe moves between the sets only if the stock crossed one of its
+ * required amounts, and is recounted in full only when its limiting
+ * ingredient went up.
+ *
+ * Stock means what Fridge.getEffectiveQuantity counts, substitutes included.
+ * A change to a substitute's stock is passed on to the ingredients it stands
+ * in for, which the fridge's Substitutions already lists, so no search is
+ * needed.
+ *
+ * Owned by a Fridge and, like it, not thread-safe.
+ */
+public class RecipeFeasibility {
+    /** the fridge whose stock is checked */
+    private final Fridge fridge;
+    /** ids of ingredient names, in order of first use */
+    private HashMap<String, Integer> ids = new HashMap<>();
+    /** ingredient names by id */
+    private List<String> names = new ArrayList<>();
+    /** recipes by row; null for a removed one */
+    private List<Recipe> recipes = new ArrayList<>();
+    /** number of removed rows */
+    private int removed;
+    /** rows by recipe */
+    private IdentityHashMap<Recipe, Integer> rowOf = new IdentityHashMap<>();
+    /** rows of the recipes using each ingredient, by id; removed rows are skipped until the catalog is packed */
+    private int[][] usedBy = new int[16][];
+    /** number of rows in each usedBy array */
+    private int[] usedByCount = new int[16];
+    /** where each recipe's words start in wordIndex and wordBits; one extra entry marks the end */
+    private int[] rowStart = new int[16];
+    /** which 64-id word of the bitset each stored word is */
+    private int[] wordIndex = new int[64];
+    /** required-ingredient bits of each stored word */
+    private long[] wordBits = new long[64];
+    /** number of stored words */
+    private int wordCount;
+    /** bitset of ingredients in stock, by id; flipped as stock changes */
+    private long[] present = new long[1];
+    /** servings the stock allows, by row */
+    private int[] servings = new int[16];
+    /** id of the ingredient that allows the fewest servings, by row; -1 if none */
+    private int[] limiting = new int[16];
+    /** number of ingredients the stock is short of, by row */
+    private int[] shortCount = new int[16];
+    /** recipes short of nothing */
+    private LinkedHashSet<Recipe> cookableNow = new LinkedHashSet<>();
+    /** recipes short of exactly one ingredient */
+    private LinkedHashSet<Recipe> oneAway = new LinkedHashSet<>();
+
+    /**
+     * Creates an empty catalog checked against a fridge's stock.
+     *
+     * @param fridge the owning fridge
+     */
+    public RecipeFeasibility(Fridge fridge) {
+        this.fridge = fridge;
+    }
+
+    /**
+     * Adds a recipe to the catalog.
+     *
+     * @param recipe recipe to add
+     */
+    public void add(Recipe recipe) {
+        // Grouped by word, in order, so each word is stored once
+        TreeMap<Integer, Long> row = new TreeMap<>();
+        int r = recipes.size();
+        for (IngredientLine line : recipe.getIngredients()) {
+            int id = idOf(line.getNormalizedName());
+            row.merge(id / 64, 1L << id, (x, y) -> x | y);
+            addUser(id, r);
+        }
+        if (wordCount + row.size() > wordBits.length) {
+            int grown = Math.max(wordBits.length * 2, wordCount + row.size());
+            wordIndex = Arrays.copyOf(wordIndex, grown);
+            wordBits = Arrays.copyOf(wordBits, grown);
+        }
+        for (Map.Entry<Integer, Long> e : row.entrySet()) {
+            wordIndex[wordCount] = e.getKey();
+            wordBits[wordCount] = e.getValue();
+            wordCount++;
+        }
+        recipes.add(recipe);
+        rowOf.put(recipe, r);
+        if (recipes.size() + 1 > rowStart.length) {
+            rowStart = Arrays.copyOf(rowStart, rowStart.length * 2);
+        }
+        rowStart[recipes.size()] = wordCount;
+        if (r >= servings.length) {
+            servings = Arrays.copyOf(servings, servings.length * 2);
+            limiting = Arrays.copyOf(limiting, limiting.length * 2);
+            shortCount = Arrays.copyOf(shortCount, shortCount.length * 2);
+        }
+        countServings(r);
+        shortCount[r] = countShort(recipe);
+        regroup(recipe, -1, shortCount[r]);
+    }
+
+    /**
+     * Removes a recipe from the catalog. Its row is left empty, and skipped
+     * in the ingredients' user lists, until most rows are, then the catalog is
+     * packed again.
+     *
+     * @param recipe recipe to remove
+     */
+    public void remove(Recipe recipe) {
+        Integer r = rowOf.remove(recipe);
+        if (r == null) {
+            return;
+        }
+        regroup(recipe, shortCount[r], -1);
+        recipes.set(r, null);
+        removed++;
+        if (removed > 64 && removed * 2 > recipes.size()) {
+            List<Recipe> live = new ArrayList<>(rowOf.keySet());
+            live.sort(Comparator.comparingInt(rowOf::get));
+            recipes = new ArrayList<>();
+            rowOf = new IdentityHashMap<>();
+            wordCount = 0;
+            removed = 0;
+            cookableNow.clear();
+            oneAway.clear();
+            Arrays.fill(usedByCount, 0);
+            for (Recipe kept : live) {
+                add(kept);
+            }
+        }
+    }
+
+    /**
+     * Returns how many servings of a recipe the stock allows.
+     *
+     * @param recipe recipe to check
+     * @return servings, or Integer.MAX_VALUE if it needs nothing
+     */
+    public int getServings(Recipe recipe) {
+        Integer r = rowOf.get(recipe);
+        return r == null ? recipe.getMaxServings(fridge) : servings[r];
+    }
+
+    /**
+     * Returns the recipes the stock covers now. The set is kept up to date as
+     * stock changes, so reading it costs nothing.
+     *
+     * @return read-only live view; read on the owner thread only
+     */
+    public Set<Recipe> getCookableNow() {
+        return Collections.unmodifiableSet(cookableNow);
+    }
+
+    /**
+     * Returns the recipes short of exactly one ingredient, kept up to date like
+     * getCookableNow().
+     *
+     * @return read-only live view; read on the owner thread only
+     */
+    public Set<Recipe> getOneIngredientAway() {
+        return Collections.unmodifiableSet(oneAway);
+    }
+
+    /**
+     * Updates the recipes using an item, or an ingredient it stands in for,
+     * after its stock changed.
+     *
+     * @param name normalized item name
+     * @param before stock of the item before the change, in thousandths
+     */
+    public void stockChanged(String name, long before) {
+        FoodItem item = fridge.getFoodItem(name);
+        long after = item == null ? 0 : item.getScaledQuantity();
+        long effective = fridge.getEffectiveQuantity(name);
+        ingredientChanged(name, effective - after + before, effective);
+        for (String original : fridge.getSubstitutions().usedFor(name)) {
+            for (Substitutions.Substitute s : fridge.getSubstitutions().of(original)) {
+                if (s.getName().equals(name)) {
+                    long now = fridge.getEffectiveQuantity(original);
+                    ingredientChanged(original, now - s.covers(after) + s.covers(before), now);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the recipes using an ingredient after the amount of it recipes
+     * can count on changed. Servings are updated for each of them; the
+     * cookable and one-away sets only for those with a required amount
+     * between the old and new amount.
+     */
+    private void ingredientChanged(String name, long before, long after) {
+        Integer id = ids.get(name);
+        if (id == null || before == after) {
+            return;
+        }
+        setPresent(id, after > 0);
+        for (int k = 0; k < usedByCount[id]; k++) {
+            int r = usedBy[id][k];
+            Recipe recipe = recipes.get(r);
+            // If it was removed
+            if (recipe == null) {
+                continue;
+            }
+            int s = Integer.MAX_VALUE;
+            boolean wasShort = false;
+            boolean isShort = false;
+            for (IngredientLine line : recipe.getIngredients()) {
+                if (line.getNormalizedName().equals(name)) {
+                    s = Math.min(s, Recipe.servingsOf(line, fridge));
+                    wasShort |= before < line.getScaledAmount();
+                    isShort |= after < line.getScaledAmount();
+                }
+            }
+            // If it now limits the recipe
+            if (s < servings[r]) {
+                servings[r] = s;
+                limiting[r] = id;
+            }
+            // If the limit went up, another ingredient may limit it now
+            else if (s > servings[r] && limiting[r] == id) {
+                countServings(r);
+            }
+            // If the stock crossed a required amount
+            if (wasShort != isShort) {
+                int old = shortCount[r];
+                shortCount[r] += isShort ? 1 : -1;
+                regroup(recipe, old, shortCount[r]);
+            }
+        }
+    }
+
+    /**
+     * Counts every recipe's servings and shortages from scratch, for when
+     * what can stand in for what has changed.
+     */
+    public void recount() {
+        cookableNow.clear();
+        oneAway.clear();
+        for (int r = 0; r < recipes.size(); r++) {
+            if (recipes.get(r) == null) {
+                continue;
+            }
+            countServings(r);
+            shortCount[r] = countShort(recipes.get(r));
+            regroup(recipes.get(r), -1, shortCount[r]);
+        }
+        for (int id = 0; id < names.size(); id++) {
+            setPresent(id, fridge.getEffectiveQuantity(names.get(id)) > 0);
+        }
+    }
+
+    /**
+     * Counts how many of a recipe's ingredients are short, from scratch.
+     */
+    private int countShort(Recipe recipe) {
+        Set<String> shortNames = new HashSet<>();
+        for (IngredientLine line : recipe.getIngredients()) {
+            if (fridge.getEffectiveQuantity(line.getNormalizedName()) < line.getScaledAmount()) {
+                shortNames.add(line.getNormalizedName());
+            }
+        }
+        return shortNames.size();
+    }
+
+    /**
+     * Moves a recipe between the cookable and one-away sets when its short count changes.
+     */
+    private void regroup(Recipe recipe, int oldShort, int newShort) {
+        if (oldShort == 0) {
+            cookableNow.remove(recipe);
+        }
+        else if (oldShort == 1) {
+            oneAway.remove(recipe);
+        }
+        if (newShort == 0) {
+            cookableNow.add(recipe);
+        }
+        else if (newShort == 1) {
+            oneAway.add(recipe);
+        }
+    }
+
+    /**
+     * Counts a recipe's servings from scratch.
+     */
+    private void countServings(int r) {
+        int best = Integer.MAX_VALUE;
+        int lim = -1;
+        for (IngredientLine line : recipes.get(r).getIngredients()) {
+            int s = Recipe.servingsOf(line, fridge);
+            if (s < best) {
+                best = s;
+                lim = ids.get(line.getNormalizedName());
+            }
+        }
+        servings[r] = best;
+        limiting[r] = lim;
+    }
+
+    /** @return number of recipes */
+    public int size() {
+        return recipes.size() - removed;
+    }
+
+    /** @return number of distinct ingredient names */
+    public int getIngredientCount() {
+        return names.size();
+    }
+
+    /**
+     * Returns the id of an ingredient name.
+     *
+     * @param name normalized ingredient name
+     * @return id, or -1 if no recipe uses it
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the recipes that use an ingredient.
+     *
+     * @param name normalized ingredient name
+     * @return recipes in the order they were added; empty if none
+     */
+    public List<Recipe> recipesUsing(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        List<Recipe> users = new ArrayList<>(usedByCount[id]);
+        for (int k = 0; k < usedByCount[id]; k++) {
+            Recipe recipe = recipes.get(usedBy[id][k]);
+            if (recipe != null) {
+                users.add(recipe);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Returns the recipes that use only ingredients the fridge has some of, which
+     * is every cookable recipe plus those short only on amounts.
+     *
+     * @return candidate recipes, in the order they were added
+     */
+    public List<Recipe> candidates() {
+        long[] have = presence();
+        List<Recipe> result = new ArrayList<>();
+        int n = recipes.size();
+        for (int r = 0; r < n; r++) {
+            if (recipes.get(r) != null && covered(r, have)) {
+                result.add(recipes.get(r));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a recipe needs nothing outside a bitset.
+     */
+    private boolean covered(int r, long[] have) {
+        for (int k = rowStart[r], end = rowStart[r + 1]; k < end; k++) {
+            if ((wordBits[k] & ~have[wordIndex[k]]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the bitset of ingredients the fridge has some of. stockChanged
+     * keeps it up to date, so it is never rebuilt.
+     */
+    private long[] presence() {
+        return present;
+    }
+
+    /**
+     * Sets or clears an ingredient's bit in the presence bitset.
+     */
+    private void setPresent(int id, boolean has) {
+        if (has) {
+            present[id / 64] |= 1L << id;
+        }
+        else {
+            present[id / 64] &= ~(1L << id);
+        }
+    }
+
+    /**
+     * Adds a recipe's row to an ingredient's users, once.
+     */
+    private void addUser(int id, int r) {
+        int n = usedByCount[id];
+        // If the recipe lists the same ingredient twice
+        if (n > 0 && usedBy[id][n - 1] == r) {
+            return;
+        }
+        if (usedBy[id] == null) {
+            usedBy[id] = new int[2];
+        }
+        else if (n == usedBy[id].length) {
+            usedBy[id] = Arrays.copyOf(usedBy[id], n * 2);
+        }
+        usedBy[id][n] = r;
+        usedByCount[id] = n + 1;
+    }
+
+    /**
+     * Returns the id of an ingredient name, giving it the next one if it is new.
+     */
+    private int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+            if (id == usedBy.length) {
+                usedBy = Arrays.copyOf(usedBy, id * 2);
+                usedByCount = Arrays.copyOf(usedByCount, id * 2);
+            }
+            if (id / 64 == present.length) {
+                present = Arrays.copyOf(present, present.length * 2);
+            }
+            setPresent(id, fridge.getEffectiveQuantity(name) > 0);
+        }
+        return id;
+    }
+}
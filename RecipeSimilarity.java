@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Finds recipes with similar ingredients without comparing every pair.
+ *
+ * Each recipe's ingredient set gets a MinHash signature: for each of HASHES
+ * hash functions, the smallest hash of any of its ingredients. Two recipes
+ * agree on a signature slot about as often as their sets overlap (shared
+ * ingredients over all ingredients), so the share of matching slots
+ * estimates it. Signatures are cut into BANDS bands of ROWS slots and each
+ * band is bucketed (locality-sensitive hashing); recipes that overlap a lot
+ * almost surely share a bucket in some band, ones that barely do almost
+ * never. A query scores only the recipes in its own buckets.
+ *
+ * Signatures are kept as 16-bit values in one flat array, and each bucket as
+ * a chain of rows linked through a flat array, so the index costs a few
+ * hundred bytes a recipe and no objects per recipe.
+ *
+ * Owned by a Fridge and, like it, not thread-safe.
+ */
+public class RecipeSimilarity {
+    /** signature slots per recipe */
+    static final int HASHES = 48;
+    /** bands the signature is cut into */
+    static final int BANDS = 16;
+    /** slots per band */
+    static final int ROWS = HASHES / BANDS;
+    /** most rows looked at per bucket, so very common ingredient sets stay cheap */
+    private static final int MAX_BUCKET_SCAN = 256;
+
+    /** multipliers of the hash functions, odd */
+    private static final long[] MULTIPLIERS = new long[HASHES];
+    /** offsets of the hash functions */
+    private static final long[] OFFSETS = new long[HASHES];
+
+    static {
+        // Fixed seed so every fridge hashes alike
+        Random rnd = new Random(0x5eedL);
+        for (int i = 0; i < HASHES; i++) {
+            MULTIPLIERS[i] = rnd.nextLong() | 1;
+            OFFSETS[i] = rnd.nextLong();
+        }
+    }
+
+    /** recipes by row; null for a removed one */
+    private List<Recipe> recipes = new ArrayList<>();
+    /** number of removed rows */
+    private int removed;
+    /** rows by recipe */
+    private IdentityHashMap<Recipe, Integer> rowOf = new IdentityHashMap<>();
+    /** signatures, HASHES per row */
+    private char[] signatures = new char[16 * HASHES];
+    /** next row in the same bucket, BANDS per row; -1 ends a chain */
+    private int[] next = new int[16 * BANDS];
+    /** bucket keys, open addressing; 0 marks a free slot */
+    private long[] bucketKeys = new long[64];
+    /** first row of each bucket */
+    private int[] bucketHeads = new int[64];
+    /** number of buckets in use */
+    private int bucketCount;
+    /** when each row was last seen by a query */
+    private int[] seen = new int[16];
+    /** current query's stamp in seen */
+    private int stamp;
+
+    /**
+     * Adds a recipe to the index.
+     *
+     * @param recipe recipe to add
+     */
+    public void add(Recipe recipe) {
+        int r = recipes.size();
+        if (r == seen.length) {
+            signatures = Arrays.copyOf(signatures, signatures.length * 2);
+            next = Arrays.copyOf(next, next.length * 2);
+            seen = Arrays.copyOf(seen, seen.length * 2);
+        }
+        recipes.add(recipe);
+        rowOf.put(recipe, r);
+        char[] sig = signature(names(recipe));
+        System.arraycopy(sig, 0, signatures, r * HASHES, HASHES);
+        for (int b = 0; b < BANDS; b++) {
+            int slot = slot(bandKey(sig, b));
+            // New rows go first, so recent recipes are looked at first
+            next[r * BANDS + b] = bucketKeys[slot] == 0 ? -1 : bucketHeads[slot];
+            if (bucketKeys[slot] == 0) {
+                bucketKeys[slot] = bandKey(sig, b);
+                bucketCount++;
+            }
+            bucketHeads[slot] = r;
+            if (bucketCount * 2 > bucketKeys.length) {
+                rehash();
+            }
+        }
+    }
+
+    /**
+     * Removes a recipe from the index. Its row stays in the buckets, skipped,
+     * until most rows are removed; then the index is built again.
+     *
+     * @param recipe recipe to remove
+     */
+    public void remove(Recipe recipe) {
+        Integer r = rowOf.remove(recipe);
+        if (r == null) {
+            return;
+        }
+        recipes.set(r, null);
+        removed++;
+        if (removed > 64 && removed * 2 > recipes.size()) {
+            List<Recipe> live = new ArrayList<>(recipes.size() - removed);
+            for (Recipe kept : recipes) {
+                if (kept != null) {
+                    live.add(kept);
+                }
+            }
+            recipes = new ArrayList<>();
+            rowOf = new IdentityHashMap<>();
+            removed = 0;
+            Arrays.fill(bucketKeys, 0);
+            bucketCount = 0;
+            for (Recipe kept : live) {
+                add(kept);
+            }
+        }
+    }
+
+    /**
+     * Returns the recipes whose ingredients overlap most with a recipe's.
+     *
+     * @param recipe recipe to compare with
+     * @param limit most recipes to return
+     * @return other recipes, most similar first
+     */
+    public List<Recipe> similarTo(Recipe recipe, int limit) {
+        Integer r = rowOf.get(recipe);
+        char[] sig = r == null ? signature(names(recipe))
+            : Arrays.copyOfRange(signatures, r * HASHES, (r + 1) * HASHES);
+        return nearest(sig, recipe, limit);
+    }
+
+    /**
+     * Returns the recipes whose ingredients overlap most with a set of names.
+     *
+     * @param names normalized ingredient names
+     * @param exclude recipe to leave out, or null
+     * @param limit most recipes to return
+     * @return recipes, most similar first; empty if names is
+     */
+    public List<Recipe> similarTo(Collection<String> names, Recipe exclude, int limit) {
+        if (names.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return nearest(signature(names), exclude, limit);
+    }
+
+    /**
+     * Returns the estimated overlap of two recipes' ingredients.
+     *
+     * @param a a recipe in the index
+     * @param b another recipe in the index
+     * @return shared over all ingredients, 0 to 1
+     */
+    public double estimate(Recipe a, Recipe b) {
+        Integer ra = rowOf.get(a);
+        Integer rb = rowOf.get(b);
+        if (ra == null || rb == null) {
+            return 0;
+        }
+        return agreement(signatures, ra * HASHES, rb * HASHES) / (double) HASHES;
+    }
+
+    /** @return number of recipes */
+    public int size() {
+        return recipes.size() - removed;
+    }
+
+    /**
+     * Scores the rows sharing a bucket with a signature and keeps the best.
+     */
+    private List<Recipe> nearest(char[] sig, Recipe exclude, int limit) {
+        // No more can be found than are stored, so a huge limit does not size the arrays
+        limit = Math.max(0, Math.min(limit, size()));
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        stamp++;
+        int[] rows = new int[limit + 1];
+        int[] scores = new int[limit + 1];
+        int found = 0;
+        for (int b = 0; b < BANDS; b++) {
+            int slot = find(bandKey(sig, b));
+            int row = slot < 0 ? -1 : bucketHeads[slot];
+            for (int scanned = 0; row >= 0 && scanned < MAX_BUCKET_SCAN; scanned++, row = next[row * BANDS + b]) {
+                if (seen[row] == stamp || recipes.get(row) == null || recipes.get(row) == exclude) {
+                    continue;
+                }
+                seen[row] = stamp;
+                int score = agreement(sig, 0, signatures, row * HASHES);
+                // Insertion into the short best-so-far list; ties keep the older recipe first
+                int i = found;
+                while (i > 0 && (scores[i - 1] < score || scores[i - 1] == score && rows[i - 1] > row)) {
+                    scores[i] = scores[i - 1];
+                    rows[i] = rows[i - 1];
+                    i--;
+                }
+                if (i < limit) {
+                    scores[i] = score;
+                    rows[i] = row;
+                    found = Math.min(found + 1, limit);
+                }
+            }
+        }
+        List<Recipe> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add(recipes.get(rows[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the MinHash signature of a set of ingredient names.
+     */
+    private static char[] signature(Collection<String> names) {
+        char[] sig = new char[HASHES];
+        Arrays.fill(sig, Character.MAX_VALUE);
+        for (String name : names) {
+            long x = name.hashCode() * 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < HASHES; i++) {
+                char h = (char) ((MULTIPLIERS[i] * x + OFFSETS[i]) >>> 48);
+                if (h < sig[i]) {
+                    sig[i] = h;
+                }
+            }
+        }
+        return sig;
+    }
+
+    /** @return a recipe's distinct ingredient names */
+    private static Collection<String> names(Recipe recipe) {
+        HashSet<String> names = new HashSet<>();
+        for (IngredientLine line : recipe.getIngredients()) {
+            names.add(line.getNormalizedName());
+        }
+        return names;
+    }
+
+    /** @return number of matching slots between two signatures */
+    private static int agreement(char[] a, int from, char[] b, int bFrom) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[from + i] == b[bFrom + i]) {
+                same++;
+            }
+        }
+        return same;
+    }
+
+    /** @return number of matching slots between two stored signatures */
+    private static int agreement(char[] sigs, int a, int b) {
+        return agreement(sigs, a, sigs, b);
+    }
+
+    /**
+     * Returns the bucket key of one band of a signature; never 0.
+     */
+    private static long bandKey(char[] sig, int band) {
+        long k = band + 1;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            k = (k << 16) ^ sig[i];
+        }
+        k *= 0x9E3779B97F4A7C15L;
+        return k == 0 ? 1 : k;
+    }
+
+    /**
+     * Returns the slot holding a key, or the free slot where it would go.
+     */
+    private int slot(long key) {
+        int mask = bucketKeys.length - 1;
+        int i = (int) (key ^ (key >>> 32)) & mask;
+        while (bucketKeys[i] != 0 && bucketKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the slot holding a key, or -1 if there is none.
+     */
+    private int find(long key) {
+        int i = slot(key);
+        return bucketKeys[i] == 0 ? -1 : i;
+    }
+
+    /**
+     * Doubles the bucket table.
+     */
+    private void rehash() {
+        long[] oldKeys = bucketKeys;
+        int[] oldHeads = bucketHeads;
+        bucketKeys = new long[oldKeys.length * 2];
+        bucketHeads = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int s = slot(oldKeys[i]);
+                bucketKeys[s] = oldKeys[i];
+                bucketHeads[s] = oldHeads[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Recipe orderings used by the recipe page.
+ * Kept apart from App so they can run without the UI (background tasks, benchmarks).
+ */
+public class RecipeSorts {
+    /** sort times (see Metrics); cancelled sorts are not counted */
+    private static final Metrics.Timer SORT_AZ_TIMER = Metrics.timer("recipe.sort.az");
+    private static final Metrics.Timer SORT_AVAILABILITY_TIMER = Metrics.timer("recipe.sort.availability");
+    private static final Metrics.Timer SORT_EXPIRING_TIMER = Metrics.timer("recipe.sort.expiring");
+    private static final Metrics.Timer SORT_SERVINGS_TIMER = Metrics.timer("recipe.sort.servings");
+    
+    /**
+     * Sorts a list of recipes based on alphabetical order
+     * 
+     * @param recipes is the list of recipes 
+     * 
+     * Contributed by: Jessie Luo
+     */
+    public static void sortAZ(List<Recipe> recipes) {
+        long t = Metrics.start();
+        KitchenEvents.RecipeRanking event = new KitchenEvents.RecipeRanking();
+        event.begin();
+        for (int i = 0; i < recipes.size(); i++) {
+            // Stops early if a newer sort was requested
+            checkCancelled();
+            for (int j = i + 1; j < recipes.size(); j++) {
+                String name1 = recipes.get(i).getName();
+                String name2 = recipes.get(j).getName();
+                if (name1.compareToIgnoreCase(name2) > 0) {
+                    Recipe temp = recipes.get(i);
+                    recipes.set(i, recipes.get(j));
+                    recipes.set(j, temp);
+                }
+            }
+        }
+        SORT_AZ_TIMER.stop(t);
+        ranked(event, "az", recipes, null);
+    }
+    
+    /**
+     * Sorts a list of recipes based on ingredient availabilty 
+     * (moves recipes with less missing ingredients to the front)
+     * 
+     * @param recipes is the list of recipes 
+     * @param fridge fridge to check ingredients against
+     * 
+     * Contributed by: Jessie Luo
+     */
+    public static void sortByIngredientAvailability(List<Recipe> recipes, Fridge fridge) {
+        long t = Metrics.start();
+        KitchenEvents.RecipeRanking event = new KitchenEvents.RecipeRanking();
+        event.begin();
+        for (int i = 0; i < recipes.size(); i++) {
+            // Stops early if a newer sort was requested
+            checkCancelled();
+            for (int j = i + 1; j < recipes.size(); j++) {
+                double missing1 = recipes.get(i).getMissingIngredients(fridge);
+                double missing2 = recipes.get(j).getMissingIngredients(fridge);
+                if (missing1 > missing2) {
+                    Recipe temp = recipes.get(i);
+                    recipes.set(i, recipes.get(j));
+                    recipes.set(j, temp);
+                }
+            }
+        }
+        SORT_AVAILABILITY_TIMER.stop(t);
+        ranked(event, "availability", recipes, fridge);
+    }
+    
+    /**
+     * Sorts a list of recipes based on expirationdate 
+     * (moves recipes with ingredients that are expiring the soonest to the front)
+     * 
+     * @param recipes is the list of recipes 
+     * @param fridge fridge to check ingredients against
+     * 
+     * Contributed by: Jessie Luo
+     */
+    public static void sortByExpiringIngredients(List<Recipe> recipes, Fridge fridge) {
+        long t = Metrics.start();
+        KitchenEvents.RecipeRanking event = new KitchenEvents.RecipeRanking();
+        event.begin();
+        for (int i = 0; i < recipes.size(); i++) {
+            // Stops early if a newer sort was requested
+            checkCancelled();
+            for (int j = i + 1; j < recipes.size(); j++) {
+
+                long days1 = recipes.get(i).getEarliestExpirationDays(fridge);
+                long days2 = recipes.get(j).getEarliestExpirationDays(fridge);
+
+                if (days1 > days2) {
+                    Recipe temp = recipes.get(i);
+                    recipes.set(i, recipes.get(j));
+                    recipes.set(j, temp);
+                }
+            }
+        }
+        SORT_EXPIRING_TIMER.stop(t);
+        ranked(event, "expiring", recipes, fridge);
+    }
+    
+    /**
+     * Sorts recipes by how many servings the fridge has enough for, most first,
+     * then by name. The counts are kept up to date by the fridge, so this does
+     * not look at any ingredients.
+     * 
+     * @param recipes is the list of recipes
+     * @param fridge fridge to check ingredients against
+     */
+    public static void sortByServings(List<Recipe> recipes, Fridge fridge) {
+        long t = Metrics.start();
+        KitchenEvents.RecipeRanking event = new KitchenEvents.RecipeRanking();
+        event.begin();
+        checkCancelled();
+        recipes.sort(Comparator.comparingInt((Recipe r) -> fridge.getMaxServings(r)).reversed()
+            .thenComparing(Recipe::getName, String.CASE_INSENSITIVE_ORDER));
+        SORT_SERVINGS_TIMER.stop(t);
+        ranked(event, "servings", recipes, fridge);
+    }
+    
+    /**
+     * Throws if the thread running the sort was interrupted, as FridgeTasks
+     * does to cancel a stale request. Checked here rather than through
+     * FridgeTasks, so the server and benchmarks do not need JavaFX.
+     */
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Finishes a flight recorder event for a ranking pass.
+     * 
+     * @param event started event
+     * @param order name of the ordering
+     * @param recipes recipes ranked
+     * @param fridge fridge ranked against, or null
+     */
+    private static void ranked(KitchenEvents.RecipeRanking event, String order, List<Recipe> recipes, Fridge fridge) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.order = order;
+            event.recipeCount = recipes.size();
+            if (fridge != null) {
+                event.itemCount = fridge.getItemCount();
+            }
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a fridge's recipes in step with a directory of recipe text files.
+ *
+ * Each .txt file is one recipe, named after the file. A created file is
+ * added, a deleted one removed, and a changed one replaced. Changes are
+ * noticed through a WatchService instead of rescanning the directory. Editors
+ * and copies fire bursts of events for one file, so events are gathered until
+ * the directory has been quiet for DEBOUNCE_MILLIS (or MAX_DELAY_MILLIS have
+ * passed) and each file is then looked at once. A file whose modification
+ * time and size are unchanged is not read again; one that is read again but
+ * has the same content hash (see Recipe.getContentHash) is left alone.
+ *
+ * Files are parsed on the watcher's own thread. The changes found in one
+ * pass are applied together on the fridge's owner thread.
+ */
+public class RecipeWatcher {
+    /** quiet time that ends a burst of events */
+    private static final long DEBOUNCE_MILLIS = 250;
+    /** longest a change waits while events keep coming */
+    private static final long MAX_DELAY_MILLIS = 2000;
+    /** image shown for watched recipes */
+    private static final String IMAGE = "fooditem-images/default_recipe.png";
+    private static final Metrics.Counter RELOADS = Metrics.counter("recipes.reloaded");
+    private static final Metrics.Counter SKIPPED = Metrics.counter("recipes.unchanged");
+
+    /** fridge whose recipes follow the directory */
+    private Fridge fridge;
+    /** watched directory */
+    private Path dir;
+    /** runs changes on the fridge's owner thread, in order */
+    private Executor fridgeThread;
+    /** what is known of each recipe file; used by the watcher thread only */
+    private Map<Path, Tracked> tracked = new HashMap<>();
+    /** the open watch service, or null */
+    private volatile WatchService watcher;
+    /** whether to keep watching */
+    private volatile boolean running;
+
+    /**
+     * What was last seen of one recipe file.
+     */
+    private static class Tracked {
+        /** modification time in milliseconds */
+        long modified;
+        /** size in bytes */
+        long size;
+        /** the recipe loaded from it, or null if it did not parse */
+        Recipe recipe;
+    }
+
+    /**
+     * Creates a watcher for a directory.
+     *
+     * @param fridge fridge whose recipes follow the directory
+     * @param dir directory of recipe text files
+     * @param fridgeThread runs changes on the fridge's owner thread, in order
+     */
+    public RecipeWatcher(Fridge fridge, Path dir, Executor fridgeThread) {
+        this.fridge = fridge;
+        this.dir = dir;
+        this.fridgeThread = fridgeThread;
+    }
+
+    /**
+     * Loads the directory's recipes and starts watching it in the background.
+     *
+     * @throws IOException if the directory cannot be watched
+     */
+    public void start() throws IOException {
+        watcher = dir.getFileSystem().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        running = true;
+        Thread t = new Thread(this::watchLoop, "mealcraft-recipe-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Stops watching. Recipes loaded so far stay in the fridge.
+     */
+    public void stop() {
+        running = false;
+        WatchService w = watcher;
+        if (w != null) {
+            try {
+                w.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /** @return the watched directory */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Scans once, then gathers events into batches until stopped.
+     */
+    private void watchLoop() {
+        sync(listFiles());
+        try {
+            while (running) {
+                WatchKey key = watcher.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+                // Gathers events until the directory is quiet or the change has waited long enough
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        }
+                        else if (isRecipeFile((Path) event.context())) {
+                            changed.add(dir.resolve((Path) event.context()));
+                        }
+                    }
+                    // If the directory itself went away
+                    if (!key.reset()) {
+                        running = false;
+                        break;
+                    }
+                    long wait = Math.min(DEBOUNCE_MILLIS, deadline - System.currentTimeMillis());
+                    key = wait <= 0 ? null : watcher.poll(wait, TimeUnit.MILLISECONDS);
+                }
+                // Events were lost, so every file is checked; unchanged ones are still not read
+                if (overflow) {
+                    changed.addAll(tracked.keySet());
+                    changed.addAll(listFiles());
+                }
+                sync(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Looks at some recipe files and applies what changed to the fridge.
+     *
+     * @param files paths in the directory, existing or not
+     */
+    private void sync(Set<Path> files) {
+        List<Recipe> gone = new ArrayList<>();
+        List<Recipe> added = new ArrayList<>();
+        // Kept recipes and the rereads whose step locations they take
+        List<Recipe[]> moved = new ArrayList<>();
+        for (Path file : files) {
+            Tracked old = tracked.get(file);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // If it was deleted
+                if (old != null) {
+                    tracked.remove(file);
+                    if (old.recipe != null) {
+                        gone.add(old.recipe);
+                    }
+                }
+                continue;
+            }
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (old != null && old.modified == modified && old.size == attrs.size()) {
+                SKIPPED.inc();
+                continue;
+            }
+            Tracked now = new Tracked();
+            now.modified = modified;
+            now.size = attrs.size();
+            now.recipe = load(file);
+            tracked.put(file, now);
+            Recipe before = old == null ? null : old.recipe;
+            // If only the timestamp or layout changed, the stored recipe stays but reads its steps from where they are now
+            if (before != null && now.recipe != null && before.getContentHash() == now.recipe.getContentHash()) {
+                moved.add(new Recipe[] {before, now.recipe});
+                now.recipe = before;
+                SKIPPED.inc();
+                continue;
+            }
+            if (before != null) {
+                gone.add(before);
+            }
+            if (now.recipe != null) {
+                added.add(now.recipe);
+                RELOADS.inc();
+            }
+        }
+        if (!gone.isEmpty() || !added.isEmpty() || !moved.isEmpty()) {
+            fridgeThread.execute(() -> {
+                for (Recipe[] m : moved) {
+                    m[0].moveSteps(m[1]);
+                }
+                for (Recipe r : gone) {
+                    fridge.removeRecipe(r);
+                }
+                for (Recipe r : added) {
+                    fridge.addRecipe(r);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads a recipe file's ingredients, leaving the steps on disk.
+     *
+     * @return the recipe, or null if it cannot be read
+     */
+    private Recipe load(Path file) {
+        File f = file.toFile();
+        try {
+            return Recipe.headerFromTxtFile(f.getName().replaceFirst("\\.txt$", ""), f, IMAGE, fridge);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** @return the recipe files now in the directory */
+    private Set<Path> listFiles() {
+        Set<Path> files = new LinkedHashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.txt")) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        } catch (IOException e) {
+            // Left to the events
+        }
+        return files;
+    }
+
+    /** @return true for names ending in .txt */
+    private static boolean isRecipeFile(Path name) {
+        return name.toString().endsWith(".txt");
+    }
+}
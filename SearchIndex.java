@@ -0,0 +1,536 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * In-memory search index over food items and recipes.
+ * Words are stored in a sorted map for search-as-you-type prefix lookups,
+ * and in a trigram map so that misspelled words can still be matched.
+ * The index is updated one document at a time as the Fridge changes.
+ * The Fridge keeps one index for items and one for recipes, so a query
+ * never has to walk documents of the other kind.
+ * Recipes are indexed by name and ingredients only. Steps of imported
+ * recipes stay on disk until shown, and indexing them would read every file
+ * at import and keep most of the catalog's words as postings.
+ */
+public class SearchIndex {
+    /** score for a match in a name */
+    private static final int NAME_WEIGHT = 3;
+    /** score for a match in an ingredient line */
+    private static final int INGREDIENT_WEIGHT = 2;
+    /** score multiplier for an exact word match over a prefix match */
+    private static final int EXACT_BONUS = 2;
+    /** most similar words tried for one misspelled word */
+    private static final int MAX_FUZZY_WORDS = 8;
+
+    /** indexed documents by id (null once removed) */
+    private List<Object> docs;
+    /** document ids by document */
+    private IdentityHashMap<Object, Integer> idOf;
+    /** free document ids */
+    private ArrayDeque<Integer> freeIds;
+    /** word -> documents using it, grouped by field weight */
+    private TreeMap<String, Posting> postings;
+    /** trigram -> words containing it */
+    private HashMap<String, Set<String>> wordsByGram;
+    /** document id -> (word -> field weight) */
+    private HashMap<Integer, HashMap<String, Integer>> wordsOf;
+
+    /**
+     * Creates an empty index.
+     */
+    public SearchIndex() {
+        docs = new ArrayList<>();
+        idOf = new IdentityHashMap<>();
+        freeIds = new ArrayDeque<>();
+        postings = new TreeMap<>();
+        wordsByGram = new HashMap<>();
+        wordsOf = new HashMap<>();
+    }
+
+    /**
+     * Indexes a food item by its name.
+     *
+     * @param item item to index
+     */
+    public void add(FoodItem item) {
+        if (item == null || idOf.containsKey(item)) {
+            return;
+        }
+        KitchenEvents.IndexUpdate event = new KitchenEvents.IndexUpdate();
+        event.begin();
+        int id = newId(item);
+        addText(id, item.getName(), NAME_WEIGHT);
+        commit(event, "add", item);
+    }
+
+    /**
+     * Indexes a recipe by its name and ingredient lines.
+     *
+     * @param recipe recipe to index
+     */
+    public void add(Recipe recipe) {
+        if (recipe == null || idOf.containsKey(recipe)) {
+            return;
+        }
+        KitchenEvents.IndexUpdate event = new KitchenEvents.IndexUpdate();
+        event.begin();
+        int id = newId(recipe);
+        addText(id, recipe.getName(), NAME_WEIGHT);
+        for (IngredientLine line : recipe.getIngredients()) {
+            addText(id, line.getNormalizedName(), INGREDIENT_WEIGHT);
+        }
+        commit(event, "add", recipe);
+    }
+
+    /**
+     * Removes a food item or recipe from the index.
+     *
+     * @param doc item or recipe to remove
+     */
+    public void remove(Object doc) {
+        Integer id = idOf.remove(doc);
+        if (id == null) {
+            return;
+        }
+        KitchenEvents.IndexUpdate event = new KitchenEvents.IndexUpdate();
+        event.begin();
+
+        // Drops the document from each of its words
+        for (Map.Entry<String, Integer> e : wordsOf.remove(id).entrySet()) {
+            String word = e.getKey();
+            Posting posting = postings.get(word);
+            posting.remove(id, e.getValue());
+            // If no document uses the word anymore
+            if (posting.isEmpty()) {
+                postings.remove(word);
+                for (String gram : grams(word)) {
+                    Set<String> words = wordsByGram.get(gram);
+                    // If the word repeats a gram, as in "r1111", its set may already be gone
+                    if (words == null) {
+                        continue;
+                    }
+                    words.remove(word);
+                    if (words.isEmpty()) {
+                        wordsByGram.remove(gram);
+                    }
+                }
+            }
+        }
+
+        docs.set(id, null);
+        freeIds.push(id);
+        commit(event, "remove", doc);
+    }
+
+    /**
+     * Searches food items.
+     *
+     * @param query search text; the last word may be a partial word
+     * @param category only items in this category, or null for all
+     * @param limit maximum number of results
+     * @return matching items, best match first
+     */
+    public List<FoodItem> searchFood(String query, Category category, int limit) {
+        List<FoodItem> found = new ArrayList<>();
+        for (Object doc : search(query, limit, d -> d instanceof FoodItem && (category == null || ((FoodItem) d).getCategory() == category))) {
+            found.add((FoodItem) doc);
+        }
+        return found;
+    }
+
+    /**
+     * Searches recipes.
+     *
+     * @param query search text; the last word may be a partial word
+     * @param limit maximum number of results
+     * @return matching recipes, best match first
+     */
+    public List<Recipe> searchRecipes(String query, int limit) {
+        List<Recipe> found = new ArrayList<>();
+        for (Object doc : search(query, limit, d -> d instanceof Recipe)) {
+            found.add((Recipe) doc);
+        }
+        return found;
+    }
+
+    /** @return number of indexed documents */
+    public int size() {
+        return idOf.size();
+    }
+
+    /**
+     * Finishes a flight recorder event for a change to the index.
+     *
+     * @param event started event
+     * @param operation add or remove
+     * @param doc the document changed
+     */
+    private void commit(KitchenEvents.IndexUpdate event, String operation, Object doc) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            if (doc instanceof Recipe) {
+                event.index = "recipe search";
+                event.recipeCount = size();
+            }
+            else {
+                event.index = "item search";
+                event.itemCount = size();
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Finds documents that match every word of the query.
+     * Only the documents of the rarest query word are visited, best score first,
+     * so broad one-word queries stop as soon as enough results are found.
+     */
+    private List<Object> search(String query, int limit, Predicate<Object> filter) {
+        List<Object> found = new ArrayList<>();
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return found;
+        }
+
+        // Finds the indexed words each query word matches
+        List<HashMap<String, Integer>> matched = new ArrayList<>();
+        int rarest = 0;
+        long rarestCount = Long.MAX_VALUE;
+        for (int i = 0; i < words.size(); i++) {
+            HashMap<String, Integer> m = matchWord(words.get(i));
+            // If any word matches nothing, nothing matches them all
+            if (m.isEmpty()) {
+                return found;
+            }
+            long count = 0;
+            for (String w : m.keySet()) {
+                count += postings.get(w).size();
+            }
+            if (count < rarestCount) {
+                rarestCount = count;
+                rarest = i;
+            }
+            matched.add(m);
+        }
+
+        // Orders the rarest word's documents by score
+        List<Bucket> buckets = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : matched.get(rarest).entrySet()) {
+            Posting posting = postings.get(e.getKey());
+            for (int weight = INGREDIENT_WEIGHT; weight <= NAME_WEIGHT; weight++) {
+                Set<Integer> ids = posting.get(weight);
+                if (ids != null && !ids.isEmpty()) {
+                    buckets.add(new Bucket(ids, weight * e.getValue()));
+                }
+            }
+        }
+        buckets.sort((a, b) -> Integer.compare(b.score, a.score));
+
+        // Keeps the best matches that pass the filter; of equal scores, the first found
+        PriorityQueue<int[]> best = new PriorityQueue<>((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(b[2], a[2]));
+        HashSet<Integer> seen = new HashSet<>();
+        // Most the other query words can add to a score, from the best field each matched in
+        int maxOther = 0;
+        for (int i = 0; i < words.size(); i++) {
+            if (i != rarest) {
+                int most = 0;
+                for (Map.Entry<String, Integer> e : matched.get(i).entrySet()) {
+                    most = Math.max(most, postings.get(e.getKey()).maxWeight() * e.getValue());
+                }
+                maxOther += most;
+            }
+        }
+        int order = 0;
+        for (Bucket bucket : buckets) {
+            for (int id : bucket.ids) {
+                // If no remaining document can beat the current results
+                if (best.size() >= limit && bucket.score + maxOther <= best.peek()[1]) {
+                    break;
+                }
+                if (!seen.add(id) || !filter.test(docs.get(id))) {
+                    continue;
+                }
+
+                // With one word, the buckets are already best first
+                if (words.size() == 1) {
+                    found.add(docs.get(id));
+                    if (found.size() >= limit) {
+                        return found;
+                    }
+                    continue;
+                }
+
+                int score = score(id, matched);
+                if (score > 0) {
+                    best.add(new int[] { id, score, order++ });
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+
+        while (!best.isEmpty()) {
+            found.add(docs.get(best.poll()[0]));
+        }
+        Collections.reverse(found);
+        return found;
+    }
+
+    /**
+     * Scores a document against every query word, or returns 0 if some word is missing.
+     */
+    private int score(int id, List<HashMap<String, Integer>> matched) {
+        HashMap<String, Integer> own = wordsOf.get(id);
+        int total = 0;
+        for (HashMap<String, Integer> m : matched) {
+            int best = 0;
+            // Loops over whichever word list is shorter
+            if (m.size() < own.size()) {
+                for (Map.Entry<String, Integer> e : m.entrySet()) {
+                    Integer weight = own.get(e.getKey());
+                    if (weight != null) {
+                        best = Math.max(best, weight * e.getValue());
+                    }
+                }
+            }
+            else {
+                for (Map.Entry<String, Integer> e : own.entrySet()) {
+                    Integer bonus = m.get(e.getKey());
+                    if (bonus != null) {
+                        best = Math.max(best, bonus * e.getValue());
+                    }
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Finds the indexed words a query word matches, with a score bonus for each:
+     * exact words first, then words starting with it,
+     * then (if nothing matched) words within a small edit distance.
+     */
+    private HashMap<String, Integer> matchWord(String word) {
+        HashMap<String, Integer> matches = new HashMap<>();
+
+        // Exact and prefix matches
+        for (String w : postings.subMap(word, true, word + Character.MAX_VALUE, false).keySet()) {
+            // Exact words count double so they rank ahead of longer words
+            matches.put(w, w.equals(word) ? EXACT_BONUS : 1);
+        }
+
+        // Typo tolerance
+        if (matches.isEmpty()) {
+            for (String similar : similarWords(word)) {
+                matches.put(similar, 1);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns indexed words close to a misspelled word, using shared trigrams to find candidates.
+     */
+    private List<String> similarWords(String word) {
+        // Counts shared trigrams per candidate word
+        HashMap<String, Integer> shared = new HashMap<>();
+        for (String gram : grams(word)) {
+            Set<String> words = wordsByGram.get(gram);
+            if (words != null) {
+                for (String w : words) {
+                    shared.merge(w, 1, Integer::sum);
+                }
+            }
+        }
+
+        // Longer words may have more typos
+        int maxEdits = word.length() <= 4 ? 1 : 2;
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>(shared.entrySet());
+        candidates.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+
+        List<String> similar = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : candidates) {
+            if (similar.size() >= MAX_FUZZY_WORDS) {
+                break;
+            }
+            String w = e.getKey();
+            if (Math.abs(w.length() - word.length()) <= maxEdits && editDistance(w, word, maxEdits) <= maxEdits) {
+                similar.add(w);
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Levenshtein distance between two words, giving up once it is past max.
+     */
+    private static int editDistance(String a, String b, int max) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            // If every path is already too long
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[b.length()];
+    }
+
+    /**
+     * Gives a document an id, reusing ids of removed documents.
+     */
+    private int newId(Object doc) {
+        int id;
+        if (freeIds.isEmpty()) {
+            id = docs.size();
+            docs.add(doc);
+        }
+        else {
+            id = freeIds.pop();
+            docs.set(id, doc);
+        }
+        idOf.put(doc, id);
+        wordsOf.put(id, new HashMap<>());
+        return id;
+    }
+
+    /**
+     * Indexes every word of a piece of text for a document.
+     */
+    private void addText(int id, String text, int weight) {
+        HashMap<String, Integer> own = wordsOf.get(id);
+        for (String word : tokenize(text)) {
+            Integer old = own.get(word);
+            // If the word is already indexed for a more important field
+            if (old != null && old >= weight) {
+                continue;
+            }
+
+            Posting posting = postings.get(word);
+            // If this is a new word
+            if (posting == null) {
+                posting = new Posting();
+                postings.put(word, posting);
+                for (String gram : grams(word)) {
+                    wordsByGram.computeIfAbsent(gram, g -> new HashSet<>()).add(word);
+                }
+            }
+            if (old != null) {
+                posting.remove(id, old);
+            }
+            posting.add(id, weight);
+            own.put(word, weight);
+        }
+    }
+
+    /**
+     * Splits text into lowercase words.
+     */
+    private static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        for (String w : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                words.add(w);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the trigrams of a word, padded so short words still have some.
+     */
+    private static List<String> grams(String word) {
+        String padded = "^" + word + "$";
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Documents using one word, grouped by the weight of the field the word appears in.
+     */
+    private static class Posting {
+        /** document ids per weight (index 0 is weight 1, which no field has now) */
+        private List<Set<Integer>> byWeight = new ArrayList<>(Arrays.asList(null, null, null));
+        /** number of documents */
+        private int size;
+
+        /** @return ids with the given weight, or null */
+        Set<Integer> get(int weight) {
+            return byWeight.get(weight - 1);
+        }
+
+        void add(int id, int weight) {
+            if (byWeight.get(weight - 1) == null) {
+                byWeight.set(weight - 1, new HashSet<>());
+            }
+            if (byWeight.get(weight - 1).add(id)) {
+                size++;
+            }
+        }
+
+        void remove(int id, int weight) {
+            Set<Integer> ids = byWeight.get(weight - 1);
+            if (ids != null && ids.remove(id)) {
+                size--;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** @return highest weight any document has the word at, or 0 if none */
+        int maxWeight() {
+            for (int weight = byWeight.size(); weight > 0; weight--) {
+                if (byWeight.get(weight - 1) != null && !byWeight.get(weight - 1).isEmpty()) {
+                    return weight;
+                }
+            }
+            return 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    /**
+     * A group of documents that all score the same for a query word.
+     */
+    private static class Bucket {
+        /** document ids */
+        private Set<Integer> ids;
+        /** score of each document */
+        private int score;
+
+        Bucket(Set<Integer> ids, int score) {
+            this.ids = ids;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.*;
+
+/**
+ * Ingredients that can stand in for others, such as margarine for butter.
+ *
+ * Each substitution has a ratio: how much of the substitute replaces one of
+ * the original, in thousandths (see Quantity). Substitutes chain, so if
+ * margarine stands in for butter and oil for margarine, oil stands in for
+ * butter at the two ratios multiplied. The chains are worked out once when a
+ * substitution is added, not on every question: for each ingredient,
+ * everything reachable, fewest steps first, then the cheapest ratio.
+ *
+ * Owned by a Fridge and, like it, not thread-safe.
+ */
+public class Substitutions {
+    /** direct substitutes of each ingredient, with their ratios */
+    private Map<String, Map<String, Long>> direct = new TreeMap<>();
+    /** every substitute reachable from each ingredient, best first */
+    private Map<String, List<Substitute>> closure = new HashMap<>();
+    /** ingredients each substitute can stand in for */
+    private Map<String, List<String>> usedFor = new HashMap<>();
+
+    /**
+     * One ingredient that can stand in for another.
+     */
+    public static class Substitute {
+        /** normalized name of the substitute */
+        private final String name;
+        /** substitute needed per one of the original, in thousandths */
+        private final long ratio;
+        /** substitutions chained to get here */
+        private final int steps;
+
+        Substitute(String name, long ratio, int steps) {
+            this.name = name;
+            this.ratio = ratio;
+            this.steps = steps;
+        }
+
+        /** @return normalized name of the substitute */
+        public String getName() {
+            return name;
+        }
+
+        /** @return substitute needed per one of the original, in thousandths */
+        public long getRatio() {
+            return ratio;
+        }
+
+        /** @return substitutions chained to get here; 1 for a direct one */
+        public int getSteps() {
+            return steps;
+        }
+
+        /**
+         * Returns how much of the original an amount of this substitute covers.
+         *
+         * @param amount amount of the substitute in thousandths
+         * @return amount of the original in thousandths, rounded down
+         */
+        public long covers(long amount) {
+            return Math.multiplyExact(amount, Quantity.SCALE) / ratio;
+        }
+
+        /**
+         * Returns how much of this substitute replaces an amount of the original.
+         *
+         * @param amount amount of the original in thousandths
+         * @return amount of the substitute in thousandths, rounded up
+         */
+        public long needed(long amount) {
+            return (Math.multiplyExact(amount, ratio) + Quantity.SCALE - 1) / Quantity.SCALE;
+        }
+    }
+
+    /**
+     * Adds or replaces a substitution and works the chains out again.
+     *
+     * @param from ingredient that can be replaced
+     * @param to ingredient that replaces it
+     * @param ratio amount of to per one of from, in thousandths
+     * @throws IllegalArgumentException if the ratio is not positive or from and to are the same
+     */
+    public void add(String from, String to, long ratio) {
+        String f = from.toLowerCase().trim();
+        String t = to.toLowerCase().trim();
+        if (ratio <= 0 || f.equals(t)) {
+            throw new IllegalArgumentException("A substitution needs two ingredients and a positive ratio");
+        }
+        direct.computeIfAbsent(f, k -> new TreeMap<>()).put(t, ratio);
+        rebuild();
+    }
+
+    /**
+     * Removes a substitution.
+     *
+     * @param from ingredient that could be replaced
+     * @param to ingredient that replaced it
+     * @return true if there was one
+     */
+    public boolean remove(String from, String to) {
+        Map<String, Long> subs = direct.get(from.toLowerCase().trim());
+        if (subs == null || subs.remove(to.toLowerCase().trim()) == null) {
+            return false;
+        }
+        if (subs.isEmpty()) {
+            direct.remove(from.toLowerCase().trim());
+        }
+        rebuild();
+        return true;
+    }
+
+    /** @return true if there are no substitutions */
+    public boolean isEmpty() {
+        return direct.isEmpty();
+    }
+
+    /**
+     * Returns the direct substitutions as added.
+     *
+     * @return ratios by substitute, by original ingredient, in name order
+     */
+    public Map<String, Map<String, Long>> getDirect() {
+        return Collections.unmodifiableMap(direct);
+    }
+
+    /**
+     * Returns everything that can stand in for an ingredient.
+     *
+     * @param name normalized ingredient name
+     * @return substitutes, fewest steps first then cheapest; empty if none
+     */
+    public List<Substitute> of(String name) {
+        return closure.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * Returns the ingredients a substitute can stand in for.
+     *
+     * @param name normalized name of the substitute
+     * @return ingredient names; empty if none
+     */
+    public List<String> usedFor(String name) {
+        return usedFor.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * Works out every ingredient's reachable substitutes, breadth first so
+     * each is reached by the fewest steps.
+     */
+    private void rebuild() {
+        closure = new HashMap<>();
+        usedFor = new HashMap<>();
+        for (String start : direct.keySet()) {
+            Map<String, Substitute> best = new HashMap<>();
+            List<Substitute> frontier = List.of(new Substitute(start, Quantity.SCALE, 0));
+            for (int steps = 1; !frontier.isEmpty(); steps++) {
+                Map<String, Substitute> next = new HashMap<>();
+                for (Substitute s : frontier) {
+                    for (Map.Entry<String, Long> e : direct.getOrDefault(s.name, Collections.emptyMap()).entrySet()) {
+                        String to = e.getKey();
+                        if (to.equals(start) || best.containsKey(to)) {
+                            continue;
+                        }
+                        long ratio = Math.max(1, Math.multiplyExact(s.ratio, e.getValue()) / Quantity.SCALE);
+                        Substitute seen = next.get(to);
+                        if (seen == null || ratio < seen.ratio) {
+                            next.put(to, new Substitute(to, ratio, steps));
+                        }
+                    }
+                }
+                best.putAll(next);
+                frontier = new ArrayList<>(next.values());
+            }
+            List<Substitute> list = new ArrayList<>(best.values());
+            list.sort(Comparator.comparingInt(Substitute::getSteps).thenComparingLong(Substitute::getRatio)
+                .thenComparing(Substitute::getName));
+            closure.put(start, list);
+            for (Substitute s : list) {
+                usedFor.computeIfAbsent(s.name, k -> new ArrayList<>()).add(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded undo and redo history of a fridge's inventory changes.
+ *
+ * Each step keeps only how to reverse what it did: a quantity difference, or
+ * the category or date before and after. Names, categories and dates are the
+ * fridge's own objects, not copies, and an item is kept only when the step
+ * created or removed it, so a step costs a few dozen bytes and undoing one
+ * touches only the items it changed. Changes made
+ * between begin and end form one step; any other change is a step by itself.
+ * A new step clears the redo history, and the oldest steps are dropped past
+ * the limit. A removal also keeps whether it was consumed or wasted and on
+ * what day, so undoing it can take that usage back out of the history.
+ *
+ * Owned by a Fridge and, like it, not thread-safe.
+ */
+public class UndoHistory {
+    /** steps kept by default */
+    public static final int DEFAULT_STEPS = 1000;
+
+    /** what an edit changed */
+    enum Kind { QUANTITY, CATEGORY, EXPIRES }
+
+    /**
+     * One reversible change to one item.
+     */
+    static class Edit {
+        /** what changed */
+        final Kind kind;
+        /** normalized item name */
+        final String name;
+        /** quantity added in thousandths, negative for a removal */
+        final long delta;
+        /** category or date before; for a removal, its ConsumptionHistory.Kind or null */
+        final Object before;
+        /** category or date after; for a removal, the day it was recorded for */
+        final Object after;
+        /** the item as it was, if the edit created or removed it; null otherwise */
+        final FoodItem item;
+        /** edit made before this one in the same step, or null */
+        Edit prev;
+
+        private Edit(Kind kind, String name, long delta, Object before, Object after, FoodItem item) {
+            this.kind = kind;
+            this.name = name;
+            this.delta = delta;
+            this.before = before;
+            this.after = after;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Changes undone and redone together.
+     */
+    static class Step {
+        /** shown on the undo and redo buttons */
+        final String label;
+        /** newest edit; older ones follow through prev */
+        Edit last;
+
+        Step(String label) {
+            this.label = label;
+        }
+    }
+
+    /** most steps kept */
+    private final int maxSteps;
+    /** steps that can be undone, newest last */
+    private ArrayDeque<Step> undo = new ArrayDeque<>();
+    /** steps that can be redone, newest last */
+    private ArrayDeque<Step> redo = new ArrayDeque<>();
+    /** step being gathered between begin and end, or null */
+    private Step open;
+    /** begin calls not yet ended */
+    private int depth;
+
+    /**
+     * Creates a history of DEFAULT_STEPS steps.
+     */
+    public UndoHistory() {
+        this(DEFAULT_STEPS);
+    }
+
+    /**
+     * Creates a history.
+     *
+     * @param maxSteps most steps kept, at least 1
+     */
+    public UndoHistory(int maxSteps) {
+        this.maxSteps = Math.max(1, maxSteps);
+    }
+
+    /** @return an edit that added an amount, or removed it if negative */
+    static Edit quantity(String name, long delta, FoodItem item) {
+        return new Edit(Kind.QUANTITY, name, delta, null, null, item);
+    }
+
+    /** @return an edit that removed an amount, recorded as a use of a kind on a day, or as a correction if kind is null */
+    static Edit removal(String name, long amount, FoodItem item, ConsumptionHistory.Kind kind, LocalDate day) {
+        return new Edit(Kind.QUANTITY, name, -amount, kind, day, item);
+    }
+
+    /** @return an edit that moved an item between categories */
+    static Edit category(String name, Category before, Category after) {
+        return new Edit(Kind.CATEGORY, name, 0, before, after, null);
+    }
+
+    /** @return an edit that changed an item's expiration date */
+    static Edit expires(String name, LocalDate before, LocalDate after) {
+        return new Edit(Kind.EXPIRES, name, 0, before, after, null);
+    }
+
+    /**
+     * Starts gathering changes into one step. Calls may nest; the step ends
+     * with the outermost end.
+     *
+     * @param label what the step did, e.g. "Edit milk"
+     */
+    public void begin(String label) {
+        if (depth++ == 0) {
+            open = new Step(label);
+        }
+    }
+
+    /**
+     * Ends a step started by begin. A step that changed nothing is dropped.
+     */
+    public void end() {
+        if (depth == 0 || --depth > 0) {
+            return;
+        }
+        if (open.last != null) {
+            push(open);
+        }
+        open = null;
+    }
+
+    /**
+     * Records a change, in the open step or as a step by itself.
+     *
+     * @param edit the change
+     */
+    void record(Edit edit) {
+        if (open != null) {
+            edit.prev = open.last;
+            open.last = edit;
+            return;
+        }
+        Step step = new Step(describe(edit));
+        step.last = edit;
+        push(step);
+    }
+
+    /**
+     * Takes the newest step to undo and keeps it for redo.
+     *
+     * @return the step, or null if there is none
+     */
+    Step popUndo() {
+        Step step = open == null ? undo.pollLast() : null;
+        if (step != null) {
+            redo.addLast(step);
+        }
+        return step;
+    }
+
+    /**
+     * Takes the newest undone step to redo and keeps it for undo.
+     *
+     * @return the step, or null if there is none
+     */
+    Step popRedo() {
+        Step step = open == null ? redo.pollLast() : null;
+        if (step != null) {
+            undo.addLast(step);
+        }
+        return step;
+    }
+
+    /** @return true if there is a step to undo */
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    /** @return true if there is a step to redo */
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /** @return what the next undo reverses, or null */
+    public String getUndoLabel() {
+        return undo.isEmpty() ? null : undo.peekLast().label;
+    }
+
+    /** @return what the next redo repeats, or null */
+    public String getRedoLabel() {
+        return redo.isEmpty() ? null : redo.peekLast().label;
+    }
+
+    /** @return number of steps that can be undone */
+    public int size() {
+        return undo.size();
+    }
+
+    /**
+     * Adds a finished step, dropping the oldest past the limit.
+     */
+    private void push(Step step) {
+        undo.addLast(step);
+        if (undo.size() > maxSteps) {
+            undo.pollFirst();
+        }
+        redo.clear();
+    }
+
+    /** @return a label for a change made outside begin and end */
+    private static String describe(Edit edit) {
+        switch (edit.kind) {
+            case QUANTITY:
+                return (edit.delta > 0 ? "Add " : "Remove ") + edit.name;
+            case CATEGORY:
+                return "Move " + edit.name;
+            default:
+                return "Change " + edit.name;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Hands out one shared instance per distinct value, for as long as anything
+ * still uses it. An entry goes away with the last user of its value, so a
+ * long-running process that keeps loading and dropping values, such as
+ * hot-reloaded recipes, does not keep every one it has seen.
+ *
+ * Values must not change once interned. Thread-safe.
+ */
+public class WeakInterner<T> {
+    /** shared instances, each its own key; both held weakly */
+    private final WeakHashMap<T, WeakReference<T>> shared = new WeakHashMap<>();
+
+    /**
+     * Returns the shared instance equal to a value.
+     *
+     * @param value value to look up
+     * @return the shared instance, or null if there is none
+     */
+    public synchronized T get(T value) {
+        WeakReference<T> ref = shared.get(value);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Returns the shared instance equal to a value, making the value the
+     * shared one if there is none.
+     *
+     * @param value value to share
+     * @return the shared instance
+     */
+    public synchronized T intern(T value) {
+        T existing = get(value);
+        if (existing != null) {
+            return existing;
+        }
+        shared.put(value, new WeakReference<>(value));
+        return value;
+    }
+
+    /** @return number of shared instances still in use, or about to be dropped */
+    public synchronized int size() {
+        return shared.size();
+    }
+}
@@ -0,0 +1,147 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for FridgeServer. Several clients send a mix of reads and writes
+ * for a fixed time, then throughput and latency percentiles are printed.
+ *
+ * Usage: java -cp target/benchmarks.jar FridgeLoadTest [baseUrl] [clients] [seconds]
+ * (defaults: http://localhost:8080, 32 clients, 10 seconds)
+ */
+public class FridgeLoadTest {
+    /** items seeded before the run */
+    private static final int SEED_ITEMS = 200;
+    /** request kinds, in the order of their share below */
+    private static final String[] KINDS = { "GET /inventory", "GET /expiring", "GET /low-stock", "GET /recipes", "POST /inventory", "DELETE /inventory" };
+    /** percent of requests of each kind */
+    private static final int[] SHARE = { 45, 15, 10, 10, 15, 5 };
+
+    public static void main(String[] args) throws Exception {
+        String base = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        // The JDK server speaks HTTP/1.1 only
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        // Large quantities so deletes never empty an item
+        for (int i = 0; i < SEED_ITEMS; i++) {
+            send(http, "POST", base + "/inventory", "{\"name\":\"load item " + i + "\",\"quantity\":1000000,\"category\":\"OTHER\"}");
+        }
+
+        long[][] latencies = new long[KINDS.length][];
+        List<List<Long>> perKind = new ArrayList<>();
+        for (int k = 0; k < KINDS.length; k++) {
+            perKind.add(new ArrayList<>());
+        }
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(clients);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long start = System.nanoTime();
+
+        for (int c = 0; c < clients; c++) {
+            int seed = c;
+            Thread t = new Thread(() -> {
+                Random r = new Random(seed);
+                List<List<Long>> mine = new ArrayList<>();
+                for (int k = 0; k < KINDS.length; k++) {
+                    mine.add(new ArrayList<>());
+                }
+                while (System.nanoTime() < deadline) {
+                    int kind = pickKind(r.nextInt(100));
+                    String item = "load%20item%20" + r.nextInt(SEED_ITEMS);
+                    long t0 = System.nanoTime();
+                    int status;
+                    try {
+                        switch (kind) {
+                            case 0: status = send(http, "GET", base + "/inventory", null); break;
+                            case 1: status = send(http, "GET", base + "/expiring?days=7", null); break;
+                            case 2: status = send(http, "GET", base + "/low-stock", null); break;
+                            case 3: status = send(http, "GET", base + "/recipes", null); break;
+                            case 4: status = send(http, "POST", base + "/inventory", "{\"name\":\"load item " + r.nextInt(SEED_ITEMS) + "\",\"quantity\":1}"); break;
+                            default: status = send(http, "DELETE", base + "/inventory/" + item + "?amount=1", null);
+                        }
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    mine.get(kind).add(System.nanoTime() - t0);
+                    if (status < 200 || status >= 300) {
+                        errors.incrementAndGet();
+                    }
+                }
+                synchronized (perKind) {
+                    for (int k = 0; k < KINDS.length; k++) {
+                        perKind.get(k).addAll(mine.get(k));
+                    }
+                }
+                done.countDown();
+            });
+            t.start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // Report
+        List<Long> all = new ArrayList<>();
+        System.out.printf("%-20s %10s %10s %10s %10s %10s%n", "request", "count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (int k = 0; k < KINDS.length; k++) {
+            latencies[k] = toSortedArray(perKind.get(k));
+            all.addAll(perKind.get(k));
+            printRow(KINDS[k], latencies[k]);
+        }
+        long[] total = toSortedArray(all);
+        printRow("all", total);
+        System.out.printf("%nclients: %d, seconds: %.1f, requests: %d, errors: %d, throughput: %.0f req/s%n",
+            clients, elapsed, total.length, errors.get(), total.length / elapsed);
+    }
+
+    /** @return the request kind for a number from 0 to 99 */
+    private static int pickKind(int roll) {
+        int sum = 0;
+        for (int k = 0; k < SHARE.length; k++) {
+            sum += SHARE[k];
+            if (roll < sum) {
+                return k;
+            }
+        }
+        return SHARE.length - 1;
+    }
+
+    /** @return HTTP status of the request */
+    private static int send(HttpClient http, String method, String url, String body) throws Exception {
+        HttpRequest.BodyPublisher pub = body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body);
+        HttpRequest req = HttpRequest.newBuilder(URI.create(url)).method(method, pub).build();
+        return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static long[] toSortedArray(List<Long> list) {
+        long[] a = new long[list.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = list.get(i);
+        }
+        Arrays.sort(a);
+        return a;
+    }
+
+    private static void printRow(String name, long[] sorted) {
+        if (sorted.length == 0) {
+            System.out.printf("%-20s %10d%n", name, 0);
+            return;
+        }
+        System.out.printf("%-20s %10d %10.2f %10.2f %10.2f %10.2f%n", name, sorted.length,
+            percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    /** @return the given percentile in milliseconds */
+    private static double percentile(long[] sorted, double p) {
+        int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds synthetic inventories and recipe catalogs for the benchmarks.
+ * Uses a fixed seed so every run sees the same data.
+ */
+public class SyntheticKitchen implements mealcraft.bench.Kitchen {
+    /** base ingredient names */
+    private static final String[] BASE_NAMES = {
+        "chicken", "potato", "tomato", "milk", "cheese", "bread", "apple", "banana",
+        "carrot", "onion", "garlic", "pepper", "salmon", "beef", "pork", "rice",
+        "pasta", "butter", "egg", "flour", "sugar", "honey", "leek", "corn"
+    };
+    /** share of recipe ingredients that are not stocked */
+    private static final double MISSING_RATE = 0.1;
+
+    /** fridge under test */
+    private Fridge fridge;
+    /** stocked item names */
+    private List<String> names;
+    /** next name used by addFood */
+    private int next;
+    /** recipe file for parseRecipeFile */
+    private File recipeFile;
+
+    /**
+     * Builds a fridge with the given number of items and recipes.
+     */
+    public void build(int items, int recipes) {
+        Random r = new Random(42);
+        LocalDate today = LocalDate.now();
+        fridge = new Fridge();
+        names = new ArrayList<>();
+        next = 0;
+
+        for (int i = 0; i < items; i++) {
+            String name = BASE_NAMES[i % BASE_NAMES.length] + " " + i;
+            names.add(name);
+            Category cat = Category.values()[r.nextInt(Category.values().length)];
+            fridge.addFood(new FoodItem(name, 1 + r.nextInt(6), "x", cat, today.plusDays(r.nextInt(30) - 2), ""));
+        }
+        // Large stock so removeFood never empties it
+        fridge.addFood(new FoodItem("bench stock", 1e12, "x", Category.OTHER, today.plusDays(5), ""));
+
+        for (int i = 0; i < recipes; i++) {
+            List<IngredientLine> ing = new ArrayList<>();
+            int count = 3 + r.nextInt(6);
+            for (int k = 0; k < count; k++) {
+                String name;
+                if (items == 0 || r.nextDouble() < MISSING_RATE) {
+                    name = "missing " + r.nextInt(1000);
+                }
+                else {
+                    name = names.get(r.nextInt(items));
+                }
+                ing.add(new IngredientLine(name, 1 + r.nextInt(3), "x"));
+            }
+            List<String> steps = new ArrayList<>();
+            for (int k = 0; k < 4; k++) {
+                steps.add("Step " + k + " with " + BASE_NAMES[r.nextInt(BASE_NAMES.length)]);
+            }
+            fridge.addRecipe(new Recipe("Recipe " + i, steps, ing, ""));
+        }
+    }
+
+    /**
+     * Writes a recipe text file in the format Recipe.fromTxtFile reads.
+     */
+    public void writeRecipeFile(int lines) throws Exception {
+        recipeFile = File.createTempFile("bench-recipe", ".txt");
+        recipeFile.deleteOnExit();
+        try (FileWriter fw = new FileWriter(recipeFile)) {
+            fw.write("Steps:\n");
+            for (int i = 1; i <= lines; i++) {
+                fw.write(i + ". Chop and stir ingredient number " + i + "\n");
+            }
+            fw.write("Ingredients:\n");
+            for (int i = 0; i < lines; i++) {
+                fw.write(BASE_NAMES[i % BASE_NAMES.length] + " " + i + " <x" + (1 + i % 3) + ">\n");
+            }
+        }
+    }
+
+    public Object addFood() {
+        String name = names.get(next++ % names.size());
+        FoodItem item = new FoodItem(name, 1, "x", Category.OTHER, LocalDate.now(), "");
+        fridge.addFood(item);
+        return item;
+    }
+
+    public boolean addAndRemoveFood() {
+        fridge.addFood(new FoodItem("bench temp", 1, "x", Category.OTHER, LocalDate.now(), ""));
+        return fridge.removeFood("bench temp", 1);
+    }
+
+    public boolean removeFood() {
+        return fridge.removeFood("bench stock", 1);
+    }
+
+    public Object itemsExpiringWithin(int days) {
+        return fridge.getItemsExpiringWithin(days);
+    }
+
+    public Object lowStockItems() {
+        return fridge.getLowStockItems();
+    }
+
+    public int canCookAll() {
+        int count = 0;
+        for (Recipe recipe : fridge.getRecipes()) {
+            if (recipe.canCook(fridge)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public double missingIngredientsAll() {
+        double total = 0;
+        for (Recipe recipe : fridge.getRecipes()) {
+            total += recipe.getMissingIngredients(fridge);
+        }
+        return total;
+    }
+
+    public Object cookableRecipes() {
+        return fridge.getCookableRecipes();
+    }
+
+    public Object restockAndListCookable() {
+        FoodItem item = fridge.getFoodItem(names.get(next++ % names.size()));
+        double qty = item.getQuantity();
+        fridge.removeFood(item.getName(), qty);
+        fridge.addFood(new FoodItem(item.getName(), qty, "x", item.getCategory(), item.getExpirationDate(), ""));
+        return fridge.getCookableRecipes();
+    }
+
+    public Object searchRecipes(String query, int limit) {
+        return fridge.searchRecipes(query, limit);
+    }
+
+    public Object parseRecipeFile() throws Exception {
+        return Recipe.fromTxtFile("Bench Recipe", recipeFile, "");
+    }
+
+    public Object sortRecipes(String mode) {
+        List<Recipe> recipes = new ArrayList<>(fridge.getRecipes());
+        if (mode.equals("Ingredient availability")) {
+            RecipeSorts.sortByIngredientAvailability(recipes, fridge);
+        }
+        else if (mode.equals("Uses expiring ingredients")) {
+            RecipeSorts.sortByExpiringIngredients(recipes, fridge);
+        }
+        else {
+            RecipeSorts.sortAZ(recipes);
+        }
+        return recipes;
+    }
+}
@@ -0,0 +1,53 @@
+package mealcraft.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Inventory operations on fridges of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FridgeBenchmark {
+    /** number of distinct items in the fridge */
+    @Param({"100", "1000", "10000"})
+    public int items;
+
+    /** fridge under test */
+    private Kitchen kitchen;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        kitchen = Kitchen.create();
+        kitchen.build(items, 0);
+    }
+
+    @Benchmark
+    public Object addFood() {
+        return kitchen.addFood();
+    }
+
+    @Benchmark
+    public boolean addAndRemoveFood() {
+        return kitchen.addAndRemoveFood();
+    }
+
+    @Benchmark
+    public boolean removeFood() {
+        return kitchen.removeFood();
+    }
+
+    @Benchmark
+    public Object getItemsExpiringWithin() {
+        return kitchen.itemsExpiringWithin(3);
+    }
+
+    @Benchmark
+    public Object getLowStockItems() {
+        return kitchen.lowStockItems();
+    }
+}
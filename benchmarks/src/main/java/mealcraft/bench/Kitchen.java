@@ -0,0 +1,77 @@
+package mealcraft.bench;
+
+/**
+ * Operations on a synthetic fridge and recipe catalog.
+ * The MealCraft classes live in the default package, which a named package
+ * cannot import, so the benchmarks reach them through this interface.
+ */
+public interface Kitchen {
+    /**
+     * Builds a fridge with the given number of items and recipes.
+     *
+     * @param items number of distinct food items
+     * @param recipes number of recipes
+     */
+    void build(int items, int recipes);
+
+    /**
+     * Writes a recipe text file for parseRecipeFile.
+     *
+     * @param lines number of steps and of ingredient lines
+     */
+    void writeRecipeFile(int lines) throws Exception;
+
+    /** Adds more of an item that is already stocked. */
+    Object addFood();
+
+    /** Adds a new item and then removes all of it. */
+    boolean addAndRemoveFood();
+
+    /** Removes part of a stocked item. */
+    boolean removeFood();
+
+    /** Lists items expiring within the given number of days. */
+    Object itemsExpiringWithin(int days);
+
+    /** Lists low stock items. */
+    Object lowStockItems();
+
+    /** Checks canCook for every recipe. */
+    int canCookAll();
+
+    /** Sums getMissingIngredients over every recipe. */
+    double missingIngredientsAll();
+
+    /** Lists the recipes the fridge can make now. */
+    Object cookableRecipes();
+
+    /** Uses up a stocked item, buys it again, then lists the recipes the fridge can make. */
+    Object restockAndListCookable();
+
+    /**
+     * Searches the recipe catalog.
+     *
+     * @param query search text
+     * @param limit maximum number of results
+     */
+    Object searchRecipes(String query, int limit);
+
+    /** Parses the file written by writeRecipeFile. */
+    Object parseRecipeFile() throws Exception;
+
+    /**
+     * Sorts a copy of the catalog the way the recipe page does.
+     *
+     * @param mode "A-Z", "Ingredient availability" or "Uses expiring ingredients"
+     */
+    Object sortRecipes(String mode);
+
+    /**
+     * Creates the default-package implementation.
+     *
+     * @return a new kitchen
+     */
+    static Kitchen create() throws ReflectiveOperationException {
+        return (Kitchen) Class.forName("SyntheticKitchen").getDeclaredConstructor().newInstance();
+    }
+}
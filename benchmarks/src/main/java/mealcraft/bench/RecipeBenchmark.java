@@ -0,0 +1,109 @@
+package mealcraft.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Recipe matching, sorting and import on catalogs of different sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipeBenchmark {
+    /** stocked items behind every catalog */
+    private static final int ITEMS = 1000;
+
+    /**
+     * A catalog for per-recipe checks.
+     */
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"1000", "10000", "100000"})
+        public int recipes;
+
+        Kitchen kitchen;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            kitchen = Kitchen.create();
+            kitchen.build(ITEMS, recipes);
+        }
+    }
+
+    /**
+     * A smaller catalog for the recipe page sorts, which compare every pair.
+     */
+    @State(Scope.Benchmark)
+    public static class SortCatalog {
+        @Param({"100", "1000"})
+        public int recipes;
+
+        Kitchen kitchen;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            kitchen = Kitchen.create();
+            kitchen.build(ITEMS, recipes);
+        }
+    }
+
+    /**
+     * A recipe text file to import.
+     */
+    @State(Scope.Benchmark)
+    public static class RecipeFile {
+        @Param({"10", "100", "1000"})
+        public int lines;
+
+        Kitchen kitchen;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            kitchen = Kitchen.create();
+            kitchen.build(0, 0);
+            kitchen.writeRecipeFile(lines);
+        }
+    }
+
+    @Benchmark
+    public int canCook(Catalog c) {
+        return c.kitchen.canCookAll();
+    }
+
+    @Benchmark
+    public double getMissingIngredients(Catalog c) {
+        return c.kitchen.missingIngredientsAll();
+    }
+
+    @Benchmark
+    public Object cookableRecipes(Catalog c) {
+        return c.kitchen.cookableRecipes();
+    }
+
+    @Benchmark
+    public Object restockAndListCookable(Catalog c) {
+        return c.kitchen.restockAndListCookable();
+    }
+
+    @Benchmark
+    public Object sortAZ(SortCatalog c) {
+        return c.kitchen.sortRecipes("A-Z");
+    }
+
+    @Benchmark
+    public Object sortByIngredientAvailability(SortCatalog c) {
+        return c.kitchen.sortRecipes("Ingredient availability");
+    }
+
+    @Benchmark
+    public Object sortByExpiringIngredients(SortCatalog c) {
+        return c.kitchen.sortRecipes("Uses expiring ingredients");
+    }
+
+    @Benchmark
+    public Object fromTxtFile(RecipeFile f) throws Exception {
+        return f.kitchen.parseRecipeFile();
+    }
+}
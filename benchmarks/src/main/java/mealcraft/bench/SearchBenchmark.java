@@ -0,0 +1,42 @@
+package mealcraft.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Recipe search as the user types, sampled so the report shows the p99 as
+ * well as the mean. The catalog's ingredients are base names such as
+ * "chicken" with a number, so every base name matches thousands of recipes.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    /** stocked items behind the catalog */
+    private static final int ITEMS = 1000;
+    /** results asked for, as the recipe page does */
+    private static final int LIMIT = 20;
+
+    @Param({"10000", "100000"})
+    public int recipes;
+
+    /** two whole words, a word and a prefix, and a misspelled word */
+    @Param({"chicken potato", "garlic on", "chiken rice"})
+    public String query;
+
+    private Kitchen kitchen;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        kitchen = Kitchen.create();
+        kitchen.build(ITEMS, recipes);
+    }
+
+    @Benchmark
+    public Object searchRecipes() {
+        return kitchen.searchRecipes(query, LIMIT);
+    }
+}
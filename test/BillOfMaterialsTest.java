@@ -0,0 +1,144 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks BillOfMaterials against breaking each recipe down recursively from
+ * scratch, and the shopping list that uses it for planned meals.
+ */
+class BillOfMaterialsTest {
+    @Test
+    void largeOrderMatchesRecursiveBreakdown() {
+        Random rnd = new Random(45);
+        List<Recipe> recipes = layeredRecipes(rnd, 200);
+        Map<Recipe, Integer> order = new IdentityHashMap<>();
+        for (Recipe r : recipes) {
+            if (rnd.nextBoolean()) {
+                order.put(r, 1 + rnd.nextInt(4));
+            }
+        }
+        // Enough distinct recipes to take the parallel path
+        assertTrue(order.size() >= 64);
+
+        Map<String, Long> expected = new HashMap<>();
+        Map<Recipe, Map<String, Long>> memo = new IdentityHashMap<>();
+        for (Map.Entry<Recipe, Integer> e : order.entrySet()) {
+            for (Map.Entry<String, Long> raw : recursive(e.getKey(), memo).entrySet()) {
+                expected.merge(raw.getKey(), raw.getValue() * e.getValue(), Long::sum);
+            }
+        }
+        assertEquals(expected, new BillOfMaterials().explode(order));
+    }
+
+    @Test
+    void sharedSubRecipeIsBrokenDownOnce() {
+        Recipe stock = recipe("Stock", new IngredientLine("bones", 2, "kg"), new IngredientLine("onion", 1, "unit"));
+        Recipe soup = recipe("Soup", IngredientLine.ofRecipe(stock, 1), new IngredientLine("carrot", 2, "unit"));
+        Recipe risotto = recipe("Risotto", IngredientLine.ofRecipe(stock, 0.5), new IngredientLine("rice", 1, "kg"));
+        BillOfMaterials bom = new BillOfMaterials();
+
+        assertEquals(Map.of("bones", 4000L, "carrot", 4000L, "onion", 2000L), bom.explode(soup, 2));
+        assertEquals(2, bom.size());
+        assertEquals(Map.of("bones", 1000L, "onion", 500L, "rice", 1000L), bom.explode(risotto, 1));
+        // Only the new recipe was broken down; the stock was kept
+        assertEquals(3, bom.size());
+        assertEquals("kg", bom.getUnit("bones"));
+    }
+
+    @Test
+    void cycleIsReported() throws ReflectiveOperationException {
+        Recipe placeholder = recipe("Placeholder", new IngredientLine("water", 1, "l"));
+        Recipe dough = recipe("Dough", IngredientLine.ofRecipe(placeholder, 1), new IngredientLine("flour", 1, "kg"));
+        Recipe starter = recipe("Starter", IngredientLine.ofRecipe(dough, 1));
+        // Recipes cannot be built in a cycle, so one is forced on the line the dough keeps
+        IngredientLine back = dough.getIngredients().get(0);
+        Field sub = IngredientLine.class.getDeclaredField("subRecipe");
+        sub.setAccessible(true);
+        sub.set(back, starter);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new BillOfMaterials().explode(starter, 1));
+        assertTrue(e.getMessage().contains("Starter -> Dough"), e.getMessage());
+    }
+
+    @Test
+    void shoppingListBreaksDownUnstockedSubRecipes() {
+        Recipe stock = recipe("Chicken Stock", new IngredientLine("bones", 2, "kg"), new IngredientLine("onion", 1, "unit"));
+        Recipe soup = recipe("Soup", IngredientLine.ofRecipe(stock, 1.5), new IngredientLine("carrot", 2, "unit"));
+        Fridge fridge = new Fridge();
+        fridge.addRecipe(stock);
+        fridge.addRecipe(soup);
+        fridge.planRecipe(soup, LocalDate.now());
+
+        fridge.createShoppingList(2);
+        Map<String, Double> list = shoppingList(fridge);
+        // 1.5 batches short, so two whole batches are made
+        assertEquals(Map.of("bones", 4.0, "onion", 2.0, "carrot", 2.0), list);
+        assertEquals("kg", fridge.getShoppingListItems().stream()
+            .filter(l -> l.getNormalizedName().equals("bones")).findFirst().get().getUnit());
+
+        // Stock on hand covers the sub-recipe line
+        fridge.addFood(new FoodItem("Chicken Stock", 2, "batch", Category.OTHER, LocalDate.now().plusDays(3), null));
+        fridge.createShoppingList(2);
+        assertEquals(Map.of("carrot", 2.0), shoppingList(fridge));
+    }
+
+    /** @return the shopping list as amounts by name */
+    private static Map<String, Double> shoppingList(Fridge fridge) {
+        Map<String, Double> list = new HashMap<>();
+        for (IngredientLine line : fridge.getShoppingListItems()) {
+            list.put(line.getNormalizedName(), line.getAmount());
+        }
+        return list;
+    }
+
+    /** @return recipes where each may use earlier ones as sub-recipes */
+    private static List<Recipe> layeredRecipes(Random rnd, int count) {
+        List<Recipe> recipes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<IngredientLine> lines = new ArrayList<>();
+            for (int k = 1 + rnd.nextInt(4); k > 0; k--) {
+                if (!recipes.isEmpty() && rnd.nextInt(3) == 0) {
+                    lines.add(IngredientLine.ofRecipe(recipes.get(rnd.nextInt(recipes.size())), 0.25 * (1 + rnd.nextInt(8))));
+                }
+                else {
+                    lines.add(new IngredientLine(Kitchens.name(rnd), 0.125 * (1 + rnd.nextInt(16)), "unit"));
+                }
+            }
+            recipes.add(new Recipe("Recipe " + i, List.of("Mix"), lines, null));
+        }
+        return recipes;
+    }
+
+    /** @return one batch of a recipe broken down recursively, rounding each sub-recipe amount up */
+    private static Map<String, Long> recursive(Recipe recipe, Map<Recipe, Map<String, Long>> memo) {
+        Map<String, Long> known = memo.get(recipe);
+        if (known != null) {
+            return known;
+        }
+        Map<String, Long> raw = new HashMap<>();
+        for (IngredientLine line : recipe.getIngredients()) {
+            if (line.getSubRecipe() == null) {
+                raw.merge(line.getNormalizedName(), line.getScaledAmount(), Long::sum);
+                continue;
+            }
+            for (Map.Entry<String, Long> e : recursive(line.getSubRecipe(), memo).entrySet()) {
+                long amount = e.getValue() * line.getScaledAmount();
+                raw.merge(e.getKey(), (amount + Quantity.SCALE - 1) / Quantity.SCALE, Long::sum);
+            }
+        }
+        memo.put(recipe, raw);
+        return raw;
+    }
+
+    private static Recipe recipe(String name, IngredientLine... lines) {
+        return new Recipe(name, List.of("Cook"), List.of(lines), null);
+    }
+}
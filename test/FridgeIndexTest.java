@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the category partitions and the expiration order, which the fridge
+ * keeps up to date item by item, against sorting the whole inventory.
+ */
+class FridgeIndexTest {
+    /** expiration order: soonest first, then by name */
+    private static final Comparator<FoodItem> BY_EXPIRATION = Comparator.comparing(FoodItem::getExpirationDate)
+        .thenComparing(FoodItem::getNormalizedName);
+
+    @Test
+    void indexesMatchSortingAfterEveryChange() {
+        Random rnd = new Random(32);
+        Fridge fridge = new Fridge();
+        for (int i = 0; i < 400; i++) {
+            long version = fridge.getVersion();
+            List<String> before = Kitchens.inventory(fridge);
+            change(fridge, rnd);
+            // Only a real change bumps the version
+            assertEquals(!before.equals(Kitchens.inventory(fridge)), fridge.getVersion() > version);
+            assertIndexesMatch(fridge);
+        }
+    }
+
+    @Test
+    void unchangedFieldsKeepTheVersion() {
+        Fridge fridge = new Fridge();
+        fridge.addFood(new FoodItem("Rice", 2, "kg", Category.OTHER, LocalDate.now().plusDays(100), null));
+        long version = fridge.getVersion();
+        fridge.setCategory("rice", Category.OTHER);
+        fridge.setExpirationDate("rice", LocalDate.now().plusDays(100));
+        fridge.setQuantity("rice", 2);
+        assertEquals(version, fridge.getVersion());
+    }
+
+    /** Makes a random change, which may be refused or change nothing. */
+    private static void change(Fridge fridge, Random rnd) {
+        String name = Kitchens.name(rnd);
+        switch (rnd.nextInt(5)) {
+            case 0:
+            case 1: fridge.addFood(Kitchens.item(rnd, name)); break;
+            case 2: fridge.removeFood(name, 1 + rnd.nextInt(3)); break;
+            case 3: fridge.setCategory(name, Category.values()[rnd.nextInt(Category.values().length)]); break;
+            default: fridge.setExpirationDate(name, LocalDate.now().plusDays(rnd.nextInt(20))); break;
+        }
+    }
+
+    /** Fails unless every index lists what sorting the inventory from scratch gives. */
+    static void assertIndexesMatch(Fridge fridge) {
+        List<FoodItem> all = new ArrayList<>(fridge.getAllFoodItems());
+        assertEquals(all.size(), fridge.getItemCount());
+
+        List<FoodItem> expected = new ArrayList<>(all);
+        expected.sort(BY_EXPIRATION);
+        List<FoodItem> merged = new ArrayList<>();
+        for (Iterator<FoodItem> it = fridge.expirationOrder(); it.hasNext(); ) {
+            merged.add(it.next());
+        }
+        assertEquals(expected, merged);
+        assertEquals(expected, fridge.getAllFoodItemsSortedExpiration());
+
+        for (Category c : Category.values()) {
+            List<FoodItem> inCategory = new ArrayList<>();
+            for (FoodItem item : all) {
+                if (item.getCategory() == c) {
+                    inCategory.add(item);
+                }
+            }
+            inCategory.sort(Comparator.comparing(FoodItem::getNormalizedName));
+            assertEquals(inCategory, fridge.getItemsInCategory(c));
+            inCategory.sort(BY_EXPIRATION);
+            assertEquals(inCategory, fridge.getItemsInCategorySortedExpiration(c));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks cooking across locations against adding up every location's stock
+ * and every recipe line from scratch.
+ */
+class FridgeNetworkTest {
+    @Test
+    void cookMatchesSummedStockAndDemand() {
+        Random rnd = new Random(35);
+        FridgeNetwork network = new FridgeNetwork();
+        for (String name : List.of("walk-in", "freezer", "pantry")) {
+            network.addLocation(name, Kitchens.fridge(rnd, 12, 0));
+        }
+        for (int i = 0; i < 300; i++) {
+            // Restocks now and then so some recipes stay cookable
+            if (rnd.nextInt(3) == 0) {
+                List<String> names = network.getLocationNames();
+                network.getLocation(names.get(rnd.nextInt(names.size()))).addFood(Kitchens.item(rnd));
+            }
+            Recipe recipe = Kitchens.recipe(rnd, "Dish " + i);
+            Map<String, Long> need = new HashMap<>();
+            for (IngredientLine line : recipe.getIngredients()) {
+                need.merge(line.getNormalizedName(), line.getScaledAmount(), Long::sum);
+            }
+            Map<String, Long> before = totals(network);
+            boolean enough = need.entrySet().stream().allMatch(e -> before.getOrDefault(e.getKey(), 0L) >= e.getValue());
+
+            assertEquals(enough, network.canCook(recipe), recipe.getIngredients().toString());
+            assertEquals(enough, network.cook(recipe));
+            Map<String, Long> after = totals(network);
+            for (String name : Kitchens.NAMES) {
+                long used = enough ? need.getOrDefault(name, 0L) : 0;
+                assertEquals(before.getOrDefault(name, 0L) - used, (long) after.getOrDefault(name, 0L), name);
+            }
+        }
+    }
+
+    @Test
+    void repeatedLinesAreAddedUp() {
+        FridgeNetwork network = network(item("flour", 2, 5), item("flour", 1, 3));
+        Recipe bread = recipe("Bread", new IngredientLine("flour", 2, "kg"), new IngredientLine("flour", 2, "kg"));
+        assertFalse(network.canCook(bread));
+        assertNull(network.getPickList(bread));
+        assertFalse(network.cook(bread));
+        assertEquals(3, network.getTotalQuantity("flour"));
+    }
+
+    @Test
+    void soonestExpiringLocationIsUsedFirst() {
+        FridgeNetwork network = network(item("milk", 2, 9), item("milk", 2, 1));
+        Recipe pudding = recipe("Pudding", new IngredientLine("milk", 3, "l"));
+        Map<String, List<IngredientLine>> picks = network.getPickList(pudding);
+        assertEquals(List.of("b", "a"), List.copyOf(picks.keySet()));
+        assertEquals(2, picks.get("b").get(0).getAmount());
+        assertEquals(1, picks.get("a").get(0).getAmount());
+    }
+
+    @Test
+    void substitutesAtAnyLocationCount() {
+        FridgeNetwork network = network(item("butter", 1, 5), item("oil", 4, 5));
+        network.getLocation("b").addSubstitution("butter", "oil", 2);
+        Recipe cake = recipe("Cake", new IngredientLine("butter", 2, "kg"));
+        assertTrue(network.cook(cake));
+        assertEquals(0, network.getTotalQuantity("butter"));
+        assertEquals(2, network.getTotalQuantity("oil"));
+    }
+
+    @Test
+    void unstockedSubRecipeIsMadeFromRawIngredients() {
+        Recipe stock = recipe("Stock", new IngredientLine("bones", 2, "kg"));
+        Recipe soup = recipe("Soup", IngredientLine.ofRecipe(stock, 1.5), new IngredientLine("carrot", 1, "kg"));
+        FridgeNetwork network = network(item("stock", 1, 5), item("bones", 1, 5));
+        network.getLocation("a").addFood(item("carrot", 1, 5));
+        // One batch is stocked; the other half needs 1 kg of bones
+        assertTrue(network.cook(soup));
+        assertEquals(0, network.getTotalQuantity("stock"));
+        assertEquals(0, network.getTotalQuantity("bones"));
+        assertFalse(network.canCook(soup));
+    }
+
+    @Test
+    void eachLocationUndoesItsPartAsOneStep() {
+        FridgeNetwork network = network(item("rice", 1, 1), item("rice", 2, 5));
+        network.getLocation("b").addFood(item("beans", 1, 5));
+        assertTrue(network.cook(recipe("Rice and Beans", new IngredientLine("rice", 2, "kg"), new IngredientLine("beans", 1, "kg"))));
+        assertTrue(network.getLocation("b").undo());
+        assertEquals(2, network.getTotalQuantity("rice"));
+        assertEquals(1, network.getTotalQuantity("beans"));
+    }
+
+    /** @return every item's total across locations, in thousandths */
+    private static Map<String, Long> totals(FridgeNetwork network) {
+        Map<String, Long> totals = new HashMap<>();
+        for (String name : Kitchens.NAMES) {
+            long total = Math.round(network.getTotalQuantity(name) * Quantity.SCALE);
+            if (total > 0) {
+                totals.put(name, total);
+            }
+        }
+        return totals;
+    }
+
+    /** @return a network with locations "a" and "b" holding one item each */
+    private static FridgeNetwork network(FoodItem a, FoodItem b) {
+        FridgeNetwork network = new FridgeNetwork();
+        network.addLocation("a", new Fridge());
+        network.addLocation("b", new Fridge());
+        network.getLocation("a").addFood(a);
+        network.getLocation("b").addFood(b);
+        return network;
+    }
+
+    private static FoodItem item(String name, double quantity, int days) {
+        return new FoodItem(name, quantity, "kg", Category.OTHER, LocalDate.now().plusDays(days), null);
+    }
+
+    private static Recipe recipe(String name, IngredientLine... lines) {
+        return new Recipe(name, List.of("Cook"), List.of(lines), null);
+    }
+}
@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks undo and redo against the inventory and usage each step started
+ * from, and that usage taken back by undo leaves the history and forecast as
+ * if it had never been recorded.
+ */
+class FridgeUndoTest {
+    private static final LocalDate FROM = LocalDate.now().minusYears(1);
+    private static final LocalDate TO = LocalDate.now().plusYears(1);
+
+    @Test
+    void unchangedFieldsRecordNothing() {
+        Fridge fridge = new Fridge();
+        FoodItem milk = new FoodItem("Milk", 2, "l", Category.DAIRY_EGGS, LocalDate.now().plusDays(5), null);
+        fridge.addFood(milk);
+        List<String> log = new ArrayList<>();
+        fridge.setChangeLog(log::add);
+        int steps = fridge.getUndoHistory().size();
+
+        // What the edit dialog does for a quantity-only edit
+        fridge.beginEdit("Edit Milk");
+        fridge.setQuantity("Milk", 3);
+        fridge.setCategory("Milk", Category.DAIRY_EGGS);
+        fridge.setExpirationDate("Milk", LocalDate.now().plusDays(5));
+        fridge.endEdit();
+
+        assertEquals(1, log.size(), "only the quantity change is replicated");
+        assertEquals(steps + 1, fridge.getUndoHistory().size());
+        log.clear();
+        assertTrue(fridge.undo());
+        assertEquals(1, log.size(), "undo reverses one edit");
+        assertEquals(2.0, fridge.getFoodItem("milk").getQuantity());
+
+        // A step that changed nothing is not kept
+        fridge.beginEdit("Edit Milk");
+        fridge.setQuantity("Milk", 2);
+        fridge.setCategory("Milk", Category.DAIRY_EGGS);
+        fridge.endEdit();
+        assertFalse(fridge.getUndoHistory().canUndo() && "Edit Milk".equals(fridge.getUndoHistory().getUndoLabel()));
+    }
+
+    @Test
+    void undoAndRedoRetraceRandomEdits() {
+        Random rnd = new Random(50);
+        Fridge fridge = new Fridge();
+        Deque<List<String>> states = new ArrayDeque<>();
+        Deque<List<Long>> usages = new ArrayDeque<>();
+        states.push(Kitchens.inventory(fridge));
+        usages.push(usage(fridge));
+        for (int i = 0; i < 300; i++) {
+            edit(fridge, rnd);
+            // If the edit changed nothing, it made no step
+            if (fridge.getUndoHistory().size() > states.size() - 1) {
+                states.push(Kitchens.inventory(fridge));
+                usages.push(usage(fridge));
+            }
+        }
+        assertEquals(states.size() - 1, fridge.getUndoHistory().size());
+
+        List<List<String>> undone = new ArrayList<>();
+        List<List<Long>> undoneUsage = new ArrayList<>();
+        while (states.size() > 1) {
+            undone.add(states.pop());
+            undoneUsage.add(usages.pop());
+            assertTrue(fridge.undo());
+            assertEquals(states.peek(), Kitchens.inventory(fridge));
+            assertEquals(usages.peek(), usage(fridge));
+        }
+        assertFalse(fridge.undo());
+        for (long total : usage(fridge)) {
+            assertEquals(0, total, "undoing everything leaves no usage");
+        }
+        for (String name : Kitchens.NAMES) {
+            assertEquals(0, fridge.getForecast().getDailyRate(name, LocalDate.now()), 1e-9);
+        }
+
+        for (int i = undone.size() - 1; i >= 0; i--) {
+            assertTrue(fridge.redo());
+            assertEquals(undone.get(i), Kitchens.inventory(fridge));
+            assertEquals(undoneUsage.get(i), usage(fridge));
+        }
+        assertFalse(fridge.redo());
+    }
+
+    /** Makes one random change through the fridge. */
+    private static void edit(Fridge fridge, Random rnd) {
+        String name = Kitchens.name(rnd);
+        switch (rnd.nextInt(6)) {
+            case 0: fridge.addFood(Kitchens.item(rnd, name)); break;
+            case 1: fridge.removeFood(name, 1 + rnd.nextInt(3)); break;
+            case 2: fridge.discardFood(name, 1); break;
+            case 3: fridge.setQuantity(name, rnd.nextInt(5)); break;
+            case 4: fridge.setCategory(name, Category.values()[rnd.nextInt(Category.values().length)]); break;
+            default: fridge.setExpirationDate(name, LocalDate.now().plusDays(rnd.nextInt(10))); break;
+        }
+    }
+
+    /** @return consumed and wasted totals of every name, as the history sums them */
+    private static List<Long> usage(Fridge fridge) {
+        List<Long> totals = new ArrayList<>();
+        for (String name : Kitchens.NAMES) {
+            long consumed = 0;
+            long wasted = 0;
+            for (ConsumptionHistory.Bucket b : fridge.getHistory().getTotals(name, ConsumptionHistory.Granularity.MONTH, FROM, TO)) {
+                consumed += b.getScaledConsumed();
+                wasted += b.getScaledWasted();
+            }
+            totals.add(consumed);
+            totals.add(wasted);
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks planned queries against filtering and sorting the whole inventory.
+ */
+class InventoryQueryTest {
+    @Test
+    void plannedQueriesMatchFilteringEveryItem() {
+        Random rnd = new Random(49);
+        Fridge fridge = new Fridge();
+        for (int i = 0; i < 300; i++) {
+            fridge.addFood(Kitchens.item(rnd, Kitchens.name(rnd) + " " + rnd.nextInt(100)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            // Changes the inventory now and then so the indexes are not just freshly built
+            if (i % 10 == 0) {
+                fridge.addFood(Kitchens.item(rnd, Kitchens.name(rnd) + " " + rnd.nextInt(100)));
+                fridge.removeFood(Kitchens.name(rnd) + " " + rnd.nextInt(100), 1 + rnd.nextInt(3));
+                fridge.setExpirationDate(Kitchens.name(rnd) + " " + rnd.nextInt(100), LocalDate.now().plusDays(rnd.nextInt(30) - 5));
+            }
+            InventoryQuery.Sort sort = InventoryQuery.Sort.values()[rnd.nextInt(InventoryQuery.Sort.values().length)];
+            int limit = rnd.nextBoolean() ? Integer.MAX_VALUE : rnd.nextInt(20);
+            InventoryQuery query = query(rnd).sortBy(sort).limit(limit);
+            assertEquals(names(bruteForce(fridge, query, sort, limit)), names(fridge.query(query)), fridge.explain(query).toString());
+        }
+    }
+
+    @Test
+    void exactNameIsLookedUp() {
+        Fridge fridge = Kitchens.fridge(new Random(490), 20, 0);
+        assertEquals(InventoryQuery.Access.NAME_LOOKUP, fridge.explain(new InventoryQuery().named("Flour")).getAccess());
+    }
+
+    /** @return a query of random parts, without a sort or limit */
+    private static InventoryQuery query(Random rnd) {
+        InventoryQuery query = new InventoryQuery();
+        for (int n = rnd.nextInt(3); n > 0; n--) {
+            query.inCategory(Category.values()[rnd.nextInt(Category.values().length)]);
+        }
+        if (rnd.nextBoolean()) {
+            LocalDate from = rnd.nextBoolean() ? null : LocalDate.now().plusDays(rnd.nextInt(30) - 5);
+            LocalDate to = rnd.nextBoolean() ? null : LocalDate.now().plusDays(rnd.nextInt(30) - 5);
+            query.expiringBetween(from, to);
+        }
+        if (rnd.nextInt(4) == 0) {
+            query.minQuantity(rnd.nextInt(4));
+        }
+        if (rnd.nextInt(4) == 0) {
+            query.maxQuantity(1 + rnd.nextInt(6));
+        }
+        switch (rnd.nextInt(4)) {
+            case 0: query.named(Kitchens.name(rnd) + " " + rnd.nextInt(100)); break;
+            case 1: {
+                String name = Kitchens.name(rnd);
+                query.nameStartsWith(name.substring(0, 1 + rnd.nextInt(name.length())));
+                break;
+            }
+            default: break;
+        }
+        return query;
+    }
+
+    /** @return every item that matches, sorted and cut to the limit, without any index */
+    private static List<FoodItem> bruteForce(Fridge fridge, InventoryQuery query, InventoryQuery.Sort sort, int limit) {
+        List<FoodItem> all = new ArrayList<>();
+        for (FoodItem item : fridge.getAllFoodItems()) {
+            if (query.matches(item)) {
+                all.add(item);
+            }
+        }
+        Comparator<FoodItem> byName = Comparator.comparing(FoodItem::getNormalizedName);
+        switch (sort) {
+            case EXPIRATION: all.sort(Comparator.comparing(FoodItem::getExpirationDate).thenComparing(byName)); break;
+            case QUANTITY: all.sort(Comparator.comparingLong(FoodItem::getScaledQuantity).thenComparing(byName)); break;
+            default: all.sort(byName); break;
+        }
+        return all.subList(0, Math.min(all.size(), limit));
+    }
+
+    /** @return normalized names of items, in order */
+    private static List<String> names(List<FoodItem> items) {
+        List<String> names = new ArrayList<>();
+        for (FoodItem item : items) {
+            names.add(item.getNormalizedName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,70 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds small random fridges and recipe catalogs for the tests. Names are
+ * drawn from a short list, so recipes share ingredients and stock changes
+ * touch many of them.
+ */
+final class Kitchens {
+    /** ingredient names, shared by items and recipes */
+    static final String[] NAMES = {
+        "flour", "sugar", "eggs", "milk", "butter", "salt", "rice", "beans", "onion", "garlic",
+        "tomato", "cheese", "chicken", "pasta", "oil", "carrot", "potato", "lemon", "yeast", "honey"
+    };
+
+    private Kitchens() {
+    }
+
+    /** @return a random ingredient name */
+    static String name(Random rnd) {
+        return NAMES[rnd.nextInt(NAMES.length)];
+    }
+
+    /** @return an item of a random name, amount, category and date */
+    static FoodItem item(Random rnd) {
+        return item(rnd, name(rnd));
+    }
+
+    /** @return an item of a name with a random amount, category and date */
+    static FoodItem item(Random rnd, String name) {
+        Category[] categories = Category.values();
+        return new FoodItem(name, 1 + rnd.nextInt(6), "unit", categories[rnd.nextInt(categories.length)],
+            LocalDate.now().plusDays(rnd.nextInt(30) - 5), null);
+    }
+
+    /** @return a recipe of one to five random ingredients, which may repeat */
+    static Recipe recipe(Random rnd, String name) {
+        List<IngredientLine> lines = new ArrayList<>();
+        int n = 1 + rnd.nextInt(5);
+        for (int i = 0; i < n; i++) {
+            lines.add(new IngredientLine(name(rnd), 1 + rnd.nextInt(4), "unit"));
+        }
+        return new Recipe(name, List.of("Mix", "Serve"), lines, null);
+    }
+
+    /** @return every item as "name quantity unit category date", sorted */
+    static List<String> inventory(Fridge fridge) {
+        List<String> rows = new ArrayList<>();
+        for (FoodItem item : fridge.getAllFoodItemsSortedAZ()) {
+            rows.add(item.getNormalizedName() + " " + item.getScaledQuantity() + " " + item.getUnit() + " "
+                + item.getCategory() + " " + item.getExpirationDate());
+        }
+        rows.sort(null);
+        return rows;
+    }
+
+    /** @return a fridge with some random items and recipes */
+    static Fridge fridge(Random rnd, int items, int recipes) {
+        Fridge fridge = new Fridge();
+        for (int i = 0; i < items; i++) {
+            fridge.addFood(item(rnd));
+        }
+        for (int i = 0; i < recipes; i++) {
+            fridge.addRecipe(recipe(rnd, "Recipe " + i));
+        }
+        return fridge;
+    }
+}
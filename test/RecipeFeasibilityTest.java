@@ -0,0 +1,97 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks what RecipeFeasibility keeps up to date as stock, recipes and
+ * substitutions change against asking every recipe from scratch.
+ */
+class RecipeFeasibilityTest {
+    @Test
+    void matchesRecountAfterEveryChange() {
+        Random rnd = new Random(41);
+        Fridge fridge = Kitchens.fridge(rnd, 10, 60);
+        for (int i = 0; i < 600; i++) {
+            change(fridge, rnd);
+            assertMatchesRecount(fridge);
+        }
+    }
+
+    @Test
+    void substituteStockCountsAsPresent() {
+        Fridge fridge = new Fridge();
+        Recipe pancakes = new Recipe("Pancakes", List.of("Mix"), List.of(new IngredientLine("butter", 1, "unit")), null);
+        fridge.addRecipe(pancakes);
+        fridge.addSubstitution("butter", "oil", 1);
+        assertTrue(fridge.getFeasibility().candidates().isEmpty());
+        fridge.addFood(Kitchens.item(new Random(1), "oil"));
+        assertEquals(List.of(pancakes), fridge.getFeasibility().candidates());
+        fridge.removeFood("oil", fridge.getFoodItem("oil").getQuantity());
+        assertTrue(fridge.getFeasibility().candidates().isEmpty());
+    }
+
+    /** Makes a random change, which may be refused or change nothing. */
+    private static void change(Fridge fridge, Random rnd) {
+        String name = Kitchens.name(rnd);
+        List<Recipe> recipes = fridge.getRecipes();
+        switch (rnd.nextInt(10)) {
+            case 0:
+            case 1:
+            case 2: fridge.addFood(Kitchens.item(rnd, name)); break;
+            case 3:
+            case 4: fridge.removeFood(name, 1 + rnd.nextInt(6)); break;
+            case 5: fridge.addRecipe(Kitchens.recipe(rnd, "Extra " + rnd.nextInt(1000))); break;
+            case 6:
+                if (!recipes.isEmpty()) {
+                    fridge.removeRecipe(recipes.get(rnd.nextInt(recipes.size())));
+                }
+                break;
+            case 7:
+                String to = Kitchens.name(rnd);
+                if (!to.equals(name)) {
+                    fridge.addSubstitution(name, to, 0.5 + rnd.nextInt(3));
+                }
+                break;
+            case 8: fridge.removeSubstitution(name, Kitchens.name(rnd)); break;
+            default:
+                if (!recipes.isEmpty()) {
+                    recipes.get(rnd.nextInt(recipes.size())).cook(fridge);
+                }
+                break;
+        }
+    }
+
+    /** Fails unless servings, candidates and the cookable and one-away sets match asking each recipe. */
+    static void assertMatchesRecount(Fridge fridge) {
+        List<Recipe> candidates = new ArrayList<>();
+        Set<Recipe> cookable = new HashSet<>();
+        Set<Recipe> oneAway = new HashSet<>();
+        for (Recipe recipe : fridge.getRecipes()) {
+            assertEquals(recipe.getMaxServings(fridge), fridge.getMaxServings(recipe), recipe.getName());
+            if (recipe.getIngredients().stream().allMatch(l -> fridge.getEffectiveQuantity(l.getNormalizedName()) > 0)) {
+                candidates.add(recipe);
+            }
+            if (recipe.canCook(fridge)) {
+                cookable.add(recipe);
+            }
+            Set<String> shortOf = new HashSet<>();
+            for (IngredientLine line : recipe.getIngredients()) {
+                if (fridge.getEffectiveQuantity(line.getNormalizedName()) < line.getScaledAmount()) {
+                    shortOf.add(line.getNormalizedName());
+                }
+            }
+            if (shortOf.size() == 1) {
+                oneAway.add(recipe);
+            }
+        }
+        assertEquals(candidates, fridge.getFeasibility().candidates());
+        assertEquals(cookable, fridge.getCookableRecipes());
+        assertEquals(cookable, fridge.getCookableNow());
+        assertEquals(oneAway, fridge.getOneIngredientAway());
+    }
+}
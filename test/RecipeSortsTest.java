@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the recipe page orderings against plain sorts of the same keys.
+ */
+class RecipeSortsTest {
+    @Test
+    void sortAZMatchesSortByName() {
+        Fridge fridge = Kitchens.fridge(new Random(1), 20, 200);
+        List<Recipe> sorted = new ArrayList<>(fridge.getRecipes());
+        RecipeSorts.sortAZ(sorted);
+        List<String> expected = names(fridge.getRecipes());
+        expected.sort(String.CASE_INSENSITIVE_ORDER);
+        assertEquals(expected, names(sorted));
+    }
+
+    @Test
+    void sortsByAvailabilityExpiryAndServings() {
+        Fridge fridge = Kitchens.fridge(new Random(2), 15, 150);
+        List<Recipe> byMissing = new ArrayList<>(fridge.getRecipes());
+        RecipeSorts.sortByIngredientAvailability(byMissing, fridge);
+        assertSortedBy(byMissing, Comparator.comparingDouble(r -> r.getMissingIngredients(fridge)));
+
+        List<Recipe> byExpiry = new ArrayList<>(fridge.getRecipes());
+        RecipeSorts.sortByExpiringIngredients(byExpiry, fridge);
+        assertSortedBy(byExpiry, Comparator.comparingLong(r -> r.getEarliestExpirationDays(fridge)));
+
+        List<Recipe> byServings = new ArrayList<>(fridge.getRecipes());
+        RecipeSorts.sortByServings(byServings, fridge);
+        // Kept counts must agree with counting the stock from scratch
+        assertSortedBy(byServings, Comparator.comparingInt((Recipe r) -> r.getMaxServings(fridge)).reversed());
+    }
+
+    @Test
+    void interruptedSortIsCancelled() {
+        Fridge fridge = Kitchens.fridge(new Random(3), 5, 20);
+        List<Recipe> recipes = new ArrayList<>(fridge.getRecipes());
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, () -> RecipeSorts.sortAZ(recipes));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /** @return the recipes' names in order */
+    private static List<String> names(List<Recipe> recipes) {
+        List<String> names = new ArrayList<>();
+        for (Recipe r : recipes) {
+            names.add(r.getName());
+        }
+        return names;
+    }
+
+    /** Fails unless no recipe comes after one that the order puts later. */
+    private static void assertSortedBy(List<Recipe> recipes, Comparator<Recipe> order) {
+        for (int i = 1; i < recipes.size(); i++) {
+            assertTrue(order.compare(recipes.get(i - 1), recipes.get(i)) <= 0, "out of order at " + i);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks a copy kept by replaying a fridge's change log against the fridge
+ * itself, and against a copy rebuilt from a snapshot.
+ */
+class ReplicationTest {
+    @Test
+    void replayedLogMatchesPrimary() throws InterruptedException {
+        Random rnd = new Random(36);
+        Fridge primary = new Fridge();
+        FridgeLog log = new FridgeLog();
+        primary.setChangeLog(log::append);
+        Fridge copy = new Fridge();
+        long offset = 0;
+        for (int i = 0; i < 500; i++) {
+            change(primary, rnd);
+            offset = replay(log, offset, copy);
+            assertSameState(primary, copy);
+        }
+        Fridge fromSnapshot = new Fridge();
+        for (String record : FridgeLog.snapshot(primary)) {
+            FridgeLog.apply(fromSnapshot, record);
+        }
+        assertSameState(primary, fromSnapshot);
+    }
+
+    @Test
+    void copyThatFellBehindResyncsFromSnapshot() throws InterruptedException {
+        Random rnd = new Random(360);
+        Fridge primary = new Fridge();
+        FridgeLog log = new FridgeLog(16);
+        primary.setChangeLog(log::append);
+        Fridge copy = new Fridge();
+        long offset = 0;
+        for (int i = 0; i < 10; i++) {
+            change(primary, rnd);
+            offset = replay(log, offset, copy);
+        }
+        for (int i = 0; i < 100; i++) {
+            change(primary, rnd);
+        }
+        // The records it needs are gone
+        assertNull(log.read(offset, Integer.MAX_VALUE, 0));
+        offset = resync(primary, log, copy);
+        assertSameState(primary, copy);
+        for (int i = 0; i < 10; i++) {
+            change(primary, rnd);
+            offset = replay(log, offset, copy);
+        }
+        assertSameState(primary, copy);
+    }
+
+    @Test
+    void divergedCopyRefusesRecordsUntilResynced() throws InterruptedException {
+        Fridge primary = new Fridge();
+        FridgeLog log = new FridgeLog();
+        primary.setChangeLog(log::append);
+        Fridge copy = new Fridge();
+        primary.addFood(new FoodItem("Milk", 2, "l", Category.OTHER, LocalDate.now().plusDays(4), null));
+        long offset = replay(log, 0, copy);
+
+        // A change made to the copy alone
+        copy.removeFood("milk", 2);
+        primary.removeFood("milk", 1);
+        String record = log.read(offset, 1, 0).get(0);
+        assertThrows(IllegalStateException.class, () -> FridgeLog.apply(copy, record));
+
+        resync(primary, log, copy);
+        assertSameState(primary, copy);
+    }
+
+    @Test
+    void followerOverSocketCatchesUp() throws Exception {
+        ExecutorService primaryThread = Executors.newSingleThreadExecutor();
+        ExecutorService copyThread = Executors.newSingleThreadExecutor();
+        Fridge primary = new Fridge();
+        Fridge copy = new Fridge();
+        FridgeLog log = new FridgeLog();
+        Random rnd = new Random(3600);
+        primaryThread.submit(() -> primary.setChangeLog(log::append)).get();
+        // Changes made before the follower starts arrive as a snapshot
+        primaryThread.submit(() -> {
+            for (int i = 0; i < 50; i++) {
+                change(primary, rnd);
+            }
+        }).get();
+
+        LogShipper shipper = new LogShipper(primary, log, primaryThread, 0);
+        FridgeFollower follower = new FridgeFollower(copy, shipper.getPort(), copyThread);
+        shipper.start();
+        follower.start();
+        try {
+            primaryThread.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    change(primary, rnd);
+                }
+            }).get();
+            long end = log.getEndOffset();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (follower.getAppliedOffset() < end && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(end, follower.getAppliedOffset());
+            List<String> expected = primaryThread.submit(() -> state(primary)).get();
+            assertEquals(expected, copyThread.submit(() -> state(copy)).get());
+        } finally {
+            follower.stop();
+            shipper.stop();
+            primaryThread.shutdownNow();
+            copyThread.shutdownNow();
+        }
+    }
+
+    /** @return offset after applying every record from an offset on */
+    private static long replay(FridgeLog log, long offset, Fridge copy) throws InterruptedException {
+        List<String> records = log.read(offset, Integer.MAX_VALUE, 0);
+        for (String record : records) {
+            FridgeLog.apply(copy, record);
+        }
+        return offset + records.size();
+    }
+
+    /** @return offset to resume from after replacing the copy with a snapshot */
+    private static long resync(Fridge primary, FridgeLog log, Fridge copy) {
+        long offset = log.getEndOffset();
+        for (String record : FridgeLog.snapshot(primary)) {
+            FridgeLog.apply(copy, record);
+        }
+        return offset;
+    }
+
+    /** Makes a random change of a kind the log records, which may be refused. */
+    private static void change(Fridge fridge, Random rnd) {
+        String name = Kitchens.name(rnd);
+        List<Recipe> recipes = fridge.getRecipes();
+        Recipe some = recipes.isEmpty() ? null : recipes.get(rnd.nextInt(recipes.size()));
+        LocalDate day = LocalDate.now().plusDays(rnd.nextInt(5));
+        switch (rnd.nextInt(14)) {
+            case 0:
+            case 1: fridge.addFood(Kitchens.item(rnd, name)); break;
+            case 2: fridge.removeFood(name, 1 + rnd.nextInt(3)); break;
+            case 3: fridge.discardFood(name, 1); break;
+            case 4: fridge.setCategory(name, Category.values()[rnd.nextInt(Category.values().length)]); break;
+            case 5: fridge.setExpirationDate(name, LocalDate.now().plusDays(rnd.nextInt(20))); break;
+            case 6: fridge.addRecipe(Kitchens.recipe(rnd, "Dish " + rnd.nextInt(1000))); break;
+            case 7:
+                if (some != null) {
+                    fridge.removeRecipe(some);
+                }
+                break;
+            case 8:
+                if (some != null) {
+                    fridge.planRecipe(some, day);
+                }
+                break;
+            case 9:
+                if (some != null) {
+                    some.cook(fridge);
+                }
+                break;
+            case 10:
+                String to = Kitchens.name(rnd);
+                if (!to.equals(name)) {
+                    fridge.addSubstitution(name, to, 1 + rnd.nextInt(2));
+                }
+                break;
+            case 11: fridge.createShoppingList(rnd.nextInt(4)); break;
+            case 12: fridge.addShoppingListItem(name, 1 + rnd.nextInt(3), "unit"); break;
+            default:
+                if (rnd.nextBoolean()) {
+                    fridge.undo();
+                }
+                else {
+                    fridge.redo();
+                }
+                break;
+        }
+    }
+
+    /** @return the fridge's snapshot records, inventory and cookable recipes */
+    private static List<String> state(Fridge fridge) {
+        List<String> state = new ArrayList<>(FridgeLog.snapshot(fridge));
+        state.addAll(Kitchens.inventory(fridge));
+        for (Recipe r : fridge.getRecipes()) {
+            state.add(r.getName() + " cookable " + fridge.getCookableNow().contains(r) + " serves " + fridge.getMaxServings(r));
+        }
+        return state;
+    }
+
+    private static void assertSameState(Fridge primary, Fridge copy) {
+        assertEquals(state(primary), state(copy));
+    }
+}
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks an index that recipes were added to and removed from one at a time
+ * against an index built from scratch over the recipes left.
+ */
+class SearchIndexTest {
+    @Test
+    void matchesFreshIndexAfterAddsAndRemoves() {
+        Random rnd = new Random(27);
+        SearchIndex index = new SearchIndex();
+        List<Recipe> live = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            // Removes more often once the catalog is big, so it also shrinks to nothing
+            if (!live.isEmpty() && rnd.nextInt(100) < (i < 200 ? 35 : 65)) {
+                index.remove(live.remove(rnd.nextInt(live.size())));
+            }
+            else {
+                Recipe recipe = Kitchens.recipe(rnd, Kitchens.name(rnd) + " " + Kitchens.name(rnd) + " " + rnd.nextInt(50));
+                index.add(recipe);
+                live.add(recipe);
+            }
+            SearchIndex fresh = new SearchIndex();
+            for (Recipe recipe : live) {
+                fresh.add(recipe);
+            }
+            assertEquals(fresh.size(), index.size());
+            for (int q = 0; q < 5; q++) {
+                String query = query(rnd);
+                // Ties are broken by document id, which differs, so only the sets are compared
+                assertEquals(new HashSet<>(fresh.searchRecipes(query, 1000)), new HashSet<>(index.searchRecipes(query, 1000)), query);
+            }
+        }
+    }
+
+    @Test
+    void removedWordsAreNotSuggestedForTypos() {
+        SearchIndex index = new SearchIndex();
+        Recipe recipe = new Recipe("Lemon Tart", List.of("Bake"), List.of(new IngredientLine("lemon", 2, "unit")), null);
+        index.add(recipe);
+        assertEquals(List.of(recipe), index.searchRecipes("lemmon", 10));
+        index.remove(recipe);
+        assertTrue(index.searchRecipes("lemmon", 10).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void stepsAreNotIndexed() {
+        SearchIndex index = new SearchIndex();
+        index.add(new Recipe("Toast", List.of("Grill the bread"), List.of(new IngredientLine("bread", 1, "unit")), null));
+        assertTrue(index.searchRecipes("grill", 10).isEmpty());
+        assertEquals(1, index.searchRecipes("bread toast", 10).size());
+    }
+
+    /** @return one or two words, each whole, cut short or misspelled */
+    private static String query(Random rnd) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 1 + rnd.nextInt(2); i > 0; i--) {
+            String word = Kitchens.name(rnd);
+            switch (rnd.nextInt(3)) {
+                case 0: break;
+                case 1: word = word.substring(0, 2 + rnd.nextInt(word.length() - 2)); break;
+                default:
+                    int at = rnd.nextInt(word.length());
+                    word = word.substring(0, at) + "x" + word.substring(at + 1);
+                    break;
+            }
+            query.append(word).append(' ');
+        }
+        return query.toString().trim();
+    }
+}